@@ -1,51 +1,49 @@
 package sn.ondmoney.history.broker;
 
-import static org.springframework.web.servlet.mvc.method.annotation.SseEmitter.event;
-
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.MediaType;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+/**
+ * Forwards the messages of {@code kafkaConsumer-in-0} to the SSE clients through {@link NotificationHub}.
+ * <p>
+ * The optional {@link #PRINCIPAL_HEADER} and {@link #PHONE_HEADER} headers target a user, {@link #TOPIC_HEADER} names
+ * the event; messages without a target go to every client.
+ */
 @Component
-public class KafkaConsumer implements Consumer<String> {
+public class KafkaConsumer implements Consumer<Message<String>> {
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaConsumer.class);
 
-    private Map<String, SseEmitter> emitters = new HashMap<>();
+    public static final String PRINCIPAL_HEADER = "notificationPrincipal";
+    public static final String PHONE_HEADER = "notificationPhone";
+    public static final String TOPIC_HEADER = "notificationTopic";
 
-    public SseEmitter register(String key) {
-        LOG.debug("Registering sse client for {}", key);
-        SseEmitter emitter = new SseEmitter();
-        emitter.onCompletion(() -> emitters.remove(key));
-        emitters.put(key, emitter);
-        return emitter;
-    }
+    private final NotificationHub notificationHub;
 
-    public void unregister(String key) {
-        LOG.debug("Unregistering sse emitter for: {}", key);
-        Optional.ofNullable(emitters.get(key)).ifPresent(SseEmitter::complete);
+    public KafkaConsumer(NotificationHub notificationHub) {
+        this.notificationHub = notificationHub;
     }
 
     @Override
-    public void accept(String input) {
-        LOG.debug("Got message from kafka stream: {}", input);
-        emitters
-            .entrySet()
-            .stream()
-            .map(Map.Entry::getValue)
-            .forEach((SseEmitter emitter) -> {
-                try {
-                    emitter.send(event().data(input, MediaType.TEXT_PLAIN));
-                } catch (IOException e) {
-                    LOG.debug("error sending sse message, {}", input);
-                }
-            });
+    public void accept(Message<String> message) {
+        LOG.debug("Got message from kafka stream: {}", message.getPayload());
+        notificationHub.publish(
+            new Notification(header(message, TOPIC_HEADER), header(message, PRINCIPAL_HEADER), header(message, PHONE_HEADER), message.getPayload())
+        );
+    }
+
+    /**
+     * Kafka headers the binder does not map arrive as raw bytes.
+     */
+    private static String header(Message<String> message, String name) {
+        Object value = message.getHeaders().get(name);
+        if (value instanceof byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value != null ? value.toString() : null;
     }
 }
@@ -0,0 +1,18 @@
+package sn.ondmoney.history.broker;
+
+/**
+ * An event pushed to the SSE clients of {@link NotificationHub}, as published on its Redis topic.
+ *
+ * @param topic     the event name; clients that subscribed to topics only receive those. {@code null} for all clients.
+ * @param principal the login of the recipient, {@code null} if not targeted by login.
+ * @param phone     the phone number of the recipient, {@code null} if not targeted by phone.
+ * @param data      the event data, sent as text.
+ */
+public record Notification(String topic, String principal, String phone, String data) {
+    /**
+     * Whether the notification goes to every client rather than to a principal or phone.
+     */
+    public boolean isBroadcast() {
+        return principal == null && phone == null;
+    }
+}
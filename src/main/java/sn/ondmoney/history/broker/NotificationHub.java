@@ -0,0 +1,416 @@
+package sn.ondmoney.history.broker;
+
+import static org.springframework.web.servlet.mvc.method.annotation.SseEmitter.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.service.PhoneNumberNormalizer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-sent event connections of this node, registered by principal and by phone number.
+ * <p>
+ * {@link #publish} sends a {@link Notification} to every node through a Redis topic; each node then queues it on its
+ * own matching connections. Nothing is written on the publishing thread: every connection has a bounded buffer,
+ * drained by a small shared pool, so a slow client only delays itself. When its buffer is full, new events are
+ * dropped or the client is disconnected, see {@code application.notifications.overflow}. Idle connections get a
+ * comment every {@code heartbeat-interval}, which keeps proxies from closing them and detects dead clients.
+ * <p>
+ * Writes block until the client's socket takes them. A write still blocked after {@code send-timeout} disconnects the
+ * client, and the pool gets an extra thread until the write returns, so a stalled client does not hold a shared
+ * thread away from the others.
+ * <p>
+ * If Redis is unavailable, notifications are only delivered to the clients of this node.
+ */
+@Component
+public class NotificationHub {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationHub.class);
+
+    private static final String TOPIC = "history:notifications";
+    private static final String PRINCIPAL = "principal:";
+    private static final String PHONE = "phone:";
+
+    private static final long IDLE = 0;
+    private static final long STALLED = Long.MIN_VALUE;
+
+    private static final Set<DataWithMediaType> HEARTBEAT = event().comment("heartbeat").build();
+
+    private final ObjectMapper objectMapper;
+    private final PhoneNumberNormalizer phoneNumberNormalizer;
+    private final ApplicationProperties.Notifications properties;
+    private final RTopic topic;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<Connection>> registry = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor dispatcher;
+    private final ScheduledExecutorService heartbeats;
+
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    public NotificationHub(
+        RedissonClient redissonClient,
+        ObjectMapper objectMapper,
+        PhoneNumberNormalizer phoneNumberNormalizer,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.objectMapper = objectMapper;
+        this.phoneNumberNormalizer = phoneNumberNormalizer;
+        this.properties = applicationProperties.getNotifications();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(
+            properties.getDispatchThreads(),
+            properties.getDispatchThreads(),
+            0,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "sse-dispatch-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getHeartbeatInterval().toMillis();
+        heartbeats.scheduleWithFixedDelay(() -> connections.forEach(Connection::heartbeat), interval, interval, TimeUnit.MILLISECONDS);
+        long sendTimeout = properties.getSendTimeout().toMillis();
+        heartbeats.scheduleWithFixedDelay(this::disconnectStalled, sendTimeout, Math.max(sendTimeout / 2, 1), TimeUnit.MILLISECONDS);
+
+        this.dropped = Counter.builder("history.notifications.dropped")
+            .description("Notifications dropped because the buffer of their connection was full")
+            .register(meterRegistry);
+        this.disconnected = Counter.builder("history.notifications.disconnected")
+            .description("Connections closed because their buffer was full or a write blocked too long")
+            .register(meterRegistry);
+        Gauge.builder("history.notifications.connections", connections, Set::size)
+            .description("Open server-sent event connections on this node")
+            .register(meterRegistry);
+
+        this.topic = redissonClient.getTopic(TOPIC, StringCodec.INSTANCE);
+        topic.addListener(String.class, (channel, message) -> {
+            try {
+                deliver(objectMapper.readValue(message, Notification.class));
+            } catch (JsonProcessingException e) {
+                LOG.warn("Ignoring malformed notification: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Opens a connection for the given user.
+     *
+     * @param phone  the phone number of the user, {@code null} if unknown.
+     * @param topics the topics to receive, all if empty.
+     * @throws ResponseStatusException if this node already has {@code max-connections} open connections.
+     */
+    public SseEmitter register(String principal, String phone, Collection<String> topics) {
+        if (connections.size() >= properties.getMaxConnections()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many open notification connections");
+        }
+        LOG.debug("Registering sse client for {}", principal);
+        return register(principal, phone, topics, new SseEmitter(properties.getEmitterTimeout().toMillis()));
+    }
+
+    SseEmitter register(String principal, String phone, Collection<String> topics, SseEmitter emitter) {
+        Connection connection = new Connection(keys(principal, phone), Set.copyOf(topics), emitter);
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(connection::close);
+        emitter.onError(error -> remove(connection));
+
+        connections.add(connection);
+        for (String key : connection.keys) {
+            // Inside compute, so that a concurrent removal cannot drop the set being added to
+            registry.compute(key, (k, registered) -> {
+                Set<Connection> updated = registered != null ? registered : ConcurrentHashMap.<Connection>newKeySet();
+                updated.add(connection);
+                return updated;
+            });
+        }
+        return emitter;
+    }
+
+    /**
+     * Closes every connection of the principal on this node, once their pending events are sent.
+     */
+    public void unregister(String principal) {
+        LOG.debug("Unregistering sse emitters for: {}", principal);
+        registry.getOrDefault(PRINCIPAL + principal, Set.of()).forEach(Connection::close);
+    }
+
+    /**
+     * Sends the notification to the matching connections of every node; does not block.
+     */
+    public void publish(Notification notification) {
+        String message;
+        try {
+            message = objectMapper.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            LOG.error("Failed to serialize notification", e);
+            return;
+        }
+        try {
+            topic
+                .publishAsync(message)
+                .whenComplete((receivers, error) -> {
+                    // No subscriber at all means this node did not receive it either
+                    if (error != null || receivers == 0) {
+                        fallback(notification, error);
+                    }
+                });
+        } catch (RuntimeException e) {
+            fallback(notification, e);
+        }
+    }
+
+    private void fallback(Notification notification, Throwable error) {
+        LOG.warn("Could not publish notification to other nodes, delivering it locally: {}", error != null ? error.getMessage() : "no subscriber");
+        deliver(notification);
+    }
+
+    /**
+     * Queues the notification on the matching connections of this node.
+     */
+    void deliver(Notification notification) {
+        Set<DataWithMediaType> event = toEvent(notification);
+        if (notification.isBroadcast()) {
+            connections.forEach(connection -> connection.offer(notification.topic(), event));
+            return;
+        }
+        // A connection may match both its principal and its phone
+        Set<Connection> recipients = new HashSet<>();
+        for (String key : keys(notification.principal(), notification.phone())) {
+            recipients.addAll(registry.getOrDefault(key, Set.of()));
+        }
+        recipients.forEach(connection -> connection.offer(notification.topic(), event));
+    }
+
+    private static Set<DataWithMediaType> toEvent(Notification notification) {
+        SseEmitter.SseEventBuilder builder = event();
+        if (notification.topic() != null) {
+            builder.name(notification.topic());
+        }
+        return builder.data(notification.data(), MediaType.TEXT_PLAIN).build();
+    }
+
+    private Set<String> keys(String principal, String phone) {
+        Set<String> keys = new HashSet<>(2);
+        if (principal != null) {
+            keys.add(PRINCIPAL + principal);
+        }
+        if (phone != null && !phone.isBlank()) {
+            keys.add(PHONE + phoneNumberNormalizer.normalize(phone));
+        }
+        return keys;
+    }
+
+    /**
+     * Disconnects the clients whose write has been blocked for {@code send-timeout}. Their emitter is left alone, since
+     * the blocked write holds it: the write fails or returns on its own and the drain then completes it.
+     */
+    void disconnectStalled() {
+        long now = System.nanoTime();
+        long timeout = properties.getSendTimeout().toNanos();
+        for (Connection connection : connections) {
+            long started = connection.sendStarted.get();
+            // Either this or the end of the write claims the stall, never both
+            if (
+                started != IDLE &&
+                started != STALLED &&
+                now - started > timeout &&
+                connection.sendStarted.compareAndSet(started, STALLED)
+            ) {
+                LOG.debug("Disconnecting sse client {}, blocked in a write for {}", connection.keys, properties.getSendTimeout());
+                disconnected.increment();
+                connection.closing = true;
+                connection.buffer.clear();
+                remove(connection);
+                resizeDispatcher(1);
+            }
+        }
+    }
+
+    /**
+     * Grows or shrinks the dispatch pool by {@code delta} threads, one per write stalled beyond {@code send-timeout}.
+     */
+    private synchronized void resizeDispatcher(int delta) {
+        int size = dispatcher.getCorePoolSize() + delta;
+        if (delta > 0) {
+            dispatcher.setMaximumPoolSize(size);
+            dispatcher.setCorePoolSize(size);
+        } else {
+            dispatcher.setCorePoolSize(size);
+            dispatcher.setMaximumPoolSize(size);
+        }
+    }
+
+    int dispatchThreads() {
+        return dispatcher.getCorePoolSize();
+    }
+
+    private void remove(Connection connection) {
+        connection.closing = true;
+        if (!connections.remove(connection)) {
+            return;
+        }
+        for (String key : connection.keys) {
+            registry.computeIfPresent(key, (k, registered) -> {
+                registered.remove(connection);
+                return registered.isEmpty() ? null : registered;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdown();
+        connections.forEach(Connection::close);
+        dispatcher.shutdown();
+    }
+
+    /**
+     * An open connection and its buffer. At most one dispatch thread drains it at a time.
+     */
+    private final class Connection {
+
+        private final Set<String> keys;
+        private final Set<String> topics;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Set<DataWithMediaType>> buffer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean closing;
+        /** {@link System#nanoTime()} when the write in progress started, {@link #IDLE} or {@link #STALLED}. */
+        private final AtomicLong sendStarted = new AtomicLong(IDLE);
+
+        private Connection(Set<String> keys, Set<String> topics, SseEmitter emitter) {
+            this.keys = keys;
+            this.topics = topics;
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(properties.getBufferSize());
+        }
+
+        void offer(String eventTopic, Set<DataWithMediaType> event) {
+            if (closing || (eventTopic != null && !topics.isEmpty() && !topics.contains(eventTopic))) {
+                return;
+            }
+            if (buffer.offer(event)) {
+                schedule();
+            } else if (properties.getOverflow() == ApplicationProperties.Notifications.Overflow.DISCONNECT) {
+                LOG.debug("Disconnecting slow sse client {}", keys);
+                disconnected.increment();
+                closing = true;
+                buffer.clear();
+                schedule();
+            } else {
+                dropped.increment();
+            }
+        }
+
+        void heartbeat() {
+            // Connections with pending events need no heartbeat
+            if (!closing && buffer.isEmpty() && buffer.offer(HEARTBEAT)) {
+                schedule();
+            }
+        }
+
+        /**
+         * Completes the connection once its buffer is sent.
+         */
+        void close() {
+            closing = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                try {
+                    Set<DataWithMediaType> event;
+                    // An offer that checked closing just before the close may still queue after completion
+                    while (!completed.get() && (event = buffer.poll()) != null) {
+                        send(event);
+                    }
+                    if (completed.get()) {
+                        buffer.clear();
+                    }
+                    if (closing && completed.compareAndSet(false, true)) {
+                        emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    LOG.debug("Dropping sse client {}: {}", keys, e.getMessage());
+                    buffer.clear();
+                    remove(this);
+                    if (completed.compareAndSet(false, true)) {
+                        emitter.completeWithError(e);
+                    }
+                } finally {
+                    scheduled.set(false);
+                }
+                // Events queued, or a close requested, after the last poll but before the flag was reset
+            } while ((!buffer.isEmpty() || (closing && !completed.get())) && scheduled.compareAndSet(false, true));
+        }
+
+        private void send(Set<DataWithMediaType> event) throws IOException {
+            // Odd, so never one of the markers
+            sendStarted.set(System.nanoTime() | 1);
+            try {
+                emitter.send(event);
+            } finally {
+                if (sendStarted.getAndSet(IDLE) == STALLED) {
+                    // Hands back the thread added while this write was stalled
+                    resizeDispatcher(-1);
+                }
+            }
+        }
+    }
+}
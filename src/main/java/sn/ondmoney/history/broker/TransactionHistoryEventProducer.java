@@ -3,50 +3,179 @@ package sn.ondmoney.history.broker;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import sn.ondmoney.history.config.ApplicationProperties;
 import sn.ondmoney.history.service.dto.HistoryEventDTO;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.function.Supplier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+/**
+ * Publishes {@link HistoryEventDTO}s to {@code history-events} through {@link StreamBridge}, without waiting for the
+ * broker: the Kafka producer batches and compresses them, see {@code spring.cloud.stream.kafka.bindings.historyEvents-out-0}.
+ * <p>
+ * At most {@code application.kafka.history-events.max-in-flight} events may await their acknowledgement. When the
+ * window is full, {@link #publish} blocks up to {@code send-timeout}, then drops the event. Acknowledgements come back
+ * on {@link #RESULTS_CHANNEL} and send failures on the binding's error channel; both release the window and record
+ * the publish latency.
+ */
 @Component("transactionHistoryEventProducer")
-public class TransactionHistoryEventProducer implements Supplier<Message<String>> {
+public class TransactionHistoryEventProducer {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryEventProducer.class);
 
-    private final BlockingQueue<HistoryEventDTO> queue = new LinkedBlockingQueue<>();
+    public static final String BINDING = "historyEvents-out-0";
+
+    /**
+     * Receives every acknowledged message with its {@code kafka_recordMetadata}, see the binding's
+     * {@code record-metadata-channel}.
+     */
+    public static final String RESULTS_CHANNEL = "historyEventResults";
+
+    public static final String ERRORS_CHANNEL = "history-events.errors";
+
+    // Matches the message to its in-flight entry; excluded from the record headers
+    static final String SEQUENCE_HEADER = "historyEventSequence";
+
+    private final StreamBridge streamBridge;
     private final ObjectMapper objectMapper;
+    private final ApplicationProperties.Kafka.HistoryEvents properties;
 
-    public TransactionHistoryEventProducer(ObjectMapper objectMapper) {
+    private final Semaphore window;
+    private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sequences = new AtomicLong();
+
+    private final Timer acknowledged;
+    private final Timer failed;
+    private final Counter rejected;
+
+    public TransactionHistoryEventProducer(
+        StreamBridge streamBridge,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.streamBridge = streamBridge;
         this.objectMapper = objectMapper;
         this.objectMapper.registerModule(new JavaTimeModule());
-        this.objectMapper.enable(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN);    }
+        this.objectMapper.enable(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN);
+        this.properties = applicationProperties.getKafka().getHistoryEvents();
+        this.window = new Semaphore(properties.getMaxInFlight());
+
+        this.acknowledged = latencyTimer(meterRegistry, "acknowledged");
+        this.failed = latencyTimer(meterRegistry, "failed");
+        this.rejected = Counter.builder("history.events.publish.rejected")
+            .description("History events dropped because the in-flight window stayed full")
+            .register(meterRegistry);
+        Gauge.builder("history.events.publish.in.flight", inFlight, Map::size)
+            .description("History events awaiting their broker acknowledgement")
+            .register(meterRegistry);
+    }
 
-    @Override
-    public Message<String> get() {
-        HistoryEventDTO event = queue.poll();
-        if (event == null) return null;
+    private static Timer latencyTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("history.events.publish.latency")
+            .description("Time from publishing a history event to its broker acknowledgement or failure")
+            .tag("result", result)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
 
+    /**
+     * Sends the event asynchronously; only blocks while the in-flight window is full.
+     */
+    public void publish(HistoryEventDTO event) {
+        byte[] payload;
         try {
-            String json = objectMapper.writeValueAsString(event);
-            LOG.info("Publishing history event: type={}, transactionId={}", event.getEventType(), event.getTransactionId());
-            return MessageBuilder.withPayload(json)
-                .setHeader("contentType", "application/json")
-                .build();
+            payload = objectMapper.writeValueAsBytes(event);
         } catch (JsonProcessingException e) {
             LOG.error("Failed to serialize HistoryEventDTO", e);
-            return null;
+            return;
+        }
+
+        try {
+            if (!window.tryAcquire(properties.getSendTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                LOG.error(
+                    "Dropped history event: type={}, transactionId={}, {} events still awaiting acknowledgement",
+                    event.getEventType(),
+                    event.getTransactionId(),
+                    inFlight.size()
+                );
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            return;
+        }
+
+        long sequence = sequences.incrementAndGet();
+        inFlight.put(sequence, new InFlight(System.nanoTime(), event));
+        LOG.debug("Publishing history event: type={}, transactionId={}", event.getEventType(), event.getTransactionId());
+        try {
+            Message<byte[]> message = MessageBuilder.withPayload(payload)
+                .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+                .setHeader(SEQUENCE_HEADER, sequence)
+                .build();
+            if (!streamBridge.send(BINDING, message)) {
+                complete(sequence, new IllegalStateException("Binding " + BINDING + " did not accept the message"));
+            }
+        } catch (RuntimeException e) {
+            complete(sequence, e);
         }
     }
 
-    public void publish(HistoryEventDTO event) {
-        LOG.debug("Queueing history event: {}", event.getTransactionId());
-        queue.offer(event);
+    @ServiceActivator(inputChannel = RESULTS_CHANNEL)
+    public void onAcknowledged(Message<?> message) {
+        complete(message.getHeaders().get(SEQUENCE_HEADER, Long.class), null);
     }
+
+    @ServiceActivator(inputChannel = ERRORS_CHANNEL)
+    public void onFailed(ErrorMessage message) {
+        Message<?> failedMessage = message.getPayload() instanceof MessagingException e ? e.getFailedMessage() : message.getOriginalMessage();
+        if (failedMessage != null) {
+            complete(failedMessage.getHeaders().get(SEQUENCE_HEADER, Long.class), message.getPayload());
+        }
+    }
+
+    /**
+     * Releases the window slot of an event; later reports of the same event are ignored.
+     */
+    private void complete(Long sequence, Throwable error) {
+        InFlight pending = sequence != null ? inFlight.remove(sequence) : null;
+        if (pending == null) {
+            return;
+        }
+        window.release();
+        long latency = System.nanoTime() - pending.startedAt();
+        if (error == null) {
+            acknowledged.record(latency, TimeUnit.NANOSECONDS);
+            return;
+        }
+        failed.record(latency, TimeUnit.NANOSECONDS);
+        LOG.error(
+            "Failed to publish history event: type={}, transactionId={}: {}",
+            pending.event().getEventType(),
+            pending.event().getTransactionId(),
+            error.getMessage()
+        );
+    }
+
+    private record InFlight(long startedAt, HistoryEventDTO event) {}
 }
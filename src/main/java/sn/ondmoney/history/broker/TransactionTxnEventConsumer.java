@@ -5,8 +5,13 @@ import sn.ondmoney.history.domain.TransactionHistory;
 import sn.ondmoney.history.domain.enumeration.HistoryEventType;
 import sn.ondmoney.history.repository.TransactionHistoryRepository;
 import sn.ondmoney.history.repository.search.TransactionHistorySearchRepository;
+import sn.ondmoney.history.service.TransactionSearchCache;
+import sn.ondmoney.history.service.UserStatsService;
+import sn.ondmoney.history.service.UserTimelineService;
 import sn.ondmoney.history.service.dto.HistoryEventDTO;
 import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -18,20 +23,34 @@ public class TransactionTxnEventConsumer implements Consumer<String> {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransactionTxnEventConsumer.class);
 
+    static final String TRANSACTION_TOPIC = "transaction";
+
     private final TransactionHistoryRepository repository;
     private final TransactionHistorySearchRepository searchRepository;
     private final TransactionHistoryEventProducer historyProducer;
     private final ObjectMapper objectMapper;
+    private final TransactionSearchCache searchCache;
+    private final UserStatsService userStatsService;
+    private final UserTimelineService userTimelineService;
+    private final NotificationHub notificationHub;
 
     public TransactionTxnEventConsumer(
         TransactionHistoryRepository repository,
         TransactionHistorySearchRepository searchRepository,
         TransactionHistoryEventProducer historyProducer,
-        ObjectMapper objectMapper) {
+        ObjectMapper objectMapper,
+        TransactionSearchCache searchCache,
+        UserStatsService userStatsService,
+        UserTimelineService userTimelineService,
+        NotificationHub notificationHub) {
         this.repository = repository;
         this.searchRepository = searchRepository;
         this.historyProducer = historyProducer;
         this.objectMapper = objectMapper;
+        this.searchCache = searchCache;
+        this.userStatsService = userStatsService;
+        this.userTimelineService = userTimelineService;
+        this.notificationHub = notificationHub;
     }
 
     @Override
@@ -51,10 +70,14 @@ public class TransactionTxnEventConsumer implements Consumer<String> {
             tx.setProcessingDate(Instant.now());
             TransactionHistory savedTx = repository.save(tx);
             LOG.info("Transaction saved successfully in MongoDB: {}", savedTx.getTransactionId());
+            // New transaction, checked above: there is no previous state to move out of the rollups
+            userStatsService.apply(List.of(), List.of(savedTx));
+            userTimelineService.apply(List.of(), List.of(savedTx));
+            searchCache.invalidate(List.of(), List.of(savedTx));
 
             // --- Index transaction in Elasticsearch ---
             searchRepository.index(savedTx);
-            LOG.info("Transaction indexed successfully in Elasticsearch: {}", savedTx.getTransactionId());
+            LOG.info("Transaction queued for Elasticsearch indexing: {}", savedTx.getTransactionId());
 
             // --- Publish success event ---
             HistoryEventDTO successEvent = new HistoryEventDTO();
@@ -65,6 +88,12 @@ public class TransactionTxnEventConsumer implements Consumer<String> {
             successEvent.setCorrelationId(savedTx.getCorrelationId());
             historyProducer.publish(successEvent);
 
+            // --- Notify both parties ---
+            notify(savedTx.getSenderPhone(), payload);
+            if (!Objects.equals(savedTx.getReceiverPhone(), savedTx.getSenderPhone())) {
+                notify(savedTx.getReceiverPhone(), payload);
+            }
+
         } catch (Exception e) {
             LOG.error("Error processing transaction event: {}", payload, e);
 
@@ -79,4 +108,10 @@ public class TransactionTxnEventConsumer implements Consumer<String> {
             }
         }
     }
+
+    private void notify(String phone, String payload) {
+        if (phone != null) {
+            notificationHub.publish(new Notification(TRANSACTION_TOPIC, null, phone, payload));
+        }
+    }
 }
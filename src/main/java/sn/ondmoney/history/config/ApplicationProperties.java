@@ -1,5 +1,9 @@
 package sn.ondmoney.history.config;
 
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -10,9 +14,834 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final Kafka kafka = new Kafka();
+
+    private final Search search = new Search();
+
+    private final Stats stats = new Stats();
+
+    private final Export export = new Export();
+
+    private final Graphql graphql = new Graphql();
+
+    private final DocumentCache documentCache = new DocumentCache();
+
+    private final Notifications notifications = new Notifications();
+
+    private final Timeline timeline = new Timeline();
+
     // jhipster-needle-application-properties-property
 
+    public Kafka getKafka() {
+        return kafka;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    public Export getExport() {
+        return export;
+    }
+
+    public Graphql getGraphql() {
+        return graphql;
+    }
+
+    public DocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    public Notifications getNotifications() {
+        return notifications;
+    }
+
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
     // jhipster-needle-application-properties-property-getter
 
+    public static class Kafka {
+
+        private final Batch batch = new Batch();
+
+        private final Idempotency idempotency = new Idempotency();
+
+        private final HistoryEvents historyEvents = new HistoryEvents();
+
+        public Batch getBatch() {
+            return batch;
+        }
+
+        public Idempotency getIdempotency() {
+            return idempotency;
+        }
+
+        public HistoryEvents getHistoryEvents() {
+            return historyEvents;
+        }
+
+        /**
+         * Batch listener mode for the transfer and wallet consumers: a whole poll is decoded,
+         * deduplicated and written to MongoDB at once, and offsets are committed once per batch.
+         */
+        public static class Batch {
+
+            private boolean enabled = false;
+
+            private int maxPollRecords = 500;
+
+            private int fetchMinBytes = 64 * 1024;
+
+            private Duration linger = Duration.ofMillis(200);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getMaxPollRecords() {
+                return maxPollRecords;
+            }
+
+            public void setMaxPollRecords(int maxPollRecords) {
+                this.maxPollRecords = maxPollRecords;
+            }
+
+            public int getFetchMinBytes() {
+                return fetchMinBytes;
+            }
+
+            public void setFetchMinBytes(int fetchMinBytes) {
+                this.fetchMinBytes = fetchMinBytes;
+            }
+
+            public Duration getLinger() {
+                return linger;
+            }
+
+            public void setLinger(Duration linger) {
+                this.linger = linger;
+            }
+        }
+
+        /**
+         * In-memory front cache for {@code processed_events}: a per-partition scalable Bloom filter plus a bounded set of
+         * recently written event ids, warmed on partition assignment.
+         */
+        public static class Idempotency {
+
+            private boolean enabled = true;
+
+            private int expectedInsertions = 100_000;
+
+            private double falsePositiveRate = 0.01;
+
+            private long recentIdsSize = 50_000;
+
+            private int warmupMaxIds = 500_000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getExpectedInsertions() {
+                return expectedInsertions;
+            }
+
+            public void setExpectedInsertions(int expectedInsertions) {
+                this.expectedInsertions = expectedInsertions;
+            }
+
+            public double getFalsePositiveRate() {
+                return falsePositiveRate;
+            }
+
+            public void setFalsePositiveRate(double falsePositiveRate) {
+                this.falsePositiveRate = falsePositiveRate;
+            }
+
+            public long getRecentIdsSize() {
+                return recentIdsSize;
+            }
+
+            public void setRecentIdsSize(long recentIdsSize) {
+                this.recentIdsSize = recentIdsSize;
+            }
+
+            public int getWarmupMaxIds() {
+                return warmupMaxIds;
+            }
+
+            public void setWarmupMaxIds(int warmupMaxIds) {
+                this.warmupMaxIds = warmupMaxIds;
+            }
+        }
+
+        /**
+         * Asynchronous publishing of {@code history-events}: at most {@code maxInFlight} events await their broker
+         * acknowledgement, publishers wait up to {@code sendTimeout} for room in that window.
+         */
+        public static class HistoryEvents {
+
+            private int maxInFlight = 1000;
+
+            private Duration sendTimeout = Duration.ofSeconds(5);
+
+            public int getMaxInFlight() {
+                return maxInFlight;
+            }
+
+            public void setMaxInFlight(int maxInFlight) {
+                this.maxInFlight = maxInFlight;
+            }
+
+            public Duration getSendTimeout() {
+                return sendTimeout;
+            }
+
+            public void setSendTimeout(Duration sendTimeout) {
+                this.sendTimeout = sendTimeout;
+            }
+        }
+    }
+
+    public static class Search {
+
+        private final Indexing indexing = new Indexing();
+
+        private final ChangeStream changeStream = new ChangeStream();
+
+        private final Reindex reindex = new Reindex();
+
+        private final Cache cache = new Cache();
+
+        private final Partitions partitions = new Partitions();
+
+        private long totalCap = 1000;
+
+        private boolean reactive = true;
+
+        public Indexing getIndexing() {
+            return indexing;
+        }
+
+        public ChangeStream getChangeStream() {
+            return changeStream;
+        }
+
+        public Reindex getReindex() {
+            return reindex;
+        }
+
+        public Cache getCache() {
+            return cache;
+        }
+
+        public Partitions getPartitions() {
+            return partitions;
+        }
+
+        /**
+         * Upper bound of the count run by {@code CAPPED} and {@code ESTIMATED} search totals.
+         */
+        public long getTotalCap() {
+            return totalCap;
+        }
+
+        public void setTotalCap(long totalCap) {
+            this.totalCap = totalCap;
+        }
+
+        /**
+         * Whether GraphQL searches and user statistics use the reactive MongoDB driver instead of blocking a thread;
+         * on by default, {@code false} falls back to the blocking driver.
+         */
+        public boolean isReactive() {
+            return reactive;
+        }
+
+        public void setReactive(boolean reactive) {
+            this.reactive = reactive;
+        }
+
+        /**
+         * Elasticsearch indexing pipeline: pending documents are coalesced by id and sent through the
+         * {@code _bulk} API when {@code batchSize} is reached or every {@code flushInterval}.
+         */
+        public static class Indexing {
+
+            private int batchSize = 500;
+
+            private Duration flushInterval = Duration.ofSeconds(1);
+
+            private int maxRetries = 3;
+
+            private int maxPending = 10_000;
+
+            private Duration offerTimeout = Duration.ofSeconds(2);
+
+            private Duration spillDrainInterval = Duration.ofSeconds(30);
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public Duration getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(Duration flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+
+            public int getMaxRetries() {
+                return maxRetries;
+            }
+
+            public void setMaxRetries(int maxRetries) {
+                this.maxRetries = maxRetries;
+            }
+
+            /**
+             * Operations the indexer holds in memory; writers wait up to {@code offerTimeout} for room, then the
+             * operation is spilled to the {@code pending_index} collection.
+             */
+            public int getMaxPending() {
+                return maxPending;
+            }
+
+            public void setMaxPending(int maxPending) {
+                this.maxPending = maxPending;
+            }
+
+            public Duration getOfferTimeout() {
+                return offerTimeout;
+            }
+
+            public void setOfferTimeout(Duration offerTimeout) {
+                this.offerTimeout = offerTimeout;
+            }
+
+            public Duration getSpillDrainInterval() {
+                return spillDrainInterval;
+            }
+
+            public void setSpillDrainInterval(Duration spillDrainInterval) {
+                this.spillDrainInterval = spillDrainInterval;
+            }
+        }
+
+        /**
+         * Keeps the search index in sync by tailing a change stream on {@code transaction_history}. When enabled, the
+         * synchronizer is the only writer to the index and direct {@code index()} calls are ignored. Requires MongoDB
+         * to run as a replica set.
+         */
+        public static class ChangeStream {
+
+            private boolean enabled = false;
+
+            private int batchSize = 500;
+
+            private Duration maxAwait = Duration.ofSeconds(1);
+
+            private Duration retryBackoff = Duration.ofSeconds(5);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public Duration getMaxAwait() {
+                return maxAwait;
+            }
+
+            public void setMaxAwait(Duration maxAwait) {
+                this.maxAwait = maxAwait;
+            }
+
+            public Duration getRetryBackoff() {
+                return retryBackoff;
+            }
+
+            public void setRetryBackoff(Duration retryBackoff) {
+                this.retryBackoff = retryBackoff;
+            }
+        }
+
+        /**
+         * Full reindex into a fresh versioned index: {@code batchSize} documents per bulk request, with up to
+         * {@code parallelism} requests in flight.
+         */
+        public static class Reindex {
+
+            private int batchSize = 1000;
+
+            private int parallelism = 4;
+
+            private int maxRetries = 3;
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public int getParallelism() {
+                return parallelism;
+            }
+
+            public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+            }
+
+            public int getMaxRetries() {
+                return maxRetries;
+            }
+
+            public void setMaxRetries(int maxRetries) {
+                this.maxRetries = maxRetries;
+            }
+        }
+
+        /**
+         * Redis cache of search pages and user statistics, invalidated per phone number whenever a transaction of
+         * that phone is written. {@code ttl} bounds how long an entry lives when nothing invalidates it.
+         */
+        public static class Cache {
+
+            private boolean enabled = true;
+
+            private Duration ttl = Duration.ofMinutes(5);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public Duration getTtl() {
+                return ttl;
+            }
+
+            public void setTtl(Duration ttl) {
+                this.ttl = ttl;
+            }
+        }
+
+        /**
+         * Monthly search indices. A month is compacted once it has been over for {@code compactAfter}: shrunk to
+         * {@code compactShards} primary shards and force-merged to a single segment. Months older than
+         * {@code retentionMonths} are deleted from the search index, never from MongoDB; 0 keeps them all. Searches
+         * bounded on more than {@code maxSearchMonths} months go through the read alias.
+         */
+        public static class Partitions {
+
+            private Duration compactAfter = Duration.ofDays(3);
+
+            private int compactShards = 1;
+
+            private int retentionMonths = 0;
+
+            private int maxSearchMonths = 24;
+
+            private String maintenanceCron = "0 30 2 * * *";
+
+            private Duration allocationTimeout = Duration.ofMinutes(30);
+
+            public Duration getCompactAfter() {
+                return compactAfter;
+            }
+
+            public void setCompactAfter(Duration compactAfter) {
+                this.compactAfter = compactAfter;
+            }
+
+            public int getCompactShards() {
+                return compactShards;
+            }
+
+            public void setCompactShards(int compactShards) {
+                this.compactShards = compactShards;
+            }
+
+            public int getRetentionMonths() {
+                return retentionMonths;
+            }
+
+            public void setRetentionMonths(int retentionMonths) {
+                this.retentionMonths = retentionMonths;
+            }
+
+            public int getMaxSearchMonths() {
+                return maxSearchMonths;
+            }
+
+            public void setMaxSearchMonths(int maxSearchMonths) {
+                this.maxSearchMonths = maxSearchMonths;
+            }
+
+            /**
+             * When the compaction and retention job runs, on one instance at a time.
+             */
+            public String getMaintenanceCron() {
+                return maintenanceCron;
+            }
+
+            public void setMaintenanceCron(String maintenanceCron) {
+                this.maintenanceCron = maintenanceCron;
+            }
+
+            /**
+             * How long a compaction waits for the shards of a month to gather on one node, then for the shrunk index.
+             */
+            public Duration getAllocationTimeout() {
+                return allocationTimeout;
+            }
+
+            public void setAllocationTimeout(Duration allocationTimeout) {
+                this.allocationTimeout = allocationTimeout;
+            }
+        }
+    }
+
+    /**
+     * User statistics: answered from the {@code user_stats} rollups ({@code ROLLUP}) or by a single aggregation over
+     * {@code transaction_history} ({@code AGGREGATION}). Months are bucketed in {@code timeZone}; the rollups are keyed
+     * with it too, so changing it requires rebuilding {@code user_stats}.
+     */
+    public static class Stats {
+
+        public enum Source {
+            ROLLUP,
+            AGGREGATION,
+        }
+
+        private Source source = Source.ROLLUP;
+
+        private ZoneId timeZone = ZoneId.of("UTC");
+
+        public Source getSource() {
+            return source;
+        }
+
+        public void setSource(Source source) {
+            this.source = source;
+        }
+
+        public ZoneId getTimeZone() {
+            return timeZone;
+        }
+
+        public void setTimeZone(ZoneId timeZone) {
+            this.timeZone = timeZone;
+        }
+    }
+
+    /**
+     * Streaming exports: documents are read from one cursor {@code batchSize} at a time, and the response is flushed
+     * after each batch.
+     */
+    public static class Export {
+
+        private int batchSize = 500;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * GraphQL query cost limits. The cost of an operation is estimated before execution: every selected field costs its
+     * weight ({@code fieldWeights}, keyed {@code Type.field}; 1 for object fields and 0 for scalars by default),
+     * multiplied by the page sizes requested by its enclosing fields.
+     */
+    public static class Graphql {
+
+        private int maxDepth = 10;
+
+        private int maxPageSize = 100;
+
+        private long budget = 1000;
+
+        private Map<String, Long> clientBudgets = new HashMap<>();
+
+        private Map<String, Integer> fieldWeights = new HashMap<>();
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public void setMaxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        public int getMaxPageSize() {
+            return maxPageSize;
+        }
+
+        public void setMaxPageSize(int maxPageSize) {
+            this.maxPageSize = maxPageSize;
+        }
+
+        public long getBudget() {
+            return budget;
+        }
+
+        public void setBudget(long budget) {
+            this.budget = budget;
+        }
+
+        public Map<String, Long> getClientBudgets() {
+            return clientBudgets;
+        }
+
+        public void setClientBudgets(Map<String, Long> clientBudgets) {
+            this.clientBudgets = clientBudgets;
+        }
+
+        public Map<String, Integer> getFieldWeights() {
+            return fieldWeights;
+        }
+
+        public void setFieldWeights(Map<String, Integer> fieldWeights) {
+            this.fieldWeights = fieldWeights;
+        }
+    }
+
+    /**
+     * Near cache of single transaction lookups: a per-node Caffeine cache in front of Redis, evicted on every node
+     * through Redis pub/sub when a transaction is updated or deleted. Records in a terminal status live
+     * {@code l1TerminalTtl} on the node and {@code l2TerminalTtl} in Redis, the others {@code pendingTtl} in both.
+     */
+    public static class DocumentCache {
+
+        private boolean enabled = true;
+
+        private long maxSize = 10_000;
+
+        private Duration l1TerminalTtl = Duration.ofMinutes(10);
+
+        private Duration l2TerminalTtl = Duration.ofHours(24);
+
+        private Duration pendingTtl = Duration.ofSeconds(5);
+
+        private Duration tombstoneTtl = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getL1TerminalTtl() {
+            return l1TerminalTtl;
+        }
+
+        public void setL1TerminalTtl(Duration l1TerminalTtl) {
+            this.l1TerminalTtl = l1TerminalTtl;
+        }
+
+        public Duration getL2TerminalTtl() {
+            return l2TerminalTtl;
+        }
+
+        public void setL2TerminalTtl(Duration l2TerminalTtl) {
+            this.l2TerminalTtl = l2TerminalTtl;
+        }
+
+        public Duration getPendingTtl() {
+            return pendingTtl;
+        }
+
+        public void setPendingTtl(Duration pendingTtl) {
+            this.pendingTtl = pendingTtl;
+        }
+
+        /**
+         * How long an evicted transaction may not be cached again by lookups that started before the eviction; must
+         * exceed the time a lookup takes to read from MongoDB.
+         */
+        public Duration getTombstoneTtl() {
+            return tombstoneTtl;
+        }
+
+        public void setTombstoneTtl(Duration tombstoneTtl) {
+            this.tombstoneTtl = tombstoneTtl;
+        }
+    }
     // jhipster-needle-application-properties-property-class
+
+    /**
+     * Server-sent event notifications: every connection has a buffer of {@code bufferSize} events, written by
+     * {@code dispatchThreads} shared threads; a client that lets it fill up loses events or is disconnected, see
+     * {@link Overflow}, and so is a client whose write blocks for {@code sendTimeout}. Events are fanned out to every node over Redis pub/sub.
+     */
+    public static class Notifications {
+
+        public enum Overflow {
+            /** The new event is dropped, the connection stays open. */
+            DROP,
+            /** The connection is closed; the client is expected to reconnect. */
+            DISCONNECT,
+        }
+
+        private int bufferSize = 64;
+
+        private Overflow overflow = Overflow.DROP;
+
+        private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+        private Duration emitterTimeout = Duration.ofMinutes(30);
+
+        private int dispatchThreads = 4;
+
+        private Duration sendTimeout = Duration.ofSeconds(10);
+
+        private int maxConnections = 50_000;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public Overflow getOverflow() {
+            return overflow;
+        }
+
+        public void setOverflow(Overflow overflow) {
+            this.overflow = overflow;
+        }
+
+        public Duration getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+
+        public void setHeartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+        }
+
+        public Duration getEmitterTimeout() {
+            return emitterTimeout;
+        }
+
+        public void setEmitterTimeout(Duration emitterTimeout) {
+            this.emitterTimeout = emitterTimeout;
+        }
+
+        public int getDispatchThreads() {
+            return dispatchThreads;
+        }
+
+        public void setDispatchThreads(int dispatchThreads) {
+            this.dispatchThreads = dispatchThreads;
+        }
+
+        /**
+         * How long a write to one client may block its dispatch thread before the client is disconnected and the
+         * thread replaced until the write returns.
+         */
+        public Duration getSendTimeout() {
+            return sendTimeout;
+        }
+
+        public void setSendTimeout(Duration sendTimeout) {
+            this.sendTimeout = sendTimeout;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    /**
+     * The {@code user_timeline} buckets: up to {@code bucketSize} transaction summaries per party and day. Pages of a
+     * single party's transactions, newest first, ending within the first {@code maxRead} entries and asking only for
+     * properties the summaries hold are read from them.
+     */
+    public static class Timeline {
+
+        private boolean enabled = true;
+
+        private int bucketSize = 100;
+
+        private int maxRead = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBucketSize() {
+            return bucketSize;
+        }
+
+        public void setBucketSize(int bucketSize) {
+            this.bucketSize = bucketSize;
+        }
+
+        public int getMaxRead() {
+            return maxRead;
+        }
+
+        public void setMaxRead(int maxRead) {
+            this.maxRead = maxRead;
+        }
+    }
 }
@@ -49,6 +49,8 @@ public class DatabaseConfiguration {
         List<Converter<?, ?>> converters = new ArrayList<>();
         converters.add(DateToZonedDateTimeConverter.INSTANCE);
         converters.add(ZonedDateTimeToDateConverter.INSTANCE);
+        converters.add(DecimalConverters.BigDecimalToDecimal128Converter.INSTANCE);
+        converters.add(DecimalConverters.Decimal128ToBigDecimalConverter.INSTANCE);
         return new MongoCustomConversions(converters);
     }
 }
@@ -0,0 +1,36 @@
+package sn.ondmoney.history.config;
+
+import java.math.BigDecimal;
+import org.bson.types.Decimal128;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+/**
+ * Stores {@link BigDecimal} values as BSON {@code Decimal128} instead of strings, so that amounts compare numerically
+ * in queries and indexes.
+ */
+public final class DecimalConverters {
+
+    private DecimalConverters() {}
+
+    @WritingConverter
+    public enum BigDecimalToDecimal128Converter implements Converter<BigDecimal, Decimal128> {
+        INSTANCE;
+
+        @Override
+        public Decimal128 convert(BigDecimal source) {
+            return new Decimal128(source);
+        }
+    }
+
+    @ReadingConverter
+    public enum Decimal128ToBigDecimalConverter implements Converter<Decimal128, BigDecimal> {
+        INSTANCE;
+
+        @Override
+        public BigDecimal convert(Decimal128 source) {
+            return source.bigDecimalValue();
+        }
+    }
+}
@@ -7,17 +7,70 @@ import graphql.schema.Coercing;
 import graphql.schema.CoercingSerializeException;
 import graphql.schema.GraphQLScalarType;
 import graphql.scalars.ExtendedScalars;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
 import org.springframework.graphql.execution.RuntimeWiringConfigurer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import sn.ondmoney.history.service.TransactionHistoryService;
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.web.graphql.GraphQLClientInterceptor;
+import sn.ondmoney.history.web.graphql.QueryCostInstrumentation;
+import sn.ondmoney.history.web.graphql.TransactionHistoryGraphQLController;
 
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 @Configuration
 public class GraphQLConfig {
 
+    // Upper bound on the keys of one $in query
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * Registers the DataLoaders used by {@link TransactionHistoryGraphQLController} for transaction lookups. Every
+     * lookup made while resolving one level of a request (e.g. a dashboard aliasing {@code transactionHistory} dozens
+     * of times) is merged into a single {@code $in} query, and a key already loaded in the request is answered from the
+     * request's DataLoader cache.
+     */
+    public GraphQLConfig(BatchLoaderRegistry batchLoaderRegistry, TransactionHistoryService transactionHistoryService) {
+        batchLoaderRegistry
+            .forTypePair(String.class, TransactionHistoryDTO.class)
+            .withName(TransactionHistoryGraphQLController.TRANSACTION_BY_ID)
+            .withOptions(options -> options.setMaxBatchSize(MAX_BATCH_SIZE))
+            .registerMappedBatchLoader((ids, env) -> blocking(() -> transactionHistoryService.findAllById(ids)));
+        batchLoaderRegistry
+            .forTypePair(String.class, TransactionHistoryDTO.class)
+            .withName(TransactionHistoryGraphQLController.TRANSACTION_BY_TRANSACTION_ID)
+            .withOptions(options -> options.setMaxBatchSize(MAX_BATCH_SIZE))
+            .registerMappedBatchLoader((transactionIds, env) -> blocking(() -> transactionHistoryService.findAllByTransactionId(transactionIds)));
+        batchLoaderRegistry
+            .<String, List<TransactionHistoryDTO>>forName(TransactionHistoryGraphQLController.TRANSACTIONS_BY_CORRELATION_ID)
+            .withOptions(options -> options.setMaxBatchSize(MAX_BATCH_SIZE))
+            .registerMappedBatchLoader((correlationIds, env) ->
+                blocking(() -> transactionHistoryService.findAllByCorrelationId(correlationIds))
+            );
+    }
+
+    @Bean
+    public QueryCostInstrumentation queryCostInstrumentation(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        return new QueryCostInstrumentation(applicationProperties, meterRegistry);
+    }
+
+    @Bean
+    public GraphQLClientInterceptor graphQLClientInterceptor() {
+        return new GraphQLClientInterceptor();
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> query) {
+        return Mono.fromCallable(query).subscribeOn(Schedulers.boundedElastic());
+    }
+
     @Bean
     public RuntimeWiringConfigurer runtimeWiringConfigurer() {
         GraphQLScalarType instantScalar = GraphQLScalarType.newScalar()
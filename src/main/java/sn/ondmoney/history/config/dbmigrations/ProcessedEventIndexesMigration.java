@@ -0,0 +1,52 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Expires {@code processed_events} markers after {@link #RETENTION_DAYS} days and indexes the per-partition lookup
+ * used to warm the idempotency filters.
+ * <p>
+ * The retention must stay above the longest expected redelivery delay; the idempotency filters are warmed with every
+ * id it keeps. Changing it later needs a new change unit running {@code collMod}.
+ */
+@ChangeUnit(id = "processed-events-indexes", order = "002", author = "history-service", transactional = false)
+public class ProcessedEventIndexesMigration {
+
+    static final long RETENTION_DAYS = 30;
+
+    private static final String COLLECTION = "processed_events";
+
+    private final MongoTemplate template;
+
+    public ProcessedEventIndexesMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void createIndexes() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        collection.createIndex(
+            Indexes.ascending("processedAt"),
+            new IndexOptions().name("ttl_processed_at").expireAfter(RETENTION_DAYS, TimeUnit.DAYS)
+        );
+        collection.createIndex(
+            Indexes.ascending("eventType", "partition", "processedAt"),
+            new IndexOptions().name("idx_event_type_partition_processed_at")
+        );
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        collection.dropIndex("ttl_processed_at");
+        collection.dropIndex("idx_event_type_partition_processed_at");
+    }
+}
@@ -0,0 +1,104 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Converts the monetary fields of {@code transaction_history}, previously stored as strings, to {@code Decimal128}, so
+ * that amount ranges compare numbers, on the {@code amount} suffix of the keyset indexes as well.
+ * <p>
+ * Documents are streamed in batches and updated with unordered bulk writes; only string values are touched, so the
+ * conversion can be interrupted and run again. Strings that are not numbers are logged and left as they are.
+ */
+@ChangeUnit(id = "transaction-history-decimal-amounts", order = "005", author = "history-service", transactional = false)
+public class TransactionHistoryDecimalAmountsMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryDecimalAmountsMigration.class);
+
+    private static final String COLLECTION = "transaction_history";
+    private static final List<String> FIELDS = List.of("amount", "fees", "balance_before", "balance_after");
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate template;
+
+    public TransactionHistoryDecimalAmountsMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void migrate() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        convertAmounts(collection);
+    }
+
+    private void convertAmounts(MongoCollection<Document> collection) {
+        Bson stringAmounts = Filters.or(FIELDS.stream().map(field -> Filters.type(field, "string")).toList());
+        long converted = 0;
+        long skipped = 0;
+        List<WriteModel<Document>> updates = new ArrayList<>(BATCH_SIZE);
+        try (
+            MongoCursor<Document> cursor = collection
+                .find(stringAmounts)
+                .projection(Projections.include(FIELDS))
+                .batchSize(BATCH_SIZE)
+                .iterator()
+        ) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                List<Bson> sets = new ArrayList<>();
+                for (String field : FIELDS) {
+                    if (document.get(field) instanceof String value && !value.isBlank()) {
+                        try {
+                            sets.add(Updates.set(field, new Decimal128(new BigDecimal(value.trim()))));
+                        } catch (NumberFormatException e) {
+                            // Also thrown for numbers that Decimal128 cannot hold exactly
+                            LOG.warn(
+                                "Left {} of transaction_history document {} as is, not a number: '{}'",
+                                field,
+                                document.get("_id"),
+                                value
+                            );
+                            skipped++;
+                        }
+                    }
+                }
+                if (!sets.isEmpty()) {
+                    updates.add(new UpdateOneModel<>(Filters.eq("_id", document.get("_id")), Updates.combine(sets)));
+                }
+                if (updates.size() == BATCH_SIZE) {
+                    collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+                    converted += updates.size();
+                    updates.clear();
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+            converted += updates.size();
+        }
+        LOG.info("Converted amounts of {} transaction_history documents to Decimal128, {} values were not numbers", converted, skipped);
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        // Decimal128 values are left in place: they are read back as BigDecimal either way
+    }
+}
@@ -0,0 +1,132 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Creates the indexes backing the phone, date range, transaction id, correlation id and user id lookups on
+ * {@code transaction_history}.
+ * <p>
+ * {@code transaction_id} becomes unique among documents that have one, so duplicates left by earlier status
+ * transitions are set aside first: all but the most recently inserted document of each transaction move to
+ * {@code transaction_history_duplicates}, where they can be reviewed. Documents without a {@code transaction_id} are
+ * outside the partial unique index and left untouched.
+ * <p>
+ * Later index changes have change units of their own, so that databases that already ran this one get them too.
+ */
+@ChangeUnit(id = "transaction-history-indexes", order = "001", author = "history-service", transactional = false)
+public class TransactionHistoryIndexesMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryIndexesMigration.class);
+
+    private static final String COLLECTION = "transaction_history";
+    static final String DUPLICATES_COLLECTION = "transaction_history_duplicates";
+    static final int INDEX_NOT_FOUND = 27;
+    private static final int BATCH_SIZE = 1000;
+
+    static final Document HAS_TRANSACTION_ID = new Document("transaction_id", new Document("$type", "string"));
+
+    private final MongoTemplate template;
+
+    public TransactionHistoryIndexesMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void createIndexes() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        setAsideDuplicateTransactionIds(collection);
+
+        collection.createIndex(
+            Indexes.compoundIndex(Indexes.ascending("sender_phone"), Indexes.descending("transaction_date")),
+            new IndexOptions().name("idx_sender_phone_transaction_date")
+        );
+        collection.createIndex(
+            Indexes.compoundIndex(Indexes.ascending("receiver_phone"), Indexes.descending("transaction_date")),
+            new IndexOptions().name("idx_receiver_phone_transaction_date")
+        );
+        collection.createIndex(
+            Indexes.ascending("transaction_id"),
+            new IndexOptions().name("ux_transaction_id").unique(true).partialFilterExpression(HAS_TRANSACTION_ID)
+        );
+        collection.createIndex(Indexes.ascending("correlation_id"), new IndexOptions().name("idx_correlation_id"));
+        collection.createIndex(Indexes.ascending("user_id"), new IndexOptions().name("idx_user_id"));
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        for (String name : List.of(
+            "idx_sender_phone_transaction_date",
+            "idx_receiver_phone_transaction_date",
+            "ux_transaction_id",
+            "idx_correlation_id",
+            "idx_user_id"
+        )) {
+            dropIfExists(collection, name);
+        }
+    }
+
+    static void dropIfExists(MongoCollection<Document> collection, String name) {
+        try {
+            collection.dropIndex(name);
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != INDEX_NOT_FOUND) {
+                throw e;
+            }
+            LOG.debug("Index {} not found, nothing to drop", name);
+        }
+    }
+
+    private void setAsideDuplicateTransactionIds(MongoCollection<Document> collection) {
+        List<Document> pipeline = List.of(
+            new Document("$match", HAS_TRANSACTION_ID),
+            new Document("$sort", new Document("_id", -1)),
+            new Document(
+                "$group",
+                new Document("_id", "$transaction_id").append("ids", new Document("$push", "$_id")).append("count", new Document("$sum", 1))
+            ),
+            new Document("$match", new Document("count", new Document("$gt", 1)))
+        );
+
+        List<Object> stale = new ArrayList<>();
+        for (Document group : collection.aggregate(pipeline).allowDiskUse(true)) {
+            List<?> ids = group.getList("ids", Object.class);
+            stale.addAll(ids.subList(1, ids.size()));
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        LOG.warn(
+            "Moving {} superseded transaction_history documents with a duplicate transaction_id to {}",
+            stale.size(),
+            DUPLICATES_COLLECTION
+        );
+        MongoCollection<Document> duplicates = template.getCollection(DUPLICATES_COLLECTION);
+        for (int from = 0; from < stale.size(); from += BATCH_SIZE) {
+            Document filter = new Document("_id", new Document("$in", stale.subList(from, Math.min(from + BATCH_SIZE, stale.size()))));
+            // Copied before being removed, by _id, so that a run interrupted in between can be repeated
+            List<ReplaceOneModel<Document>> copies = new ArrayList<>();
+            for (Document document : collection.find(filter)) {
+                copies.add(new ReplaceOneModel<>(new Document("_id", document.get("_id")), document, new ReplaceOptions().upsert(true)));
+            }
+            if (!copies.isEmpty()) {
+                duplicates.bulkWrite(copies);
+            }
+            collection.deleteMany(filter);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.List;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Creates the keyset indexes of the party and date searches on {@code transaction_history}.
+ * <p>
+ * Parties are looked up by {@code sender_key} and {@code receiver_key}, set on existing documents by
+ * {@link TransactionHistoryPartyKeysMigration}. The indexes continue with ({@code transaction_date}, {@code _id}) so
+ * that cursor pages are read straight from the index, and end with {@code amount}, a {@code Decimal128} since
+ * {@link TransactionHistoryDecimalAmountsMigration}, so that an amount range is filtered on index keys. They are built
+ * once both backfills are done.
+ */
+@ChangeUnit(id = "transaction-history-keyset-indexes", order = "009", author = "history-service", transactional = false)
+public class TransactionHistoryKeysetIndexesMigration {
+
+    private static final String COLLECTION = "transaction_history";
+
+    private final MongoTemplate template;
+
+    public TransactionHistoryKeysetIndexesMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void createIndexes() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        collection.createIndex(
+            Indexes.compoundIndex(Indexes.ascending("sender_key"), Indexes.descending("transaction_date", "_id"), Indexes.ascending("amount")),
+            new IndexOptions().name("idx_sender_key_transaction_date_id_amount")
+        );
+        collection.createIndex(
+            Indexes.compoundIndex(Indexes.ascending("receiver_key"), Indexes.descending("transaction_date", "_id"), Indexes.ascending("amount")),
+            new IndexOptions().name("idx_receiver_key_transaction_date_id_amount")
+        );
+        collection.createIndex(
+            Indexes.compoundIndex(Indexes.descending("transaction_date", "_id"), Indexes.ascending("amount")),
+            new IndexOptions().name("idx_transaction_date_id_amount")
+        );
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        for (String name : List.of(
+            "idx_sender_key_transaction_date_id_amount",
+            "idx_receiver_key_transaction_date_id_amount",
+            "idx_transaction_date_id_amount"
+        )) {
+            TransactionHistoryIndexesMigration.dropIfExists(collection, name);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Limits {@code ux_transaction_id} to documents that have a {@code transaction_id}, on databases where change unit 001
+ * built it over every document: history records without one are stored as separate documents, which a plain unique
+ * index rejects from the second one on.
+ */
+@ChangeUnit(id = "transaction-history-partial-transaction-id-index", order = "008", author = "history-service", transactional = false)
+public class TransactionHistoryPartialTransactionIdIndexMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryPartialTransactionIdIndexMigration.class);
+
+    private static final String COLLECTION = "transaction_history";
+    private static final String INDEX = "ux_transaction_id";
+
+    private final MongoTemplate template;
+
+    public TransactionHistoryPartialTransactionIdIndexMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void makePartial() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        for (Document index : collection.listIndexes()) {
+            if (INDEX.equals(index.getString("name")) && index.containsKey("partialFilterExpression")) {
+                return;
+            }
+        }
+        LOG.info("Rebuilding {} as a partial index on documents with a transaction_id", INDEX);
+        TransactionHistoryIndexesMigration.dropIfExists(collection, INDEX);
+        collection.createIndex(
+            Indexes.ascending("transaction_id"),
+            new IndexOptions().name(INDEX).unique(true).partialFilterExpression(TransactionHistoryIndexesMigration.HAS_TRANSACTION_ID)
+        );
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        // The partial index is kept: a full one cannot be built once several documents lack a transaction_id
+    }
+}
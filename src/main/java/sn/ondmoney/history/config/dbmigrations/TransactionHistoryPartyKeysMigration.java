@@ -0,0 +1,93 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import sn.ondmoney.history.domain.PartyKey;
+
+/**
+ * Sets {@code sender_key} and {@code receiver_key}, the {@link PartyKey} of each phone, on the existing
+ * {@code transaction_history} documents, for the keyset indexes on the keys.
+ * <p>
+ * Documents missing a key are streamed in batches and updated with unordered bulk writes. Phones that are not phone
+ * numbers get a {@code null} key, so the backfill can be interrupted and run again. The {@code user_stats} rollups are
+ * then rebuilt by {@link UserStatsRebuildMigration}, since phone numbers are now normalized through their key.
+ * <p>
+ * With the change stream synchronizer enabled, the search index picks up the keys from the updates; otherwise it
+ * is rebuilt with {@code POST /api/debug/reindex}. Until then, searches also match the phones of documents without
+ * keys.
+ */
+@ChangeUnit(id = "transaction-history-party-keys", order = "006", author = "history-service", transactional = false)
+public class TransactionHistoryPartyKeysMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryPartyKeysMigration.class);
+
+    private static final String COLLECTION = "transaction_history";
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate template;
+
+    public TransactionHistoryPartyKeysMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void migrate() {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        backfillKeys(collection);
+    }
+
+    private void backfillKeys(MongoCollection<Document> collection) {
+        long updated = 0;
+        List<WriteModel<Document>> updates = new ArrayList<>(BATCH_SIZE);
+        try (
+            MongoCursor<Document> cursor = collection
+                .find(Filters.or(Filters.exists("sender_key", false), Filters.exists("receiver_key", false)))
+                .projection(Projections.include("sender_phone", "receiver_phone"))
+                .batchSize(BATCH_SIZE)
+                .iterator()
+        ) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                updates.add(
+                    new UpdateOneModel<>(
+                        Filters.eq("_id", document.get("_id")),
+                        Updates.combine(
+                            Updates.set("sender_key", PartyKey.valueOf(document.getString("sender_phone"))),
+                            Updates.set("receiver_key", PartyKey.valueOf(document.getString("receiver_phone")))
+                        )
+                    )
+                );
+                if (updates.size() == BATCH_SIZE) {
+                    collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+                    updated += updates.size();
+                    updates.clear();
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+            updated += updates.size();
+        }
+        LOG.info("Set party keys on {} transaction_history documents", updated);
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        // The keys are left in place: they are set again on every write
+    }
+}
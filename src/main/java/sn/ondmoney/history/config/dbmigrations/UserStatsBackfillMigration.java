@@ -0,0 +1,81 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.UserStats;
+import sn.ondmoney.history.service.UserStatsService;
+
+/**
+ * Builds the {@code user_stats} rollups from the existing {@code transaction_history} documents, through the same
+ * {@link UserStatsService#apply} path the consumers use, so phone normalization and keys match.
+ * <p>
+ * Runs while the application context starts ({@code mongock.runner-type: InitializingBean}), before the Kafka
+ * listeners, so no live write is counted twice.
+ */
+@ChangeUnit(id = "user-stats-backfill", order = "004", author = "history-service", transactional = false)
+public class UserStatsBackfillMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserStatsBackfillMigration.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate template;
+    private final UserStatsService userStatsService;
+
+    public UserStatsBackfillMigration(MongoTemplate template, UserStatsService userStatsService) {
+        this.template = template;
+        this.userStatsService = userStatsService;
+    }
+
+    @Execution
+    public void backfill() {
+        rebuild(template, userStatsService);
+    }
+
+    /**
+     * Drops {@code user_stats} and builds it again from every {@code transaction_history} document.
+     */
+    static void rebuild(MongoTemplate template, UserStatsService userStatsService) {
+        // Starts from scratch so that a retried run does not add twice
+        template.dropCollection(UserStats.class);
+        MongoCollection<Document> collection = template.getCollection(template.getCollectionName(UserStats.class));
+        collection.createIndex(
+            Indexes.ascending("phone", "direction", "month"),
+            new IndexOptions().name("idx_phone_direction_month")
+        );
+
+        long count = 0;
+        List<TransactionHistory> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<TransactionHistory> histories = template.stream(new Query().cursorBatchSize(BATCH_SIZE), TransactionHistory.class)) {
+            for (TransactionHistory history : (Iterable<TransactionHistory>) histories::iterator) {
+                batch.add(history);
+                if (batch.size() == BATCH_SIZE) {
+                    userStatsService.apply(List.of(), batch);
+                    count += batch.size();
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        userStatsService.apply(List.of(), batch);
+        count += batch.size();
+        LOG.info("Built user stats from {} transactions", count);
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.dropCollection(UserStats.class);
+    }
+}
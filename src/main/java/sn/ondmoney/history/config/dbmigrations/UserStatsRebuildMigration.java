@@ -0,0 +1,35 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import sn.ondmoney.history.service.UserStatsService;
+
+/**
+ * Rebuilds the {@code user_stats} rollups once {@link TransactionHistoryPartyKeysMigration} has set the party keys,
+ * since phone numbers are now normalized through their key and rollups built by {@link UserStatsBackfillMigration}
+ * may split one user across several spellings. The rebuilt rollups also keep the {@code RECEIVED} side of transfers to
+ * oneself apart, flagged {@code self_transfer}.
+ */
+@ChangeUnit(id = "user-stats-rebuild-party-keys", order = "010", author = "history-service", transactional = false)
+public class UserStatsRebuildMigration {
+
+    private final MongoTemplate template;
+    private final UserStatsService userStatsService;
+
+    public UserStatsRebuildMigration(MongoTemplate template, UserStatsService userStatsService) {
+        this.template = template;
+        this.userStatsService = userStatsService;
+    }
+
+    @Execution
+    public void rebuild() {
+        UserStatsBackfillMigration.rebuild(template, userStatsService);
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        // The rollups are left as rebuilt: they match what the writers maintain
+    }
+}
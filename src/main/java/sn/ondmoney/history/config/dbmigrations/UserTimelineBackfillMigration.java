@@ -0,0 +1,73 @@
+package sn.ondmoney.history.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.UserTimeline;
+import sn.ondmoney.history.service.UserTimelineService;
+
+/**
+ * Builds the {@code user_timeline} buckets from the existing {@code transaction_history} documents, through
+ * {@link UserTimelineService#append}.
+ * <p>
+ * The index serves both the bucket upserts, on party, day and {@code count}, and the reads, newest day first.
+ */
+@ChangeUnit(id = "user-timeline-backfill", order = "007", author = "history-service", transactional = false)
+public class UserTimelineBackfillMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserTimelineBackfillMigration.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate template;
+    private final UserTimelineService userTimelineService;
+
+    public UserTimelineBackfillMigration(MongoTemplate template, UserTimelineService userTimelineService) {
+        this.template = template;
+        this.userTimelineService = userTimelineService;
+    }
+
+    @Execution
+    public void backfill() {
+        // Starts from scratch; append() also replaces entries that live writes add meanwhile rather than doubling them
+        template.dropCollection(UserTimeline.class);
+        MongoCollection<Document> collection = template.getCollection(template.getCollectionName(UserTimeline.class));
+        collection.createIndex(
+            Indexes.compoundIndex(Indexes.ascending("party_key"), Indexes.descending("day"), Indexes.ascending("count")),
+            new IndexOptions().name("idx_party_key_day_count")
+        );
+
+        long count = 0;
+        List<TransactionHistory> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<TransactionHistory> histories = template.stream(new Query().cursorBatchSize(BATCH_SIZE), TransactionHistory.class)) {
+            for (TransactionHistory history : (Iterable<TransactionHistory>) histories::iterator) {
+                batch.add(history);
+                if (batch.size() == BATCH_SIZE) {
+                    userTimelineService.append(batch);
+                    count += batch.size();
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        userTimelineService.append(batch);
+        count += batch.size();
+        LOG.info("Built user timelines from {} transactions", count);
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.dropCollection(UserTimeline.class);
+    }
+}
@@ -0,0 +1,97 @@
+package sn.ondmoney.history.domain;
+
+/**
+ * Canonical key of a phone number: its E.164 digits as a number, {@code 221771234567} for {@code +221 77 123 45 67},
+ * {@code 00221771234567}, {@code 221771234567}, {@code 0771234567} or {@code 771234567} alike.
+ * <p>
+ * Spaces, dots, dashes, slashes and parentheses are ignored. A number without an international prefix is read as
+ * Senegalese when it has the 9 digits of a national number, or 10 with the trunk {@code 0}; as international
+ * otherwise. Parsing is a single pass over the characters and allocates nothing.
+ */
+public final class PartyKey {
+
+    /**
+     * Returned by {@link #of} for text that is not a phone number.
+     */
+    public static final long NONE = -1;
+
+    private static final long COUNTRY_CODE = 221;
+    private static final int NATIONAL_DIGITS = 9;
+    private static final long NATIONAL_RANGE = 1_000_000_000L;
+
+    private PartyKey() {}
+
+    /**
+     * @return the key of {@code phone}, {@link #NONE} if it is {@code null}, blank or not a phone number.
+     */
+    public static long of(CharSequence phone) {
+        if (phone == null) {
+            return NONE;
+        }
+        boolean plus = false;
+        int digits = 0;
+        int leadingZeros = 0;
+        long value = 0;
+        for (int i = 0, length = phone.length(); i < length; i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (value == 0 && c == '0') {
+                    leadingZeros++;
+                } else if (++digits > 15) {
+                    // Longer than any E.164 number
+                    return NONE;
+                } else {
+                    value = value * 10 + (c - '0');
+                }
+            } else if (c == '+' && !plus && digits == 0 && leadingZeros == 0) {
+                plus = true;
+            } else if (!isSeparator(c)) {
+                return NONE;
+            }
+        }
+        if (digits == 0) {
+            return NONE;
+        }
+        if (plus || leadingZeros == 2) {
+            // International prefix: + or 00
+            return leadingZeros == (plus ? 0 : 2) ? value : NONE;
+        }
+        if (leadingZeros == 1 && digits == NATIONAL_DIGITS) {
+            // Trunk prefix of a national number
+            return COUNTRY_CODE * NATIONAL_RANGE + value;
+        }
+        if (leadingZeros > 0) {
+            return NONE;
+        }
+        if (digits == NATIONAL_DIGITS) {
+            return COUNTRY_CODE * NATIONAL_RANGE + value;
+        }
+        return value;
+    }
+
+    /**
+     * Same as {@link #of}, {@code null} instead of {@link #NONE}.
+     */
+    public static Long valueOf(CharSequence phone) {
+        long key = of(phone);
+        return key != NONE ? key : null;
+    }
+
+    /**
+     * The key in the {@code 00}-prefixed international form, as phone numbers were normalized before keys existed.
+     */
+    public static String toInternational(long key) {
+        return "00" + key;
+    }
+
+    /**
+     * The key in national form, {@code 771234567} for {@code 221771234567}; {@code null} for a number outside Senegal.
+     */
+    public static String toNational(long key) {
+        return key / NATIONAL_RANGE == COUNTRY_CODE ? String.valueOf(key % NATIONAL_RANGE) : null;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '.' || c == '-' || c == '/' || c == '(' || c == ')' || Character.isWhitespace(c);
+    }
+}
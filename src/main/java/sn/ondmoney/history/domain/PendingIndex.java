@@ -0,0 +1,39 @@
+package sn.ondmoney.history.domain;
+
+import java.time.Instant;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+/**
+ * A {@link TransactionHistory} whose Elasticsearch document could not be written, because the indexer was full or
+ * Elasticsearch kept failing. Only the id is kept, with the dates its earlier versions were indexed under: the document
+ * is read again from MongoDB when the spill is drained, and indexed if it still exists or deleted from the index
+ * otherwise.
+ */
+@Setter
+@Getter
+@Document(collection = "pending_index")
+public class PendingIndex {
+
+    /**
+     * Id of the {@link TransactionHistory}.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Time of the latest spill, used to only remove an entry if it was not spilled again while being drained.
+     */
+    @Field("spilled_at")
+    private Instant spilledAt;
+
+    /**
+     * {@code transactionDate} of earlier versions, whose month indices may still hold a copy to delete.
+     */
+    @Field("previous_dates")
+    private List<Instant> previousDates;
+}
@@ -18,6 +18,8 @@ public class ProcessedEvent {
     @Indexed
     private String eventType;
 
+    private Integer partition;
+
     private Instant processedAt;
 
     public ProcessedEvent() {}
@@ -33,6 +35,11 @@ public class ProcessedEvent {
         this.processedAt = Instant.now();
     }
 
+    public ProcessedEvent(String eventId, String eventType, Integer partition) {
+        this(eventId, eventType);
+        this.partition = partition;
+    }
+
     public String getEventId() {
         return eventId;
     }
@@ -49,6 +56,14 @@ public class ProcessedEvent {
         this.eventType = eventType;
     }
 
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public void setPartition(Integer partition) {
+        this.partition = partition;
+    }
+
     public Instant getProcessedAt() {
         return processedAt;
     }
@@ -0,0 +1,41 @@
+package sn.ondmoney.history.domain;
+
+import java.time.Instant;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import sn.ondmoney.history.domain.enumeration.ReindexState;
+
+/**
+ * Progress of a search reindex job, saved after every completed batch so that a failed run can be resumed.
+ */
+@Setter
+@Getter
+@Document(collection = "reindex_checkpoints")
+public class ReindexCheckpoint {
+
+    @Id
+    private String id;
+
+    private String targetIndex;
+
+    private ReindexState state;
+
+    /**
+     * Highest {@code _id} such that it and every lower id have been indexed.
+     */
+    private String lastId;
+
+    private long indexed;
+
+    private long total;
+
+    private Instant startedAt;
+
+    private Instant updatedAt;
+
+    private Instant finishedAt;
+
+    private String error;
+}
@@ -7,6 +7,7 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.Instant;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
@@ -15,11 +16,14 @@ import org.springframework.data.mongodb.core.mapping.Field;
 
 /**
  * A TransactionHistory.
+ * <p>
+ * Indexed in monthly Elasticsearch indices behind the {@code transactionhistory} alias, created from an index template
+ * rather than by Spring Data, see {@code TransactionHistoryIndices}.
  */
 @Setter
 @Getter
 @Document(collection = "transaction_history")
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "transactionhistory")
+@org.springframework.data.elasticsearch.annotations.Document(indexName = "transactionhistory", createIndex = false)
 public class TransactionHistory implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -65,6 +69,22 @@ public class TransactionHistory implements Serializable {
     @org.springframework.data.elasticsearch.annotations.Field(type = org.springframework.data.elasticsearch.annotations.FieldType.Text)
     private String receiverPhone;
 
+    /**
+     * {@link PartyKey} of {@code senderPhone}, set with it; {@code null} if it is not a phone number.
+     */
+    @Setter(AccessLevel.NONE)
+    @Field("sender_key")
+    @org.springframework.data.elasticsearch.annotations.Field(type = org.springframework.data.elasticsearch.annotations.FieldType.Long)
+    private Long senderKey;
+
+    /**
+     * {@link PartyKey} of {@code receiverPhone}, set with it; {@code null} if it is not a phone number.
+     */
+    @Setter(AccessLevel.NONE)
+    @Field("receiver_key")
+    @org.springframework.data.elasticsearch.annotations.Field(type = org.springframework.data.elasticsearch.annotations.FieldType.Long)
+    private Long receiverKey;
+
     @Field("sender_name")
     @org.springframework.data.elasticsearch.annotations.Field(type = org.springframework.data.elasticsearch.annotations.FieldType.Text)
     private String senderName;
@@ -191,6 +211,16 @@ public class TransactionHistory implements Serializable {
         return this;
     }
 
+    public void setSenderPhone(String senderPhone) {
+        this.senderPhone = senderPhone;
+        this.senderKey = PartyKey.valueOf(senderPhone);
+    }
+
+    public void setReceiverPhone(String receiverPhone) {
+        this.receiverPhone = receiverPhone;
+        this.receiverKey = PartyKey.valueOf(receiverPhone);
+    }
+
     public TransactionHistory senderPhone(String senderPhone) {
         this.setSenderPhone(senderPhone);
         return this;
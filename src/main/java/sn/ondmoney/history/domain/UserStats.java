@@ -0,0 +1,82 @@
+package sn.ondmoney.history.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+
+/**
+ * Running totals of one user's transactions for a month, direction, type and status.
+ * <p>
+ * Documents are only ever changed with atomic {@code $inc}/{@code $min}/{@code $max} upserts, so concurrent
+ * consumers never overwrite each other. The id is derived from the key, see {@link #idOf}.
+ */
+@Setter
+@Getter
+@Document(collection = "user_stats")
+public class UserStats {
+
+    @Id
+    private String id;
+
+    @Field("phone")
+    private String phone;
+
+    /**
+     * Month in {@code application.stats.time-zone}, formatted {@code yyyy-MM}.
+     */
+    @Field("month")
+    private String month;
+
+    /**
+     * {@code SENT} or {@code RECEIVED}; a transfer counts once for each side.
+     */
+    @Field("direction")
+    private TransactionDirection direction;
+
+    /**
+     * Set on the {@code RECEIVED} rollups of transfers to oneself, kept apart so that totals over both directions
+     * count such a transfer once, from its {@code SENT} side.
+     */
+    @Field("self_transfer")
+    private boolean selfTransfer;
+
+    @Field("type")
+    private TransactionType type;
+
+    @Field("status")
+    private TransactionStatus status;
+
+    @Field("count")
+    private long count;
+
+    @Field(name = "total_amount", targetType = FieldType.DECIMAL128)
+    private BigDecimal totalAmount;
+
+    @Field("first_transaction_date")
+    private Instant firstTransactionDate;
+
+    @Field("last_transaction_date")
+    private Instant lastTransactionDate;
+
+    @Field("updated_at")
+    private Instant updatedAt;
+
+    public static String idOf(
+        String phone,
+        String month,
+        TransactionDirection direction,
+        TransactionType type,
+        TransactionStatus status,
+        boolean selfTransfer
+    ) {
+        return phone + ":" + month + ":" + direction + ":" + type + ":" + status + (selfTransfer ? ":SELF" : "");
+    }
+}
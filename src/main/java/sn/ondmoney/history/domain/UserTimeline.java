@@ -0,0 +1,96 @@
+package sn.ondmoney.history.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+
+/**
+ * A bucket of one party's transactions for a day: summaries of up to {@code application.timeline.bucket-size}
+ * transactions, newest first. A day with more transactions has several buckets.
+ * <p>
+ * Documents are only ever changed with atomic {@code $push}/{@code $pull} upserts that keep {@code count} in step
+ * with {@code entries}; buckets emptied by deletes stay behind with a {@code count} of 0.
+ */
+@Setter
+@Getter
+@Document(collection = "user_timeline")
+public class UserTimeline {
+
+    @Id
+    private String id;
+
+    /**
+     * {@link PartyKey} of the sender or receiver.
+     */
+    @Field("party_key")
+    private long partyKey;
+
+    /**
+     * UTC day of the entries, formatted {@code yyyy-MM-dd}.
+     */
+    @Field("day")
+    private String day;
+
+    @Field("count")
+    private int count;
+
+    @Field("entries")
+    private List<Entry> entries = new ArrayList<>();
+
+    /**
+     * The properties of a transaction shown in a list.
+     */
+    @Setter
+    @Getter
+    public static class Entry {
+
+        @Field("history_id")
+        private String historyId;
+
+        @Field("transaction_id")
+        private String transactionId;
+
+        /**
+         * {@code SENT} or {@code RECEIVED} from the party's side; {@code SENT} for a transfer to itself.
+         */
+        @Field("direction")
+        private TransactionDirection direction;
+
+        @Field("type")
+        private TransactionType type;
+
+        @Field("status")
+        private TransactionStatus status;
+
+        @Field(name = "amount", targetType = FieldType.DECIMAL128)
+        private BigDecimal amount;
+
+        @Field("currency")
+        private String currency;
+
+        @Field("sender_phone")
+        private String senderPhone;
+
+        @Field("receiver_phone")
+        private String receiverPhone;
+
+        @Field("sender_name")
+        private String senderName;
+
+        @Field("receiver_name")
+        private String receiverName;
+
+        @Field("transaction_date")
+        private Instant transactionDate;
+    }
+}
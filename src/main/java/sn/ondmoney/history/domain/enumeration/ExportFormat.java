@@ -0,0 +1,21 @@
+package sn.ondmoney.history.domain.enumeration;
+
+import lombok.Getter;
+
+/**
+ * Output format of a transaction export.
+ */
+@Getter
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+}
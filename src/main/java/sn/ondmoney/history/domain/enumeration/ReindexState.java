@@ -0,0 +1,10 @@
+package sn.ondmoney.history.domain.enumeration;
+
+/**
+ * The ReindexState enumeration.
+ */
+public enum ReindexState {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
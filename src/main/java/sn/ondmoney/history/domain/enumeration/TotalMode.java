@@ -0,0 +1,15 @@
+package sn.ondmoney.history.domain.enumeration;
+
+/**
+ * How the total number of matches is computed for a search page.
+ */
+public enum TotalMode {
+    /** Full count of the matching documents. */
+    EXACT,
+    /** Counts up to {@code application.search.total-cap} documents; larger totals are reported as "cap+". */
+    CAPPED,
+    /** Collection metadata when there is no filter, otherwise a capped count. */
+    ESTIMATED,
+    /** No count at all: only whether a next page exists. */
+    NONE
+}
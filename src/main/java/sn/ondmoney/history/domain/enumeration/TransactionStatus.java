@@ -20,4 +20,11 @@ public enum TransactionStatus {
         this.description = description;
     }
 
+    /**
+     * Whether the transaction reached its final state; its history record is then not expected to change.
+     */
+    public boolean isTerminal() {
+        return this == SUCCESS || this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+
 }
@@ -0,0 +1,88 @@
+package sn.ondmoney.history.kafka;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The parts of a structured-mode CloudEvent the consumers read, bound by {@link CloudEventDecoder}: the {@code id},
+ * {@code type} and {@code ondmoney.correlationId} attributes and the scalar members of {@code data}, as text.
+ * <p>
+ * Instances are reused by the decoder and only valid until the next event is decoded on the same thread.
+ */
+public final class CloudEvent {
+
+    private String id;
+    private String type;
+    private String correlationId;
+    private boolean hasData;
+    private final Map<String, String> data = new HashMap<>();
+
+    void reset() {
+        id = null;
+        type = null;
+        correlationId = null;
+        hasData = false;
+        data.clear();
+    }
+
+    void setId(String id) {
+        this.id = id;
+    }
+
+    void setType(String type) {
+        this.type = type;
+    }
+
+    void setCorrelationId(String correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    void setHasData(boolean hasData) {
+        this.hasData = hasData;
+    }
+
+    void putData(String name, String value) {
+        data.put(name, value);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * Whether the envelope has a {@code data} object.
+     */
+    public boolean hasData() {
+        return hasData;
+    }
+
+    /**
+     * The scalar {@code data} member {@code name}, {@code null} if it is absent, null or not a scalar.
+     */
+    public String data(String name) {
+        return data.get(name);
+    }
+
+    public String data(String name, String defaultValue) {
+        return data.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * The {@code data} member {@code name} as a decimal, parsed from its JSON text so that no precision is lost.
+     *
+     * @throws NumberFormatException if the member is not a number.
+     */
+    public BigDecimal decimal(String name, BigDecimal defaultValue) {
+        String value = data.get(name);
+        return value != null ? new BigDecimal(value) : defaultValue;
+    }
+}
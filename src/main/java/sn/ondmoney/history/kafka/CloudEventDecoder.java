@@ -0,0 +1,96 @@
+package sn.ondmoney.history.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Decodes structured-mode CloudEvents straight from the record bytes with a streaming {@link JsonParser}, without
+ * building a {@code JsonNode} tree. Only the members {@link CloudEvent} exposes are kept; everything else, including
+ * nested objects inside {@code data}, is skipped.
+ */
+@Component
+public class CloudEventDecoder {
+
+    private static final String EXTENSION = "ondmoney";
+
+    private final JsonFactory jsonFactory;
+    private final ThreadLocal<CloudEvent> events = ThreadLocal.withInitial(CloudEvent::new);
+
+    public CloudEventDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * @return the calling thread's event, overwritten by its next call.
+     * @throws IOException if the payload is not a JSON object.
+     */
+    public CloudEvent decode(byte[] payload) throws IOException {
+        CloudEvent event = events.get();
+        event.reset();
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "CloudEvent payload is not a JSON object");
+            }
+            String name;
+            while ((name = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                switch (name) {
+                    case "id" -> event.setId(text(parser, token));
+                    case "type" -> event.setType(text(parser, token));
+                    case "data" -> readData(parser, token, event);
+                    case EXTENSION -> readExtension(parser, token, event);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return event;
+    }
+
+    private static void readData(JsonParser parser, JsonToken token, CloudEvent event) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        event.setHasData(true);
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            String value = text(parser, parser.nextToken());
+            if (value != null) {
+                event.putData(name, value);
+            }
+        }
+    }
+
+    private static void readExtension(JsonParser parser, JsonToken token, CloudEvent event) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            if ("correlationId".equals(name)) {
+                event.setCorrelationId(text(parser, value));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Text of a scalar value; {@code null} for JSON null, objects and arrays, which are skipped.
+     */
+    private static String text(JsonParser parser, JsonToken token) throws IOException {
+        if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+package sn.ondmoney.history.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for CloudEvents binary-mode headers on raw consumer records.
+ */
+final class CloudEventHeaders {
+
+    static final String EVENT_ID = "ce_id";
+
+    private CloudEventHeaders() {}
+
+    /**
+     * Resolves the event id from the {@code ce_id} header, then the envelope {@code id}, and finally from the record
+     * coordinates so that a redelivered record always maps to the same id.
+     */
+    static String eventId(ConsumerRecord<?, ?> record, CloudEvent cloudEvent) {
+        Header header = record.headers().lastHeader(EVENT_ID);
+        if (header != null && header.value() != null && header.value().length > 0) {
+            return new String(header.value(), StandardCharsets.UTF_8);
+        }
+        if (cloudEvent.getId() != null) {
+            return cloudEvent.getId();
+        }
+        return record.topic() + "-" + record.partition() + "-" + record.offset();
+    }
+}
@@ -0,0 +1,44 @@
+package sn.ondmoney.history.kafka;
+
+import sn.ondmoney.history.domain.ProcessedEvent;
+import sn.ondmoney.history.domain.TransactionHistory;
+
+import java.util.List;
+
+/**
+ * A consumed CloudEvent turned into the history records it produces. The event type is the source topic.
+ */
+public class DecodedEvent {
+
+    private final String eventId;
+    private final String eventType;
+    private final int partition;
+    private final List<TransactionHistory> histories;
+
+    public DecodedEvent(String eventId, String eventType, int partition, List<TransactionHistory> histories) {
+        this.eventId = eventId;
+        this.eventType = eventType;
+        this.partition = partition;
+        this.histories = histories;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public List<TransactionHistory> getHistories() {
+        return histories;
+    }
+
+    public ProcessedEvent toProcessedEvent() {
+        return new ProcessedEvent(eventId, eventType, partition);
+    }
+}
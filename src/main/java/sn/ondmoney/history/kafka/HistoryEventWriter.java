@@ -0,0 +1,256 @@
+package sn.ondmoney.history.kafka;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import sn.ondmoney.history.domain.ProcessedEvent;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.service.TransactionDocumentCache;
+import sn.ondmoney.history.service.TransactionSearchCache;
+import sn.ondmoney.history.service.UserStatsService;
+import sn.ondmoney.history.service.UserTimelineService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes decoded events to MongoDB: history records first, then the matching
+ * {@link ProcessedEvent} markers, each as a single unordered bulk write.
+ * <p>
+ * History records are upserted by {@code transaction_id}, so a later status for the same transaction
+ * (e.g. {@code transfer.failed} after {@code transfer.initiated}) replaces the earlier record. The topics are not
+ * ordered relative to each other, so a record with a non-terminal status never replaces one with a terminal status:
+ * such records are dropped, and the replace filter repeats the check for writes racing on another instance. The
+ * replaced records are read first so that the {@code user_stats} rollups move the transaction from its old status to
+ * the new one. That change is stored with the record in the same replace and cleared once applied to the rollups, so
+ * a crash in between leaves it for the redelivery to apply, see {@link UserStatsService#applyPending}. Records without
+ * a {@code transaction_id} are inserted as separate documents, outside the partial unique index.
+ */
+@Component
+public class HistoryEventWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HistoryEventWriter.class);
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+    private static final String COLLECTION = "transaction_history";
+
+    private static final List<TransactionStatus> TERMINAL_STATUSES = Arrays.stream(TransactionStatus.values())
+        .filter(TransactionStatus::isTerminal)
+        .toList();
+
+    private final MongoTemplate mongoTemplate;
+    private final ProcessedEventFilter processedEventFilter;
+    private final UserStatsService userStatsService;
+    private final UserTimelineService userTimelineService;
+    private final TransactionSearchCache searchCache;
+    private final TransactionDocumentCache documentCache;
+
+    public HistoryEventWriter(
+            MongoTemplate mongoTemplate,
+            ProcessedEventFilter processedEventFilter,
+            UserStatsService userStatsService,
+            UserTimelineService userTimelineService,
+            TransactionSearchCache searchCache,
+            TransactionDocumentCache documentCache) {
+        this.mongoTemplate = mongoTemplate;
+        this.processedEventFilter = processedEventFilter;
+        this.userStatsService = userStatsService;
+        this.userTimelineService = userTimelineService;
+        this.searchCache = searchCache;
+        this.documentCache = documentCache;
+    }
+
+    /**
+     * Deduplicates a poll's worth of events (within the batch and against {@code processed_events}) and writes the rest.
+     *
+     * @return the number of events actually written.
+     */
+    public int writeBatch(List<DecodedEvent> events) {
+        Map<String, DecodedEvent> pending = new LinkedHashMap<>();
+        for (DecodedEvent event : events) {
+            pending.putIfAbsent(event.getEventId(), event);
+        }
+
+        Set<String> alreadyProcessed = processedEventFilter.findProcessed(pending.values());
+        if (!alreadyProcessed.isEmpty()) {
+            LOG.info("Skipping {} already processed events", alreadyProcessed.size());
+            pending.keySet().removeAll(alreadyProcessed);
+        }
+
+        write(pending.values());
+        return pending.size();
+    }
+
+    /**
+     * Writes the given events without any deduplication.
+     */
+    public void write(Collection<DecodedEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        // Unordered writes may run in any order, so only the last record per transaction is kept. Records without a
+        // transaction id cannot be matched to an earlier one and are inserted as they are
+        Map<String, TransactionHistory> histories = new LinkedHashMap<>();
+        List<TransactionHistory> unidentified = new ArrayList<>();
+        events.forEach(event ->
+            event.getHistories().forEach(history -> {
+                if (history.getTransactionId() != null) {
+                    histories.put(history.getTransactionId(), history);
+                } else {
+                    unidentified.add(history);
+                }
+            })
+        );
+        List<String> transactionIds = List.copyOf(histories.keySet());
+        List<Document> stored = transactionIds.isEmpty()
+            ? List.of()
+            : mongoTemplate.find(Query.query(Criteria.where("transaction_id").in(transactionIds)), Document.class, COLLECTION);
+
+        // Stats changes left behind by an earlier attempt go first, before the records holding them are replaced
+        List<Document> recovered = stored
+            .stream()
+            .map(document -> document.get(UserStatsService.PENDING_FIELD, Document.class))
+            .filter(Objects::nonNull)
+            .toList();
+        if (!recovered.isEmpty()) {
+            LOG.info("Applying {} user stats changes left pending by an earlier write", recovered.size());
+            userStatsService.applyPending(recovered);
+        }
+
+        List<TransactionHistory> previous = new ArrayList<>(stored.size());
+        List<String> ids = new ArrayList<>();
+        for (Document document : stored) {
+            TransactionHistory history = mongoTemplate.getConverter().read(TransactionHistory.class, document);
+            ids.add(history.getId());
+            if (isRegression(history, histories.get(history.getTransactionId()))) {
+                histories.remove(history.getTransactionId());
+            } else {
+                previous.add(history);
+            }
+        }
+
+        List<TransactionHistory> written = new ArrayList<>(histories.values());
+        written.addAll(unidentified);
+        if (!written.isEmpty()) {
+            // Ids are set here rather than by the upserts, so that the user timeline can refer to the documents
+            Map<String, TransactionHistory> previousByTransaction = previous
+                .stream()
+                .collect(Collectors.toMap(TransactionHistory::getTransactionId, history -> history, (a, b) -> a));
+            histories.forEach((transactionId, history) -> {
+                TransactionHistory stale = previousByTransaction.get(transactionId);
+                history.setId(stale != null ? stale.getId() : new ObjectId().toHexString());
+            });
+            unidentified.forEach(history -> history.setId(new ObjectId().toHexString()));
+
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TransactionHistory.class);
+            List<Document> changes = new ArrayList<>();
+            histories.forEach((transactionId, history) -> {
+                Criteria filter = Criteria.where("transactionId").is(transactionId);
+                if (!isTerminal(history)) {
+                    // Matches nothing if a terminal record was stored meanwhile: the upsert then fails on the unique index
+                    filter = filter.and("status").nin(TERMINAL_STATUSES);
+                }
+                Document change = userStatsService.pending(previousByTransaction.get(transactionId), history);
+                changes.add(change);
+                operations.replaceOne(Query.query(filter), toDocument(history, change), FindAndReplaceOptions.options().upsert());
+            });
+            for (TransactionHistory history : unidentified) {
+                Document change = userStatsService.pending(null, history);
+                changes.add(change);
+                operations.insert(toDocument(history, change));
+            }
+            Set<Integer> rejected = execute(operations);
+
+            List<Document> applied = new ArrayList<>(recovered);
+            for (int i = 0; i < changes.size(); i++) {
+                if (changes.get(i) != null && !rejected.contains(i)) {
+                    applied.add(changes.get(i));
+                }
+            }
+            userStatsService.applyPending(applied);
+            if (!applied.isEmpty()) {
+                List<String> ops = applied.stream().map(change -> change.getString("op")).toList();
+                written.forEach(history -> ids.add(history.getId()));
+                mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("id").in(ids).and(UserStatsService.PENDING_FIELD + ".op").in(ops)),
+                    new Update().unset(UserStatsService.PENDING_FIELD),
+                    TransactionHistory.class
+                );
+            }
+            userTimelineService.apply(previous, written);
+            searchCache.invalidate(previous, written);
+            documentCache.evict(previous.stream().map(TransactionHistory::getId).toList());
+        }
+
+        List<ProcessedEvent> processedEvents = events.stream().map(DecodedEvent::toProcessedEvent).toList();
+        execute(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProcessedEvent.class).insert(processedEvents));
+        processedEventFilter.markProcessed(events);
+
+        LOG.debug("Wrote {} history records for {} events", written.size(), events.size());
+    }
+
+    /**
+     * Whether the incoming record would move a terminal transaction back to a non-terminal status, in which case it is
+     * dropped.
+     */
+    private static boolean isRegression(TransactionHistory stored, TransactionHistory incoming) {
+        if (incoming == null || !isTerminal(stored) || isTerminal(incoming)) {
+            return false;
+        }
+        LOG.debug("Ignored {} record of transaction {}, already {}", incoming.getStatus(), stored.getTransactionId(), stored.getStatus());
+        return true;
+    }
+
+    /**
+     * The record as stored, holding its stats change until applied.
+     */
+    private Document toDocument(TransactionHistory history, Document change) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(history, document);
+        if (change != null) {
+            document.put(UserStatsService.PENDING_FIELD, change);
+        }
+        return document;
+    }
+
+    private static boolean isTerminal(TransactionHistory history) {
+        return history.getStatus() != null && history.getStatus().isTerminal();
+    }
+
+    /**
+     * @return the indexes of the operations rejected as duplicates.
+     */
+    private Set<Integer> execute(BulkOperations operations) {
+        try {
+            operations.execute();
+            return Set.of();
+        } catch (BulkOperationException e) {
+            // Redelivered records may already be stored: duplicate keys are expected, anything else is not
+            List<BulkWriteError> errors = e.getErrors();
+            if (errors.stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY_ERROR)) {
+                throw e;
+            }
+            LOG.debug("Ignored {} duplicate key errors during bulk write", errors.size());
+            return errors.stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+        }
+    }
+}
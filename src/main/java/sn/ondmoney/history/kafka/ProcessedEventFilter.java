@@ -0,0 +1,236 @@
+package sn.ondmoney.history.kafka;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.ProcessedEvent;
+import sn.ondmoney.history.repository.ProcessedEventRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Front cache for the {@code processed_events} idempotency check.
+ * <p>
+ * Each assigned partition gets a {@link ScalableBloomFilter} warmed from the event ids recorded for it, which answers
+ * "definitely new" without a MongoDB round-trip. Recently written ids are also kept in a bounded Caffeine set, which
+ * answers "already processed" for quick redeliveries. MongoDB is only consulted on a possible Bloom filter hit, or when
+ * no filter exists for the partition.
+ * <p>
+ * Filters are warmed in the background, off the rebalance; until a partition's filter is ready its checks go to
+ * MongoDB, and ids written meanwhile are added to the filter being warmed. Every id still in {@code processed_events}
+ * is loaded, i.e. the whole retention of its TTL index, so the filter can vouch for any redelivery MongoDB would have
+ * caught. A partition with more than {@code warmup-max-ids} ids gets no filter at all, since a truncated filter would
+ * report the ids it left out as new.
+ */
+@Component
+public class ProcessedEventFilter implements ConsumerAwareRebalanceListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessedEventFilter.class);
+
+    private final Map<TopicPartition, ScalableBloomFilter> filters = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, ScalableBloomFilter> warming = new ConcurrentHashMap<>();
+    private final ExecutorService warmer;
+    private final Cache<String, Boolean> recentIds;
+    private final MongoTemplate mongoTemplate;
+    private final ProcessedEventRepository processedEventRepository;
+    private final ApplicationProperties.Kafka.Idempotency properties;
+
+    private final Counter recentHits;
+    private final Counter definitelyNew;
+    private final Counter mongoLookups;
+
+    public ProcessedEventFilter(
+            MongoTemplate mongoTemplate,
+            ProcessedEventRepository processedEventRepository,
+            ApplicationProperties applicationProperties,
+            MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.processedEventRepository = processedEventRepository;
+        this.properties = applicationProperties.getKafka().getIdempotency();
+        this.recentIds = Caffeine.newBuilder().maximumSize(properties.getRecentIdsSize()).build();
+        this.recentHits = lookupCounter(meterRegistry, "recent_hit");
+        this.definitelyNew = lookupCounter(meterRegistry, "bloom_negative");
+        this.mongoLookups = lookupCounter(meterRegistry, "mongo");
+        this.warmer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("history.idempotency.lookups")
+            .description("Idempotency checks by the layer that answered them")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (TopicPartition partition : partitions) {
+            ScalableBloomFilter filter = new ScalableBloomFilter(properties.getExpectedInsertions(), properties.getFalsePositiveRate());
+            warming.put(partition, filter);
+            warmer.execute(() -> warmUp(partition, filter));
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(this::release);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(this::release);
+    }
+
+    private void release(TopicPartition partition) {
+        warming.remove(partition);
+        filters.remove(partition);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        warmer.shutdownNow();
+    }
+
+    /**
+     * Single-record check.
+     */
+    public boolean isProcessed(String topic, int partition, String eventId) {
+        if (properties.isEnabled()) {
+            if (recentIds.getIfPresent(eventId) != null) {
+                recentHits.increment();
+                return true;
+            }
+            if (isDefinitelyNew(topic, partition, eventId)) {
+                definitelyNew.increment();
+                return false;
+            }
+        }
+        mongoLookups.increment();
+        return processedEventRepository.existsByEventId(eventId);
+    }
+
+    /**
+     * Batch check: only the events that are possibly known go to MongoDB, in a single {@code $in} query.
+     *
+     * @return the ids of the events that were already processed.
+     */
+    public Set<String> findProcessed(Collection<DecodedEvent> events) {
+        Set<String> processed = new HashSet<>();
+        List<String> candidates = new ArrayList<>();
+        for (DecodedEvent event : events) {
+            String eventId = event.getEventId();
+            if (!properties.isEnabled()) {
+                candidates.add(eventId);
+            } else if (recentIds.getIfPresent(eventId) != null) {
+                recentHits.increment();
+                processed.add(eventId);
+            } else if (isDefinitelyNew(event.getEventType(), event.getPartition(), eventId)) {
+                definitelyNew.increment();
+            } else {
+                candidates.add(eventId);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            mongoLookups.increment(candidates.size());
+            processedEventRepository.findByEventIdIn(candidates).forEach(event -> processed.add(event.getEventId()));
+        }
+        return processed;
+    }
+
+    /**
+     * Records events whose history has been durably written.
+     */
+    public void markProcessed(Collection<DecodedEvent> events) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (DecodedEvent event : events) {
+            recentIds.put(event.getEventId(), Boolean.TRUE);
+            TopicPartition partition = new TopicPartition(event.getEventType(), event.getPartition());
+            ScalableBloomFilter filter = filters.get(partition);
+            if (filter != null) {
+                filter.put(event.getEventId());
+            }
+            // The warm-up query may already have passed this id
+            ScalableBloomFilter warmingFilter = warming.get(partition);
+            if (warmingFilter != null) {
+                warmingFilter.put(event.getEventId());
+            }
+        }
+    }
+
+    private boolean isDefinitelyNew(String topic, int partition, String eventId) {
+        ScalableBloomFilter filter = filters.get(new TopicPartition(topic, partition));
+        return filter != null && !filter.mightContain(eventId);
+    }
+
+    private void warmUp(TopicPartition partition, ScalableBloomFilter filter) {
+        if (warming.get(partition) != filter) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        // Events recorded before the partition was tracked are loaded for every partition of their topic
+        Query query = new Query(
+            Criteria.where("eventType").is(partition.topic())
+                .orOperator(Criteria.where("partition").is(partition.partition()), Criteria.where("partition").exists(false))
+        ).limit(properties.getWarmupMaxIds() + 1);
+        query.fields().include("_id");
+
+        AtomicLong loaded = new AtomicLong();
+        try (Stream<ProcessedEvent> events = mongoTemplate.stream(query, ProcessedEvent.class)) {
+            events.forEach(event -> {
+                filter.put(event.getEventId());
+                loaded.incrementAndGet();
+            });
+            if (loaded.get() > properties.getWarmupMaxIds()) {
+                LOG.warn(
+                    "More than {} ids to warm the idempotency filter for {}; its checks stay on MongoDB",
+                    properties.getWarmupMaxIds(),
+                    partition
+                );
+            } else if (warming.get(partition) == filter) {
+                // Installed before it stops receiving new ids, and withdrawn if the partition was revoked meanwhile
+                filters.put(partition, filter);
+                if (!warming.remove(partition, filter)) {
+                    filters.remove(partition, filter);
+                }
+                LOG.info("Warmed idempotency filter for {} with {} ids in {} ms", partition, loaded.get(), System.currentTimeMillis() - start);
+            }
+        } catch (RuntimeException e) {
+            // Without a filter every check for this partition falls back to MongoDB
+            LOG.warn("Could not warm idempotency filter for {}: {}", partition, e.getMessage());
+        } finally {
+            warming.remove(partition, filter);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package sn.ondmoney.history.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scalable Bloom filter (Almeida et al.): a chain of fixed-size filters where each new stage doubles the capacity
+ * and halves the false positive rate, so the compound false positive rate stays below the configured bound however
+ * many ids are added.
+ * <p>
+ * {@link #mightContain(String)} never returns {@code false} for a value that was {@link #put(String) put}.
+ */
+public class ScalableBloomFilter {
+
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1)");
+        }
+        // p0 / (1 - r) bounds the sum of the geometric series of stage error rates
+        stages.add(new Stage(initialCapacity, falsePositiveRate * (1 - TIGHTENING_RATIO)));
+    }
+
+    public synchronized void put(String value) {
+        long hash = hash(value);
+        Stage current = stages.get(stages.size() - 1);
+        if (current.isFull()) {
+            current = new Stage(current.capacity * GROWTH_FACTOR, current.falsePositiveRate * TIGHTENING_RATIO);
+            stages.add(current);
+        }
+        current.put(hash);
+    }
+
+    public synchronized boolean mightContain(String value) {
+        long hash = hash(value);
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            if (stages.get(i).mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized long size() {
+        long size = 0;
+        for (Stage stage : stages) {
+            size += stage.count;
+        }
+        return size;
+    }
+
+    synchronized int stageCount() {
+        return stages.size();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units followed by a murmur3 finalizer; does not allocate.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stage {
+
+        private final int capacity;
+        private final double falsePositiveRate;
+        private final long[] bits;
+        private final long numBits;
+        private final int numHashes;
+        private int count;
+
+        private Stage(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) ((optimalBits + 63) >>> 6)];
+            this.numBits = (long) bits.length << 6;
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+        }
+
+        private boolean isFull() {
+            return count >= capacity;
+        }
+
+        private void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashes; i++) {
+                long index = indexOf(h1 + i * h2);
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+            count++;
+        }
+
+        private boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashes; i++) {
+                long index = indexOf(h1 + i * h2);
+                if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long indexOf(int combinedHash) {
+            return (combinedHash & Integer.MAX_VALUE) % numBits;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package sn.ondmoney.history.kafka;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -9,15 +8,14 @@ import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import sn.ondmoney.history.domain.ProcessedEvent;
 import sn.ondmoney.history.domain.TransactionHistory;
 import sn.ondmoney.history.domain.enumeration.TransactionStatus;
 import sn.ondmoney.history.domain.enumeration.TransactionType;
-import sn.ondmoney.history.repository.ProcessedEventRepository;
-import sn.ondmoney.history.repository.TransactionHistoryRepository;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Kafka consumer for transfer events (initiated, completed, failed).
@@ -28,161 +26,199 @@ public class TransferEventConsumer {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransferEventConsumer.class);
 
-    private final TransactionHistoryRepository historyRepository;
-    private final ProcessedEventRepository processedEventRepository;
-    private final ObjectMapper objectMapper;
+    private final ProcessedEventFilter processedEventFilter;
+    private final HistoryEventWriter historyEventWriter;
+    private final CloudEventDecoder cloudEventDecoder;
 
     public TransferEventConsumer(
-            TransactionHistoryRepository historyRepository,
-            ProcessedEventRepository processedEventRepository,
-            ObjectMapper objectMapper) {
-        this.historyRepository = historyRepository;
-        this.processedEventRepository = processedEventRepository;
-        this.objectMapper = objectMapper;
+            ProcessedEventFilter processedEventFilter,
+            HistoryEventWriter historyEventWriter,
+            CloudEventDecoder cloudEventDecoder) {
+        this.processedEventFilter = processedEventFilter;
+        this.historyEventWriter = historyEventWriter;
+        this.cloudEventDecoder = cloudEventDecoder;
     }
 
     @KafkaListener(
         topics = {"transfer.initiated", "transfer.completed", "transfer.failed"},
-        groupId = "history-consumers"
+        groupId = "history-consumers",
+        autoStartup = "#{!${application.kafka.batch.enabled:false}}"
     )
     public void handleTransferEvent(
-            @Payload String payload,
+            @Payload byte[] payload,
             @Header(KafkaHeaders.RECEIVED_KEY) String key,
             @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(value = "ce_id", required = false) String eventId) {
 
         LOG.info("Received {} event for key: {}", topic, key);
 
         try {
-            JsonNode cloudEvent = objectMapper.readTree(payload);
+            CloudEvent cloudEvent = cloudEventDecoder.decode(payload);
 
             if (eventId == null || eventId.isBlank()) {
-                eventId = cloudEvent.has("id") ? cloudEvent.get("id").asText() : key + "-" + System.currentTimeMillis();
+                eventId = cloudEvent.getId() != null ? cloudEvent.getId() : key + "-" + System.currentTimeMillis();
             }
 
             // Idempotency check
-            if (processedEventRepository.existsByEventId(eventId)) {
+            if (processedEventFilter.isProcessed(topic, partition, eventId)) {
                 LOG.info("Event {} already processed, skipping", eventId);
                 return;
             }
 
-            JsonNode dataNode = cloudEvent.get("data");
-            if (dataNode == null) {
-                LOG.error("No data found in CloudEvents envelope");
-                return;
+            DecodedEvent event = decode(topic, partition, cloudEvent, eventId);
+            if (event != null) {
+                historyEventWriter.write(List.of(event));
             }
 
-            // Extract correlation ID
-            String correlationId = eventId;
-            if (cloudEvent.has("ondmoney") && cloudEvent.get("ondmoney").has("correlationId")) {
-                correlationId = cloudEvent.get("ondmoney").get("correlationId").asText();
-            }
+        } catch (Exception e) {
+            LOG.error("Error processing {} event: {}", topic, e.getMessage(), e);
+        }
+    }
 
-            // Extract transfer data
-            String transferId = dataNode.has("transferId") ? dataNode.get("transferId").asText() : null;
-            String senderId = dataNode.has("senderId") ? dataNode.get("senderId").asText() : null;
-            String receiverId = dataNode.has("receiverId") ? dataNode.get("receiverId").asText() : null;
-            BigDecimal amount = dataNode.has("amount") ? new BigDecimal(dataNode.get("amount").asText()) : BigDecimal.ZERO;
-            String currency = dataNode.has("currency") ? dataNode.get("currency").asText() : "XOF";
-            String description = dataNode.has("description") ? dataNode.get("description").asText() : "Transfer";
-
-            TransactionStatus status = switch (topic) {
-                case "transfer.initiated" -> TransactionStatus.PENDING;
-                case "transfer.completed" -> TransactionStatus.COMPLETED;
-                case "transfer.failed" -> TransactionStatus.FAILED;
-                default -> TransactionStatus.PENDING;
-            };
-
-            // For completed transfers, create history for both sender and receiver
-            if ("transfer.completed".equals(topic)) {
-                // Sender debit record
-                BigDecimal senderNewBalance = dataNode.has("senderNewBalance") 
-                    ? new BigDecimal(dataNode.get("senderNewBalance").asText()) 
-                    : null;
-                String senderName = dataNode.has("senderName") ? dataNode.get("senderName").asText() : null;
-                String receiverName = dataNode.has("receiverName") ? dataNode.get("receiverName").asText() : null;
-                String senderPhone = dataNode.has("senderPhoneNumber") ? dataNode.get("senderPhoneNumber").asText() : null;
-                String receiverPhone = dataNode.has("receiverPhoneNumber") ? dataNode.get("receiverPhoneNumber").asText() : null;
-
-                TransactionHistory senderHistory = new TransactionHistory();
-                senderHistory.setTransactionId(transferId + "_sender");
-                senderHistory.setUserId(senderId);
-                senderHistory.setType(TransactionType.TRANSFER);
-                senderHistory.setAmount(amount);
-                senderHistory.setCurrency(currency);
-                senderHistory.setBalanceAfter(senderNewBalance);
-                senderHistory.setStatus(status);
-                senderHistory.setDescription(description);
-                senderHistory.setCorrelationId(correlationId);
-                senderHistory.setCounterpartyId(receiverId);
-                senderHistory.setCounterpartyName(receiverName);
-                senderHistory.setSenderPhone(senderPhone);
-                senderHistory.setReceiverPhone(receiverPhone);
-                senderHistory.setSenderName(senderName);
-                senderHistory.setReceiverName(receiverName);
-                senderHistory.setTransactionDate(Instant.now());
-                senderHistory.setProcessingDate(Instant.now());
-                senderHistory.setHistorySaved(true);
-                historyRepository.save(senderHistory);
-
-                // Receiver credit record
-                BigDecimal receiverNewBalance = dataNode.has("receiverNewBalance") 
-                    ? new BigDecimal(dataNode.get("receiverNewBalance").asText()) 
-                    : null;
-
-                TransactionHistory receiverHistory = new TransactionHistory();
-                receiverHistory.setTransactionId(transferId + "_receiver");
-                receiverHistory.setUserId(receiverId);
-                receiverHistory.setType(TransactionType.TRANSFER);
-                receiverHistory.setAmount(amount);
-                receiverHistory.setCurrency(currency);
-                receiverHistory.setBalanceAfter(receiverNewBalance);
-                receiverHistory.setStatus(status);
-                receiverHistory.setDescription(description);
-                receiverHistory.setCorrelationId(correlationId);
-                receiverHistory.setCounterpartyId(senderId);
-                receiverHistory.setCounterpartyName(senderName);
-                receiverHistory.setSenderPhone(senderPhone);
-                receiverHistory.setReceiverPhone(receiverPhone);
-                receiverHistory.setSenderName(senderName);
-                receiverHistory.setReceiverName(receiverName);
-                receiverHistory.setTransactionDate(Instant.now());
-                receiverHistory.setProcessingDate(Instant.now());
-                receiverHistory.setHistorySaved(true);
-                historyRepository.save(receiverHistory);
-
-                LOG.info("Created history records for completed transfer: {}", transferId);
-            } else {
-                // For initiated/failed, just create a single record for the sender
-                TransactionHistory history = new TransactionHistory();
-                history.setTransactionId(transferId);
-                history.setUserId(senderId);
-                history.setType(TransactionType.TRANSFER);
-                history.setAmount(amount);
-                history.setCurrency(currency);
-                history.setStatus(status);
-                history.setDescription(description);
-                history.setCorrelationId(correlationId);
-                history.setCounterpartyId(receiverId);
-                history.setSenderPhone(senderId); // Use senderId as phone placeholder
-                history.setTransactionDate(Instant.now());
-                history.setProcessingDate(Instant.now());
-                history.setHistorySaved(true);
-
-                if ("transfer.failed".equals(topic)) {
-                    String failureReason = dataNode.has("failureReason") ? dataNode.get("failureReason").asText() : null;
-                    String failureMessage = dataNode.has("failureMessage") ? dataNode.get("failureMessage").asText() : null;
-                    history.setErrorMessage(failureMessage != null ? failureMessage : failureReason);
+    /**
+     * Batch variant of {@link #handleTransferEvent}, active when {@code application.kafka.batch.enabled} is set.
+     * Offsets are committed once the whole poll has been written.
+     */
+    @KafkaListener(
+        topics = {"transfer.initiated", "transfer.completed", "transfer.failed"},
+        groupId = "history-consumers",
+        containerFactory = KafkaConsumerConfig.BATCH_LISTENER_CONTAINER_FACTORY,
+        autoStartup = "${application.kafka.batch.enabled:false}"
+    )
+    public void handleTransferEvents(List<ConsumerRecord<String, byte[]>> records) {
+        LOG.info("Received batch of {} transfer events", records.size());
+
+        List<DecodedEvent> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            try {
+                CloudEvent cloudEvent = cloudEventDecoder.decode(record.value());
+                String eventId = CloudEventHeaders.eventId(record, cloudEvent);
+                DecodedEvent event = decode(record.topic(), record.partition(), cloudEvent, eventId);
+                if (event != null) {
+                    events.add(event);
                 }
-
-                historyRepository.save(history);
-                LOG.info("Created history record for {} transfer: {}", topic, transferId);
+            } catch (Exception e) {
+                LOG.error("Error decoding {} event at offset {}: {}", record.topic(), record.offset(), e.getMessage(), e);
             }
+        }
 
-            processedEventRepository.save(new ProcessedEvent(eventId, topic));
+        int written = historyEventWriter.writeBatch(events);
+        LOG.info("Processed {} of {} transfer events", written, records.size());
+    }
 
-        } catch (Exception e) {
-            LOG.error("Error processing {} event: {}", topic, e.getMessage(), e);
+    private DecodedEvent decode(String topic, int partition, CloudEvent cloudEvent, String eventId) {
+        if (!cloudEvent.hasData()) {
+            LOG.error("No data found in CloudEvents envelope");
+            return null;
+        }
+
+        // Extract correlation ID
+        String correlationId = cloudEvent.getCorrelationId() != null ? cloudEvent.getCorrelationId() : eventId;
+
+        // Extract transfer data
+        String transferId = cloudEvent.data("transferId");
+        if (transferId == null) {
+            // Stored without a transaction id, so that it is never matched to another transfer's records
+            LOG.warn("Transfer event {} has no transferId", eventId);
         }
+        String senderId = cloudEvent.data("senderId");
+        String receiverId = cloudEvent.data("receiverId");
+        BigDecimal amount = cloudEvent.decimal("amount", BigDecimal.ZERO);
+        String currency = cloudEvent.data("currency", "XOF");
+        String description = cloudEvent.data("description", "Transfer");
+
+        TransactionStatus status = switch (topic) {
+            case "transfer.initiated" -> TransactionStatus.PENDING;
+            case "transfer.completed" -> TransactionStatus.COMPLETED;
+            case "transfer.failed" -> TransactionStatus.FAILED;
+            default -> TransactionStatus.PENDING;
+        };
+
+        List<TransactionHistory> histories = new ArrayList<>(2);
+
+        // For completed transfers, create history for both sender and receiver
+        if ("transfer.completed".equals(topic)) {
+            // Sender debit record
+            BigDecimal senderNewBalance = cloudEvent.decimal("senderNewBalance", null);
+            String senderName = cloudEvent.data("senderName");
+            String receiverName = cloudEvent.data("receiverName");
+            String senderPhone = cloudEvent.data("senderPhoneNumber");
+            String receiverPhone = cloudEvent.data("receiverPhoneNumber");
+
+            TransactionHistory senderHistory = new TransactionHistory();
+            senderHistory.setTransactionId(transferId != null ? transferId + "_sender" : null);
+            senderHistory.setUserId(senderId);
+            senderHistory.setType(TransactionType.TRANSFER);
+            senderHistory.setAmount(amount);
+            senderHistory.setCurrency(currency);
+            senderHistory.setBalanceAfter(senderNewBalance);
+            senderHistory.setStatus(status);
+            senderHistory.setDescription(description);
+            senderHistory.setCorrelationId(correlationId);
+            senderHistory.setCounterpartyId(receiverId);
+            senderHistory.setCounterpartyName(receiverName);
+            senderHistory.setSenderPhone(senderPhone);
+            senderHistory.setReceiverPhone(receiverPhone);
+            senderHistory.setSenderName(senderName);
+            senderHistory.setReceiverName(receiverName);
+            senderHistory.setTransactionDate(Instant.now());
+            senderHistory.setProcessingDate(Instant.now());
+            senderHistory.setHistorySaved(true);
+            histories.add(senderHistory);
+
+            // Receiver credit record
+            BigDecimal receiverNewBalance = cloudEvent.decimal("receiverNewBalance", null);
+
+            TransactionHistory receiverHistory = new TransactionHistory();
+            receiverHistory.setTransactionId(transferId != null ? transferId + "_receiver" : null);
+            receiverHistory.setUserId(receiverId);
+            receiverHistory.setType(TransactionType.TRANSFER);
+            receiverHistory.setAmount(amount);
+            receiverHistory.setCurrency(currency);
+            receiverHistory.setBalanceAfter(receiverNewBalance);
+            receiverHistory.setStatus(status);
+            receiverHistory.setDescription(description);
+            receiverHistory.setCorrelationId(correlationId);
+            receiverHistory.setCounterpartyId(senderId);
+            receiverHistory.setCounterpartyName(senderName);
+            receiverHistory.setSenderPhone(senderPhone);
+            receiverHistory.setReceiverPhone(receiverPhone);
+            receiverHistory.setSenderName(senderName);
+            receiverHistory.setReceiverName(receiverName);
+            receiverHistory.setTransactionDate(Instant.now());
+            receiverHistory.setProcessingDate(Instant.now());
+            receiverHistory.setHistorySaved(true);
+            histories.add(receiverHistory);
+
+            LOG.info("Created history records for completed transfer: {}", transferId);
+        } else {
+            // For initiated/failed, just create a single record for the sender
+            TransactionHistory history = new TransactionHistory();
+            history.setTransactionId(transferId);
+            history.setUserId(senderId);
+            history.setType(TransactionType.TRANSFER);
+            history.setAmount(amount);
+            history.setCurrency(currency);
+            history.setStatus(status);
+            history.setDescription(description);
+            history.setCorrelationId(correlationId);
+            history.setCounterpartyId(receiverId);
+            history.setSenderPhone(senderId); // Use senderId as phone placeholder
+            history.setTransactionDate(Instant.now());
+            history.setProcessingDate(Instant.now());
+            history.setHistorySaved(true);
+
+            if ("transfer.failed".equals(topic)) {
+                String failureReason = cloudEvent.data("failureReason");
+                String failureMessage = cloudEvent.data("failureMessage");
+                history.setErrorMessage(failureMessage != null ? failureMessage : failureReason);
+            }
+
+            histories.add(history);
+            LOG.info("Created history record for {} transfer: {}", topic, transferId);
+        }
+
+        return new DecodedEvent(eventId, topic, partition, histories);
     }
 }
@@ -1,7 +1,6 @@
 package sn.ondmoney.history.kafka;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -9,15 +8,14 @@ import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import sn.ondmoney.history.domain.ProcessedEvent;
 import sn.ondmoney.history.domain.TransactionHistory;
 import sn.ondmoney.history.domain.enumeration.TransactionStatus;
 import sn.ondmoney.history.domain.enumeration.TransactionType;
-import sn.ondmoney.history.repository.ProcessedEventRepository;
-import sn.ondmoney.history.repository.TransactionHistoryRepository;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -30,87 +28,118 @@ public class WalletCreatedConsumer {
     private static final Logger LOG = LoggerFactory.getLogger(WalletCreatedConsumer.class);
     private static final String TOPIC = "wallet.created";
 
-    private final TransactionHistoryRepository historyRepository;
-    private final ProcessedEventRepository processedEventRepository;
-    private final ObjectMapper objectMapper;
+    private final ProcessedEventFilter processedEventFilter;
+    private final HistoryEventWriter historyEventWriter;
+    private final CloudEventDecoder cloudEventDecoder;
 
     public WalletCreatedConsumer(
-            TransactionHistoryRepository historyRepository,
-            ProcessedEventRepository processedEventRepository,
-            ObjectMapper objectMapper) {
-        this.historyRepository = historyRepository;
-        this.processedEventRepository = processedEventRepository;
-        this.objectMapper = objectMapper;
+            ProcessedEventFilter processedEventFilter,
+            HistoryEventWriter historyEventWriter,
+            CloudEventDecoder cloudEventDecoder) {
+        this.processedEventFilter = processedEventFilter;
+        this.historyEventWriter = historyEventWriter;
+        this.cloudEventDecoder = cloudEventDecoder;
     }
 
     @KafkaListener(
         topics = TOPIC,
-        groupId = "history-consumers"
+        groupId = "history-consumers",
+        autoStartup = "#{!${application.kafka.batch.enabled:false}}"
     )
     public void handleWalletCreated(
-            @Payload String payload,
+            @Payload byte[] payload,
             @Header(KafkaHeaders.RECEIVED_KEY) String key,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(value = "ce_id", required = false) String eventId) {
 
         LOG.info("Received wallet.created event for key: {}", key);
 
         try {
-            JsonNode cloudEvent = objectMapper.readTree(payload);
+            CloudEvent cloudEvent = cloudEventDecoder.decode(payload);
 
             if (eventId == null || eventId.isBlank()) {
-                eventId = cloudEvent.has("id") ? cloudEvent.get("id").asText() : key + "-" + System.currentTimeMillis();
+                eventId = cloudEvent.getId() != null ? cloudEvent.getId() : key + "-" + System.currentTimeMillis();
             }
 
             // Idempotency check
-            if (processedEventRepository.existsByEventId(eventId)) {
+            if (processedEventFilter.isProcessed(TOPIC, partition, eventId)) {
                 LOG.info("Event {} already processed, skipping", eventId);
                 return;
             }
 
-            JsonNode dataNode = cloudEvent.get("data");
-            if (dataNode == null) {
-                LOG.error("No data found in CloudEvents envelope");
-                return;
-            }
-
-            // Extract wallet info
-            String walletId = dataNode.has("walletId") ? dataNode.get("walletId").asText() : null;
-            String userId = dataNode.has("userId") ? dataNode.get("userId").asText() : key;
-            String currency = dataNode.has("currency") ? dataNode.get("currency").asText() : "XOF";
-            BigDecimal initialBalance = dataNode.has("initialBalance") 
-                ? new BigDecimal(dataNode.get("initialBalance").asText()) 
-                : BigDecimal.ZERO;
-
-            // Extract correlation ID
-            String correlationId = eventId;
-            if (cloudEvent.has("ondmoney") && cloudEvent.get("ondmoney").has("correlationId")) {
-                correlationId = cloudEvent.get("ondmoney").get("correlationId").asText();
+            DecodedEvent event = decode(key, partition, cloudEvent, eventId);
+            if (event != null) {
+                historyEventWriter.write(List.of(event));
             }
 
-            // Create history record
-            TransactionHistory history = new TransactionHistory();
-            history.setTransactionId("txn_wallet_" + UUID.randomUUID().toString());
-            history.setUserId(userId);
-            history.setType(TransactionType.WALLET_CREATION);
-            history.setAmount(initialBalance);
-            history.setCurrency(currency);
-            history.setBalanceAfter(initialBalance);
-            history.setStatus(TransactionStatus.COMPLETED);
-            history.setDescription("Wallet created: " + walletId);
-            history.setCorrelationId(correlationId);
-            history.setTransactionDate(Instant.now());
-            history.setProcessingDate(Instant.now());
-            history.setHistorySaved(true);
-            history.setSenderPhone(userId); // Set sender phone as user ID for wallet creation
-
-            historyRepository.save(history);
+        } catch (Exception e) {
+            LOG.error("Error processing wallet.created event: {}", e.getMessage(), e);
+        }
+    }
 
-            processedEventRepository.save(new ProcessedEvent(eventId, TOPIC));
+    /**
+     * Batch variant of {@link #handleWalletCreated}, active when {@code application.kafka.batch.enabled} is set.
+     * Offsets are committed once the whole poll has been written.
+     */
+    @KafkaListener(
+        topics = TOPIC,
+        groupId = "history-consumers",
+        containerFactory = KafkaConsumerConfig.BATCH_LISTENER_CONTAINER_FACTORY,
+        autoStartup = "${application.kafka.batch.enabled:false}"
+    )
+    public void handleWalletCreatedBatch(List<ConsumerRecord<String, byte[]>> records) {
+        LOG.info("Received batch of {} wallet.created events", records.size());
+
+        List<DecodedEvent> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            try {
+                CloudEvent cloudEvent = cloudEventDecoder.decode(record.value());
+                String eventId = CloudEventHeaders.eventId(record, cloudEvent);
+                DecodedEvent event = decode(record.key(), record.partition(), cloudEvent, eventId);
+                if (event != null) {
+                    events.add(event);
+                }
+            } catch (Exception e) {
+                LOG.error("Error decoding wallet.created event at offset {}: {}", record.offset(), e.getMessage(), e);
+            }
+        }
 
-            LOG.info("Successfully logged wallet creation for user: {}", userId);
+        int written = historyEventWriter.writeBatch(events);
+        LOG.info("Processed {} of {} wallet.created events", written, records.size());
+    }
 
-        } catch (Exception e) {
-            LOG.error("Error processing wallet.created event: {}", e.getMessage(), e);
+    private DecodedEvent decode(String key, int partition, CloudEvent cloudEvent, String eventId) {
+        if (!cloudEvent.hasData()) {
+            LOG.error("No data found in CloudEvents envelope");
+            return null;
         }
+
+        // Extract wallet info
+        String walletId = cloudEvent.data("walletId");
+        String userId = cloudEvent.data("userId", key);
+        String currency = cloudEvent.data("currency", "XOF");
+        BigDecimal initialBalance = cloudEvent.decimal("initialBalance", BigDecimal.ZERO);
+
+        // Extract correlation ID
+        String correlationId = cloudEvent.getCorrelationId() != null ? cloudEvent.getCorrelationId() : eventId;
+
+        // Create history record
+        TransactionHistory history = new TransactionHistory();
+        history.setTransactionId("txn_wallet_" + UUID.randomUUID().toString());
+        history.setUserId(userId);
+        history.setType(TransactionType.WALLET_CREATION);
+        history.setAmount(initialBalance);
+        history.setCurrency(currency);
+        history.setBalanceAfter(initialBalance);
+        history.setStatus(TransactionStatus.COMPLETED);
+        history.setDescription("Wallet created: " + walletId);
+        history.setCorrelationId(correlationId);
+        history.setTransactionDate(Instant.now());
+        history.setProcessingDate(Instant.now());
+        history.setHistorySaved(true);
+        history.setSenderPhone(userId); // Set sender phone as user ID for wallet creation
+
+        LOG.info("Logging wallet creation for user: {}", userId);
+        return new DecodedEvent(eventId, TOPIC, partition, List.of(history));
     }
 }
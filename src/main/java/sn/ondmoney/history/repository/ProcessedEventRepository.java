@@ -4,6 +4,9 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 import sn.ondmoney.history.domain.ProcessedEvent;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Repository for ProcessedEvent - tracks processed Kafka events for idempotency.
  */
@@ -11,4 +14,7 @@ import sn.ondmoney.history.domain.ProcessedEvent;
 public interface ProcessedEventRepository extends MongoRepository<ProcessedEvent, String> {
 
     boolean existsByEventId(String eventId);
+
+    // Batch idempotency check: a single $in query on _id
+    List<ProcessedEvent> findByEventIdIn(Collection<String> eventIds);
 }
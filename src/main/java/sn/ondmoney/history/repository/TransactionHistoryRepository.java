@@ -7,6 +7,9 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Spring Data MongoDB repository for TransactionHistory entity
  */
@@ -15,14 +18,18 @@ public interface TransactionHistoryRepository extends MongoRepository<Transactio
 
     boolean existsByTransactionId(String transactionId);
 
-    // Find transactions where user is sender
-    Page<TransactionHistory> findBySenderPhone(String senderPhone, Pageable pageable);
+    List<TransactionHistory> findByTransactionIdIn(Collection<String> transactionIds);
+
+    List<TransactionHistory> findByCorrelationIdIn(Collection<String> correlationIds);
+
+    // Find transactions where user is sender, see PartyKey
+    Page<TransactionHistory> findBySenderKey(Long senderKey, Pageable pageable);
 
     // Find transactions where user is receiver
-    Page<TransactionHistory> findByReceiverPhone(String receiverPhone, Pageable pageable);
+    Page<TransactionHistory> findByReceiverKey(Long receiverKey, Pageable pageable);
 
     // Find transactions where user is either sender or receiver
-    @Query("{ $or: [ { sender_phone: ?0 }, { receiver_phone: ?0 } ] }")
-    Page<TransactionHistory> findByUserPhone(String phoneNumber, Pageable pageable);
+    @Query("{ $or: [ { sender_key: ?0 }, { receiver_key: ?0 } ] }")
+    Page<TransactionHistory> findByPartyKey(Long partyKey, Pageable pageable);
 
 }
@@ -0,0 +1,655 @@
+package sn.ondmoney.history.repository.search;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.DeleteByQueryResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.PendingIndex;
+import sn.ondmoney.history.domain.TransactionHistory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers {@link TransactionHistory} index and delete operations and sends them to Elasticsearch through the
+ * {@code _bulk} API.
+ * <p>
+ * Operations are coalesced by document id, so only the last write for a document is sent. A flush happens when
+ * {@code application.search.indexing.batch-size} operations are pending, and otherwise every
+ * {@code application.search.indexing.flush-interval}. Items rejected by Elasticsearch are queued again and retried
+ * up to {@code max-retries} times.
+ * <p>
+ * At most {@code max-pending} operations are held in memory. Beyond that, writers are slowed down: they wait up to
+ * {@code offer-timeout} for a flush to make room (not at all while Elasticsearch is unreachable), then the document
+ * id is spilled to the {@code pending_index} collection, see {@link PendingIndex}. Documents that exhaust their
+ * retries are spilled too, so nothing is lost. The spill is drained every {@code spill-drain-interval} once
+ * Elasticsearch answers again, as far as there is room in memory; an entry leaves {@code pending_index} only once its
+ * document is indexed.
+ * <p>
+ * Documents are written to the month index of their {@code transactionDate}, see {@link TransactionHistoryIndices}.
+ * Writers pass the version they replace, when they know it: a document whose date moved to another month is deleted
+ * from the month index of that version in the same flush, and a delete goes to that month index directly. A delete
+ * without a known version is sent as one {@code _delete_by_query} on the read alias, after a refresh so that it also
+ * finds documents indexed since the last one.
+ * <p>
+ * While a reindex is running, every operation is also mirrored to the indices being built, see
+ * {@link #setMirrorPrefix(String)}. A document that fails in either place is retried, and spilled, like any other
+ * failure, so it reaches the new indices before or after they are swapped in.
+ */
+@Component
+public class TransactionHistoryBulkIndexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryBulkIndexer.class);
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final TransactionHistoryIndices indices;
+    private final ApplicationProperties.Search.Indexing properties;
+
+    private final Map<String, Operation> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private volatile String mirrorPrefix;
+    private volatile boolean elasticsearchAvailable = true;
+    private final AtomicLong spillSize = new AtomicLong();
+
+    private final Timer flushTimer;
+    private final Counter indexed;
+    private final Counter retried;
+    private final Counter dropped;
+    private final Counter spilled;
+    private final Counter waited;
+
+    public TransactionHistoryBulkIndexer(
+        ElasticsearchTemplate elasticsearchTemplate,
+        MongoTemplate mongoTemplate,
+        TransactionHistoryIndices indices,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.mongoTemplate = mongoTemplate;
+        this.indices = indices;
+        this.properties = applicationProperties.getSearch().getIndexing();
+
+        Gauge.builder("history.search.indexing.queue", this, TransactionHistoryBulkIndexer::pendingCount)
+            .description("Operations waiting for the next bulk request")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("history.search.indexing.flush")
+            .description("Time spent sending pending operations to Elasticsearch")
+            .register(meterRegistry);
+        this.indexed = documentCounter(meterRegistry, "indexed");
+        this.retried = documentCounter(meterRegistry, "retried");
+        this.dropped = documentCounter(meterRegistry, "dropped");
+        this.spilled = documentCounter(meterRegistry, "spilled");
+        Gauge.builder("history.search.indexing.spill", spillSize, AtomicLong::get)
+            .description("Documents waiting in pending_index")
+            .register(meterRegistry);
+        this.waited = Counter.builder("history.search.indexing.backpressure")
+            .description("Writes that had to wait for room in the indexer queue")
+            .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-bulk-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        long drainInterval = properties.getSpillDrainInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::drainSpillQuietly, drainInterval, drainInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private static Counter documentCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("history.search.indexing.documents")
+            .description("Documents processed by the bulk indexer")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    public void index(TransactionHistory entity) {
+        index(entity, null);
+    }
+
+    /**
+     * @param previous the stored version the entity replaces, if known, whose month index may hold a copy to delete.
+     */
+    public void index(TransactionHistory entity, TransactionHistory previous) {
+        if (entity == null || entity.getId() == null) {
+            return;
+        }
+        enqueue(new Operation(entity.getId(), entity, dateOf(previous), 0, null));
+    }
+
+    public void indexAll(Collection<TransactionHistory> entities) {
+        entities.forEach(this::index);
+    }
+
+    /**
+     * @param previous the stored version being deleted, if known, to send the delete to its month index only.
+     */
+    public void delete(String id, TransactionHistory previous) {
+        if (id == null) {
+            return;
+        }
+        enqueue(new Operation(id, null, dateOf(previous), 0, null));
+    }
+
+    private static Set<Instant> dateOf(TransactionHistory previous) {
+        return previous != null && previous.getTransactionDate() != null ? Set.of(previous.getTransactionDate()) : Set.of();
+    }
+
+    /**
+     * Also sends every operation to the month indices named {@code mirrorPrefix}{@code yyyy.MM}, or stops doing so when
+     * {@code null}.
+     */
+    public void setMirrorPrefix(String mirrorPrefix) {
+        this.mirrorPrefix = mirrorPrefix;
+    }
+
+    public int pendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Sends everything pending at call time. Items that fail are queued again for a later flush.
+     *
+     * @return whether every operation sent is now in Elasticsearch or in {@code pending_index}, i.e. none of them only
+     * waits in memory for a retry.
+     */
+    public synchronized boolean flush() {
+        List<Operation> operations;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return true;
+            }
+            operations = new ArrayList<>(pending.values());
+            pending.clear();
+            pending.notifyAll();
+        }
+        flushRequested.set(false);
+
+        return flushTimer.record(() -> {
+            boolean acknowledged = true;
+            for (int from = 0; from < operations.size(); from += properties.getBatchSize()) {
+                List<Operation> batch = operations.subList(from, Math.min(from + properties.getBatchSize(), operations.size()));
+                acknowledged &= sendIndexes(batch.stream().filter(Operation::isIndex).toList());
+                acknowledged &= sendDeletes(batch.stream().filter(operation -> !operation.isIndex()).toList());
+            }
+            return acknowledged;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * Moves spilled documents back into the queue, as far as there is room, once Elasticsearch is reachable. Their
+     * {@code pending_index} entries are removed once they are indexed.
+     */
+    public void drainSpill() {
+        long spillCount = mongoTemplate.count(new Query(), PendingIndex.class);
+        spillSize.set(spillCount);
+        if (spillCount == 0 || !checkElasticsearch()) {
+            return;
+        }
+        int room = Math.min(properties.getBatchSize(), properties.getMaxPending() - pendingCount());
+        if (room <= 0) {
+            return;
+        }
+
+        Set<String> queued;
+        synchronized (pending) {
+            queued = pending
+                .values()
+                .stream()
+                .filter(operation -> operation.spilledAt() != null)
+                .map(Operation::id)
+                .collect(Collectors.toSet());
+        }
+        List<PendingIndex> entries = mongoTemplate.find(Query.query(Criteria.where("_id").nin(queued)).limit(room), PendingIndex.class);
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<String, TransactionHistory> documents = mongoTemplate
+            .find(Query.query(Criteria.where("_id").in(entries.stream().map(PendingIndex::getId).toList())), TransactionHistory.class)
+            .stream()
+            .collect(Collectors.toMap(TransactionHistory::getId, Function.identity()));
+        synchronized (pending) {
+            for (PendingIndex entry : entries) {
+                Operation spilledOperation = new Operation(
+                    entry.getId(),
+                    documents.get(entry.getId()),
+                    entry.getPreviousDates() != null ? Set.copyOf(entry.getPreviousDates()) : Set.of(),
+                    0,
+                    entry.getSpilledAt()
+                );
+                Operation newer = pending.get(entry.getId());
+                // A newer operation queued for the same document meanwhile supersedes the spilled one
+                pending.put(entry.getId(), newer != null ? newer.supersede(spilledOperation) : spilledOperation);
+            }
+        }
+        LOG.info("Requeued {} spilled documents, about {} in pending_index", entries.size(), spillCount);
+    }
+
+    private void enqueue(Operation operation) {
+        int size;
+        synchronized (pending) {
+            Operation superseded = pending.get(operation.id());
+            if (superseded == null && pending.size() >= properties.getMaxPending() && !awaitRoom()) {
+                size = -1;
+            } else {
+                pending.put(operation.id(), superseded != null ? operation.supersede(superseded) : operation);
+                size = pending.size();
+            }
+        }
+        if (size < 0) {
+            spill(List.of(operation));
+            return;
+        }
+        if (size >= properties.getBatchSize()) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Waits, holding the {@code pending} monitor, until a flush makes room or {@code offer-timeout} elapses.
+     */
+    private boolean awaitRoom() {
+        if (!elasticsearchAvailable) {
+            return false;
+        }
+        waited.increment();
+        requestFlush();
+        long deadline = System.nanoTime() + properties.getOfferTimeout().toNanos();
+        try {
+            while (pending.size() >= properties.getMaxPending()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                pending.wait(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Records the documents in {@code pending_index}; they are dropped only if MongoDB fails too.
+     */
+    private boolean spill(List<Operation> operations) {
+        try {
+            Instant now = Instant.now();
+            BulkOperations upserts = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PendingIndex.class);
+            operations.forEach(operation ->
+                upserts.upsert(
+                    Query.query(Criteria.where("_id").is(operation.id())),
+                    Update.update("spilled_at", now).addToSet("previous_dates").each(operation.previousDates().toArray())
+                )
+            );
+            upserts.execute();
+            spilled.increment(operations.size());
+            spillSize.addAndGet(operations.size());
+            LOG.warn("Spilled {} documents to pending_index", operations.size());
+            return true;
+        } catch (Exception e) {
+            dropped.increment(operations.size());
+            LOG.error(
+                "Could not spill {} documents to pending_index, their index is stale until the next reindex: {}",
+                operations.size(),
+                e.getMessage()
+            );
+            return false;
+        }
+    }
+
+    /**
+     * Removes the {@code pending_index} entries of spilled documents now in Elasticsearch, unless spilled again since.
+     */
+    private void acknowledge(List<Operation> done) {
+        List<Operation> drained = done.stream().filter(operation -> operation.spilledAt() != null).toList();
+        if (drained.isEmpty()) {
+            return;
+        }
+        try {
+            BulkOperations removals = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PendingIndex.class);
+            drained.forEach(operation ->
+                removals.remove(Query.query(Criteria.where("_id").is(operation.id()).and("spilled_at").is(operation.spilledAt())))
+            );
+            spillSize.addAndGet(-removals.execute().getDeletedCount());
+        } catch (Exception e) {
+            LOG.warn(
+                "Could not remove {} indexed documents from pending_index, they will be indexed again: {}",
+                drained.size(),
+                e.getMessage()
+            );
+        }
+    }
+
+    private boolean checkElasticsearch() {
+        if (!elasticsearchAvailable) {
+            try {
+                elasticsearchAvailable = elasticsearchTemplate.execute(client -> client.ping().value());
+            } catch (Exception e) {
+                LOG.debug("Elasticsearch still unreachable: {}", e.getMessage());
+            }
+        }
+        return elasticsearchAvailable;
+    }
+
+    private void drainSpillQuietly() {
+        try {
+            drainSpill();
+        } catch (Exception e) {
+            LOG.error("Draining pending_index failed", e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOG.error("Bulk indexing flush failed", e);
+        }
+    }
+
+    private boolean sendIndexes(List<Operation> operations) {
+        if (operations.isEmpty()) {
+            return true;
+        }
+        // Failing either copy retries the document in both, so the new generation does not miss live writes
+        Set<String> failedIds = new HashSet<>(mirror(operations));
+        String reason = "mirroring failed";
+        try {
+            indices.initialize();
+            List<IndexQuery> queries = operations
+                .stream()
+                .map(operation ->
+                    new IndexQueryBuilder()
+                        .withId(operation.id())
+                        .withObject(operation.entity())
+                        .withIndex(indices.writeIndex(operation.entity()))
+                        .build()
+                )
+                .toList();
+            try {
+                elasticsearchTemplate.bulkIndex(queries, TransactionHistory.class);
+            } catch (BulkFailureException e) {
+                failedIds.addAll(e.getFailedDocuments().keySet());
+                reason = e.getMessage();
+            }
+            // Only once the new copy is in, so that the document does not disappear from searches in between
+            Set<String> staleFailures = deleteCopies(succeeded(operations, failedIds), operation ->
+                staleIndices(operation, indices::writeIndex)
+            );
+            if (!staleFailures.isEmpty()) {
+                failedIds.addAll(staleFailures);
+                reason = "deleting copies in previous month indices failed";
+            }
+            elasticsearchAvailable = true;
+            indexed.increment(operations.size() - failedIds.size());
+            acknowledge(succeeded(operations, failedIds));
+            return failedIds.isEmpty() || retry(failed(operations, failedIds), reason);
+        } catch (Exception e) {
+            elasticsearchAvailable = false;
+            return retry(operations, e.getMessage());
+        }
+    }
+
+    private boolean sendDeletes(List<Operation> operations) {
+        if (operations.isEmpty()) {
+            return true;
+        }
+        String mirror = mirrorPrefix;
+        List<Operation> located = operations.stream().filter(operation -> !operation.previousDates().isEmpty()).toList();
+        List<Operation> unlocated = operations.stream().filter(operation -> operation.previousDates().isEmpty()).toList();
+        try {
+            Set<String> failedIds = new HashSet<>(
+                deleteCopies(located, operation -> {
+                    Set<String> targets = new LinkedHashSet<>();
+                    operation.previousDates().forEach(date -> targets.add(indices.writeIndex(date)));
+                    if (mirror != null) {
+                        operation.previousDates().forEach(date -> targets.add(TransactionHistoryIndices.monthIndex(mirror, date)));
+                    }
+                    return targets;
+                })
+            );
+            if (!unlocated.isEmpty()) {
+                List<String> ids = unlocated.stream().map(Operation::id).toList();
+                List<String> targets = new ArrayList<>(List.of(TransactionHistoryIndices.ALIAS));
+                if (mirror != null) {
+                    targets.add(mirror + "*");
+                }
+                // _delete_by_query only sees documents indexed before the last refresh
+                elasticsearchTemplate.execute(client -> client.indices().refresh(refresh -> refresh.index(targets)));
+                DeleteByQueryResponse response = elasticsearchTemplate.execute(client ->
+                    client.deleteByQuery(delete -> delete.index(targets).query(query -> query.ids(match -> match.values(ids))))
+                );
+                if (!response.failures().isEmpty()) {
+                    // Deleting again is harmless, so the whole query is retried
+                    failedIds.addAll(ids);
+                }
+            }
+            elasticsearchAvailable = true;
+            indexed.increment(operations.size() - failedIds.size());
+            acknowledge(succeeded(operations, failedIds));
+            return failedIds.isEmpty() || retry(failed(operations, failedIds), failedIds.size() + " deletes failed");
+        } catch (Exception e) {
+            elasticsearchAvailable = false;
+            return retry(operations, e.getMessage());
+        }
+    }
+
+    /**
+     * The month indices of the previous versions of an indexed document, other than the one it is now written to.
+     */
+    private static Set<String> staleIndices(Operation operation, Function<Instant, String> index) {
+        String current = index.apply(operation.entity().getTransactionDate());
+        return operation
+            .previousDates()
+            .stream()
+            .map(index)
+            .filter(name -> !name.equals(current))
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Deletes each document from the given indices by id, in one {@code _bulk} request. A missing document or index
+     * counts as deleted.
+     *
+     * @return the ids of the documents that could not be deleted everywhere.
+     */
+    private Set<String> deleteCopies(List<Operation> operations, Function<Operation, Set<String>> targets) {
+        List<BulkOperation> deletes = new ArrayList<>();
+        for (Operation operation : operations) {
+            for (String index : targets.apply(operation)) {
+                deletes.add(BulkOperation.of(bulk -> bulk.delete(delete -> delete.index(index).id(operation.id()))));
+            }
+        }
+        if (deletes.isEmpty()) {
+            return Set.of();
+        }
+        BulkResponse response = elasticsearchTemplate.execute(client -> client.bulk(bulk -> bulk.operations(deletes)));
+        if (!response.errors()) {
+            return Set.of();
+        }
+        return response
+            .items()
+            .stream()
+            .filter(item -> item.error() != null && item.status() != 404)
+            .map(item -> Objects.requireNonNull(item.id()))
+            .collect(Collectors.toSet());
+    }
+
+    private static List<Operation> failed(List<Operation> operations, Set<String> failedIds) {
+        return operations.stream().filter(operation -> failedIds.contains(operation.id())).toList();
+    }
+
+    private static List<Operation> succeeded(List<Operation> operations, Set<String> failedIds) {
+        return operations.stream().filter(operation -> !failedIds.contains(operation.id())).toList();
+    }
+
+    /**
+     * @return the ids of the documents that could not be mirrored.
+     */
+    private Set<String> mirror(List<Operation> operations) {
+        String mirror = mirrorPrefix;
+        if (mirror == null) {
+            return Set.of();
+        }
+        List<IndexQuery> queries = operations
+            .stream()
+            .map(operation ->
+                new IndexQueryBuilder()
+                    .withId(operation.id())
+                    .withObject(operation.entity())
+                    .withIndex(TransactionHistoryIndices.monthIndex(mirror, operation.entity().getTransactionDate()))
+                    .build()
+            )
+            .toList();
+        try {
+            Set<String> failedIds = new HashSet<>();
+            try {
+                elasticsearchTemplate.bulkIndex(queries, TransactionHistory.class);
+            } catch (BulkFailureException e) {
+                failedIds.addAll(e.getFailedDocuments().keySet());
+            }
+            failedIds.addAll(
+                deleteCopies(succeeded(operations, failedIds), operation ->
+                    staleIndices(operation, date -> TransactionHistoryIndices.monthIndex(mirror, date))
+                )
+            );
+            if (!failedIds.isEmpty()) {
+                LOG.warn("Could not mirror {} documents to {}", failedIds.size(), mirror);
+            }
+            return failedIds;
+        } catch (Exception e) {
+            LOG.warn("Could not mirror {} documents to {}: {}", queries.size(), mirror, e.getMessage());
+            return operations.stream().map(Operation::id).collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * @return whether no operation was queued again in memory, i.e. they were all spilled.
+     */
+    private boolean retry(List<Operation> failed, String reason) {
+        List<Operation> requeued = new ArrayList<>(failed.size());
+        List<Operation> exhausted = new ArrayList<>();
+        for (Operation operation : failed) {
+            if (operation.attempts() + 1 >= properties.getMaxRetries()) {
+                exhausted.add(operation);
+            } else {
+                requeued.add(operation.nextAttempt());
+            }
+        }
+        boolean spilled = true;
+        if (!exhausted.isEmpty()) {
+            LOG.error("Giving up on indexing {} documents after {} attempts: {}", exhausted.size(), properties.getMaxRetries(), reason);
+            spilled = spill(exhausted);
+        }
+        if (requeued.isEmpty()) {
+            return spilled;
+        }
+        LOG.warn("Retrying {} documents rejected by Elasticsearch: {}", requeued.size(), reason);
+        retried.increment(requeued.size());
+        List<Operation> overflow = new ArrayList<>();
+        boolean queued = false;
+        synchronized (pending) {
+            for (Operation operation : requeued) {
+                Operation newer = pending.get(operation.id());
+                if (newer != null) {
+                    // A newer operation queued for the same document meanwhile supersedes the retry
+                    pending.put(operation.id(), newer.supersede(operation));
+                } else if (pending.size() >= properties.getMaxPending()) {
+                    overflow.add(operation);
+                } else {
+                    pending.put(operation.id(), operation);
+                    queued = true;
+                }
+            }
+        }
+        if (!overflow.isEmpty()) {
+            spilled &= spill(overflow);
+        }
+        return !queued && spilled;
+    }
+
+    /**
+     * A pending write; a {@code null} entity marks a delete. {@code previousDates} are the dates of the versions the
+     * document may still be indexed under, empty when unknown. {@code spilledAt} identifies the {@code pending_index}
+     * entry to remove once the write succeeds, if it was drained from there.
+     */
+    private record Operation(String id, TransactionHistory entity, Set<Instant> previousDates, int attempts, Instant spilledAt) {
+        boolean isIndex() {
+            return entity != null;
+        }
+
+        Operation nextAttempt() {
+            return new Operation(id, entity, previousDates, attempts + 1, spilledAt);
+        }
+
+        /**
+         * This operation in place of an older one for the same document that was not sent, or not successfully: it
+         * also removes the copies the older one would have, and its {@code pending_index} entry, if any, once it
+         * succeeds. A delete of an unknown version stays one, since the document may be anywhere.
+         */
+        Operation supersede(Operation older) {
+            Set<Instant> dates = previousDates;
+            if (isIndex() || !previousDates.isEmpty()) {
+                dates = new HashSet<>(previousDates);
+                dates.addAll(older.previousDates());
+                if (older.isIndex() && older.entity().getTransactionDate() != null) {
+                    dates.add(older.entity().getTransactionDate());
+                }
+                dates = Set.copyOf(dates);
+            }
+            return new Operation(id, entity, dates, attempts, spilledAt != null ? spilledAt : older.spilledAt());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package sn.ondmoney.history.repository.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.PutIndexTemplateRequest;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Component;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Layout of the search indices: one index per month of {@code transactionDate}, named
+ * {@code transactionhistory-yyyy.MM}, all behind the {@code transactionhistory} read alias.
+ * <p>
+ * A month index is created by Elasticsearch on its first write, from the {@code transactionhistory} index template
+ * that carries the entity settings, mapping and alias. After a reindex or a compaction the month name is an alias of a
+ * differently named index, which writes go through just the same. Only searches bounded on {@code transactionDate}
+ * target the month names; the others go through the read alias.
+ * <p>
+ * A {@code transactionhistory} index created before monthly indices existed keeps receiving every write, until a
+ * reindex replaces it with monthly indices.
+ */
+@Component
+public class TransactionHistoryIndices {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryIndices.class);
+
+    public static final String ALIAS = "transactionhistory";
+
+    /**
+     * Prefix of the month names, which only ever resolve to the current index of their month.
+     */
+    public static final String MONTH_PREFIX = ALIAS + "-";
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM");
+
+    private static final long LEGACY_CHECK_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+    private final ApplicationProperties.Search.Partitions properties;
+
+    private volatile boolean initialized;
+    private volatile boolean legacy;
+    private volatile long checkedAt;
+
+    public TransactionHistoryIndices(ElasticsearchTemplate elasticsearchTemplate, ApplicationProperties applicationProperties) {
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.properties = applicationProperties.getSearch().getPartitions();
+    }
+
+    /**
+     * Installs the index template and checks for a pre-existing single index; does nothing once it succeeded, except
+     * for checking again every minute whether a reindex on another instance replaced that index. Called before every
+     * bulk request, so that no month index is created before the template exists.
+     *
+     * @throws RuntimeException if Elasticsearch cannot be reached.
+     */
+    public void initialize() {
+        if (isChecked()) {
+            return;
+        }
+        synchronized (this) {
+            if (isChecked()) {
+                return;
+            }
+            if (!initialized) {
+                putTemplate(ALIAS, MONTH_PREFIX + "*", new Settings(), true);
+            }
+            boolean legacyIndex = elasticsearchTemplate.execute(client -> {
+                var indices = client.indices();
+                if (indices.existsAlias(alias -> alias.name(ALIAS)).value()) {
+                    return false;
+                }
+                if (indices.exists(exists -> exists.index(ALIAS)).value()) {
+                    return true;
+                }
+                // Creates the alias, so that searches find no document rather than no index
+                indices.create(create -> create.index(monthIndex(MONTH_PREFIX, null)));
+                return false;
+            });
+            checkedAt = System.nanoTime();
+            if (legacyIndex && !initialized) {
+                LOG.warn("Index {} predates monthly indices and keeps receiving writes until POST /api/debug/reindex", ALIAS);
+            }
+            legacy = legacyIndex;
+            initialized = true;
+        }
+    }
+
+    private boolean isChecked() {
+        return initialized && !(legacy && System.nanoTime() - checkedAt > LEGACY_CHECK_INTERVAL);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            initialize();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not set up the search indices, retrying on the next bulk request: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Creates or replaces an index template with the settings and mapping of {@link TransactionHistory}.
+     *
+     * @param overrides settings applied on top of the entity ones.
+     * @param readAlias whether indices created from the template join the {@code transactionhistory} alias.
+     */
+    public void putTemplate(String name, String pattern, Settings overrides, boolean readAlias) {
+        IndexOperations operations = elasticsearchTemplate.indexOps(TransactionHistory.class);
+        Settings settings = operations.createSettings().flatten();
+        settings.putAll(overrides.flatten());
+        PutIndexTemplateRequest.Builder request = PutIndexTemplateRequest.builder()
+            .withName(name)
+            .withIndexPatterns(pattern)
+            .withSettings(settings)
+            .withMapping(operations.createMapping());
+        if (readAlias) {
+            request.withAliasActions(new AliasActions(new AliasAction.Add(AliasActionParameters.builderForTemplate().withAliases(ALIAS).build())));
+        }
+        operations.putIndexTemplate(request.build());
+        LOG.info("Index template {} applies to {}", name, pattern);
+    }
+
+    /**
+     * Whether writes still go to the single index created before monthly indices existed.
+     */
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    /**
+     * Called once the read alias points to monthly indices only.
+     */
+    public void legacyReplaced() {
+        legacy = false;
+    }
+
+    /**
+     * The index a document is written to.
+     */
+    public String writeIndex(TransactionHistory history) {
+        return writeIndex(history.getTransactionDate());
+    }
+
+    /**
+     * The index a document with the given {@code transactionDate} is written to.
+     */
+    public String writeIndex(Instant transactionDate) {
+        return legacy ? ALIAS : monthIndex(MONTH_PREFIX, transactionDate);
+    }
+
+    /**
+     * The month index of {@code transactionDate} among the indices named {@code prefix}{@code yyyy.MM}; the current
+     * month when there is no date.
+     */
+    public static String monthIndex(String prefix, Instant transactionDate) {
+        return prefix + YearMonth.from((transactionDate != null ? transactionDate : Instant.now()).atZone(ZoneOffset.UTC)).format(MONTH_FORMAT);
+    }
+
+    /**
+     * The month of an index named {@code ...-yyyy.MM}.
+     *
+     * @return {@code null} for other names.
+     */
+    public static YearMonth monthOf(String index) {
+        int separator = index.lastIndexOf('-');
+        try {
+            return separator < 0 ? null : YearMonth.parse(index.substring(separator + 1), MONTH_FORMAT);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The indices a search bounded on {@code transactionDate} needs: the month names from {@code start} to {@code end}
+     * (to now when open-ended), or the read alias when there is no lower bound or more than {@code max-search-months}
+     * months. The names are wildcards, so that a month without any transaction matches nothing instead of failing.
+     */
+    public IndexCoordinates searchIndices(Instant start, Instant end) {
+        if (!initialized || legacy || start == null) {
+            return IndexCoordinates.of(ALIAS);
+        }
+        List<YearMonth> months = months(start, end != null ? end : Instant.now(), properties.getMaxSearchMonths());
+        if (months.isEmpty()) {
+            return IndexCoordinates.of(ALIAS);
+        }
+        return IndexCoordinates.of(months.stream().map(month -> MONTH_PREFIX + month.format(MONTH_FORMAT) + "*").toArray(String[]::new));
+    }
+
+    /**
+     * The UTC months from {@code start} to {@code end}, both included.
+     *
+     * @return an empty list if there are more than {@code max}, or {@code end} is before {@code start}.
+     */
+    static List<YearMonth> months(Instant start, Instant end, int max) {
+        YearMonth first = YearMonth.from(start.atZone(ZoneOffset.UTC));
+        YearMonth last = YearMonth.from(end.atZone(ZoneOffset.UTC));
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            if (months.size() == max) {
+                return List.of();
+            }
+            months.add(month);
+        }
+        return months;
+    }
+}
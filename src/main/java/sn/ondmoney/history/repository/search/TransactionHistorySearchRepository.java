@@ -1,12 +1,14 @@
 package sn.ondmoney.history.repository.search;
 
 import co.elastic.clients.elasticsearch._types.query_dsl.QueryStringQuery;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.PartyKey;
 import sn.ondmoney.history.domain.TransactionHistory;
 import sn.ondmoney.history.domain.enumeration.*;
-import sn.ondmoney.history.repository.TransactionHistoryRepository;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,10 +19,10 @@ import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.Query;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
-import org.springframework.scheduling.annotation.Async;
-import sn.ondmoney.history.service.PhoneNumberNormalizer;
 
 /**
  * Spring Data Elasticsearch repository for the {@link TransactionHistory} entity.
@@ -31,6 +33,12 @@ public interface TransactionHistorySearchRepository
 interface TransactionHistorySearchRepositoryInternal {
     Page<TransactionHistory> search(String query, Pageable pageable);
 
+    /**
+     * Same as {@link #search(String, Pageable)}, returning only the given properties of {@code _source}; all of them
+     * when {@code includes} is empty.
+     */
+    Page<TransactionHistory> search(String query, Pageable pageable, Collection<String> includes);
+
     Page<TransactionHistory> search(Query query);
 
     // Existing methods with QUERYSTRING
@@ -75,38 +83,72 @@ interface TransactionHistorySearchRepositoryInternal {
         Pageable pageable
     );
 
-    @Async
+    /**
+     * Queues the entity for the next bulk request, see {@link TransactionHistoryBulkIndexer}.
+     * Ignored when the change stream synchronizer owns indexing.
+     */
     void index(TransactionHistory entity);
 
-    @Async
-    void deleteFromIndexById(String id);
+    /**
+     * Same as {@link #index(TransactionHistory)} for an entity replacing {@code previous}, so that a copy left in the
+     * month index of {@code previous} is deleted.
+     */
+    void index(TransactionHistory entity, TransactionHistory previous);
+
+    /**
+     * Queues a delete for the next bulk request, see {@link TransactionHistoryBulkIndexer}.
+     * Ignored when the change stream synchronizer owns indexing.
+     *
+     * @param previous the deleted entity, if known, so that the delete goes to its month index only.
+     */
+    void deleteFromIndexById(String id, TransactionHistory previous);
 }
 
 class TransactionHistorySearchRepositoryInternalImpl implements TransactionHistorySearchRepositoryInternal {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransactionHistorySearchRepositoryInternalImpl.class);
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_INSTANT;
+    private static final String SENDER = "sender";
+    private static final String RECEIVER = "receiver";
 
     private final ElasticsearchTemplate elasticsearchTemplate;
-    private final TransactionHistoryRepository repository;
-    private final PhoneNumberNormalizer phoneNormalizer;
+    private final TransactionHistoryBulkIndexer bulkIndexer;
+    private final TransactionHistoryIndices indices;
+    private final boolean changeStreamEnabled;
 
     TransactionHistorySearchRepositoryInternalImpl(
         ElasticsearchTemplate elasticsearchTemplate,
-        TransactionHistoryRepository repository,
-        PhoneNumberNormalizer phoneNormalizer
+        TransactionHistoryBulkIndexer bulkIndexer,
+        TransactionHistoryIndices indices,
+        ApplicationProperties applicationProperties
     ) {
         this.elasticsearchTemplate = elasticsearchTemplate;
-        this.repository = repository;
-        this.phoneNormalizer = phoneNormalizer;
+        this.bulkIndexer = bulkIndexer;
+        this.indices = indices;
+        this.changeStreamEnabled = applicationProperties.getSearch().getChangeStream().isEnabled();
     }
 
     @Override
     public Page<TransactionHistory> search(String query, Pageable pageable) {
-        LOG.debug("Executing Elasticsearch QueryString: {}", query);
+        return search(query, pageable, List.of());
+    }
+
+    @Override
+    public Page<TransactionHistory> search(String query, Pageable pageable, Collection<String> includes) {
+        return search(query, pageable, includes, IndexCoordinates.of(TransactionHistoryIndices.ALIAS));
+    }
+
+    /**
+     * Runs the query on the given indices only, see {@link TransactionHistoryIndices#searchIndices}.
+     */
+    private Page<TransactionHistory> search(String query, Pageable pageable, Collection<String> includes, IndexCoordinates index) {
+        LOG.debug("Executing Elasticsearch QueryString on {}: {}", index, query);
         try {
             NativeQuery nativeQuery = new NativeQuery(QueryStringQuery.of(qs -> qs.query(query))._toQuery());
-            return search(nativeQuery.setPageable(pageable));
+            if (!includes.isEmpty()) {
+                nativeQuery.addSourceFilter(new FetchSourceFilter(includes.toArray(String[]::new), null));
+            }
+            return search(nativeQuery.setPageable(pageable), index);
         } catch (Exception e) {
             LOG.error("Error executing QueryString query: {}", query, e);
             throw new RuntimeException("Elasticsearch query failed: " + e.getMessage(), e);
@@ -115,7 +157,11 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
 
     @Override
     public Page<TransactionHistory> search(Query query) {
-        SearchHits<TransactionHistory> searchHits = elasticsearchTemplate.search(query, TransactionHistory.class);
+        return search(query, IndexCoordinates.of(TransactionHistoryIndices.ALIAS));
+    }
+
+    private Page<TransactionHistory> search(Query query, IndexCoordinates index) {
+        SearchHits<TransactionHistory> searchHits = elasticsearchTemplate.search(query, TransactionHistory.class, index);
         List<TransactionHistory> hits = searchHits.map(SearchHit::getContent).stream().toList();
         return new PageImpl<>(hits, query.getPageable(), searchHits.getTotalHits());
     }
@@ -126,16 +172,7 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
             return search("*", pageable);
         }
 
-        String normalized = phoneNormalizer.normalize(senderPhone);
-
-        // Recherche flexible : match 00221… ou 0…
-        String altNormalized = normalized.startsWith("00221")
-            ? "0" + normalized.substring(5)
-            : normalized;
-
-        String query = "senderPhone:(\"" + normalized + "\" OR \"" + altNormalized + "\")";
-
-        return search(query, pageable);
+        return search(partyQuery(SENDER, senderPhone), pageable);
     }
 
     @Override
@@ -144,10 +181,7 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
             return search("*", pageable);
         }
 
-        // Normalisation simple
-        String normalized = phoneNormalizer.normalize(receiverPhone);
-        String query = "receiverPhone:\"" + escapeQueryString(normalized) + "\"";
-        return search(query, pageable);
+        return search(partyQuery(RECEIVER, receiverPhone), pageable);
     }
 
     @Override
@@ -156,11 +190,7 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
             return search("*", pageable);
         }
 
-        // Normalisation simple
-        String normalized = phoneNormalizer.normalize(phoneNumber);
-        String query = "(senderPhone:\"" + escapeQueryString(normalized) +
-            "\" OR receiverPhone:\"" + escapeQueryString(normalized) + "\")";
-        return search(query, pageable);
+        return search("(" + partyQuery(SENDER, phoneNumber) + " OR " + partyQuery(RECEIVER, phoneNumber) + ")", pageable);
     }
 
     @Override
@@ -169,7 +199,7 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
             formatDateForQuery(startDate),
             formatDateForQuery(endDate)
         );
-        return search(queryString, pageable);
+        return search(queryString, pageable, List.of(), indices.searchIndices(startDate, endDate));
     }
 
     @Override
@@ -276,23 +306,11 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
         }
 
         LOG.debug("Elasticsearch Query: {}", finalQuery);
-        return search(finalQuery, pageable);
+        return search(finalQuery, pageable, List.of(), indices.searchIndices(startDate, endDate));
     }
 
     // ========== HELPER METHODS ==========
 
-    /**
-     * Search by a single field
-     */
-    private Page<TransactionHistory> searchByField(String fieldName, String value, Pageable pageable) {
-        if (value == null || value.trim().isEmpty()) {
-            return search("*", pageable);
-        }
-
-        String queryString = String.format("%s:\"%s\"", fieldName, escapeQueryString(value));
-        return search(queryString, pageable);
-    }
-
     /**
      * Handle phone number filters based on direction
      */
@@ -303,41 +321,34 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
         if (direction != null) {
             switch (direction) {
                 case SENT:
-                    addPhoneFilter(queryString, "senderPhone", senderPhone);
+                    addPhoneFilter(queryString, SENDER, senderPhone);
                     break;
                 case RECEIVED:
-                    addPhoneFilter(queryString, "receiverPhone", receiverPhone);
+                    addPhoneFilter(queryString, RECEIVER, receiverPhone);
                     break;
                 case ALL:
                     String phoneToSearch = getFirstNonNull(senderPhone, receiverPhone);
                     if (phoneToSearch != null) {
                         addAndClause(queryString);
-                        String normalizedPhone = normalizePhoneNumber(phoneToSearch);
-                        queryString.append(String.format("(senderPhone:\"%s\" OR receiverPhone:\"%s\")",
-                            escapeQueryString(normalizedPhone),
-                            escapeQueryString(normalizedPhone)
-                        ));
+                        queryString.append("(").append(partyQuery(SENDER, phoneToSearch))
+                            .append(" OR ").append(partyQuery(RECEIVER, phoneToSearch)).append(")");
                     }
                     break;
             }
         } else {
             // No direction specified
-            addPhoneFilter(queryString, "senderPhone", senderPhone);
-            addPhoneFilter(queryString, "receiverPhone", receiverPhone);
+            addPhoneFilter(queryString, SENDER, senderPhone);
+            addPhoneFilter(queryString, RECEIVER, receiverPhone);
         }
     }
 
     /**
      * Add phone filter if phone is not null/empty
      */
-    private void addPhoneFilter(StringBuilder queryString, String fieldName, String phone) {
+    private void addPhoneFilter(StringBuilder queryString, String party, String phone) {
         if (phone != null && !phone.trim().isEmpty()) {
             addAndClause(queryString);
-            String normalizedPhone = normalizePhoneNumber(phone);
-            queryString.append(String.format("%s:\"%s\"",
-                fieldName,
-                escapeQueryString(normalizedPhone)
-            ));
+            queryString.append(partyQuery(party, phone));
         }
     }
 
@@ -424,24 +435,26 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
     }
 
     /**
-     * Normalize phone number (convert +221 to 00221)
+     * Term on the numeric {@code <party>Key} field; text that is not a phone number has no key and is matched on
+     * {@code <party>Phone}.
+     * <p>
+     * Documents indexed before the keys existed have no {@code <party>Key} until the index is rebuilt, so the phone
+     * is also matched on {@code <party>Phone} in the forms it was stored in: international with or without the
+     * {@code 00} or {@code +} prefix, and national with or without the trunk {@code 0} for Senegalese numbers.
      */
-    private String normalizePhoneNumber(String phone) {
-        if (phone == null || phone.trim().isEmpty()) {
-            return phone;
+    private String partyQuery(String party, String phone) {
+        long key = PartyKey.of(phone);
+        if (key == PartyKey.NONE) {
+            return party + "Phone:\"" + escapeQueryString(phone.trim()) + "\"";
         }
-
-        String cleaned = phone.trim();
-
-        if (cleaned.startsWith("+221")) {
-            return "00221" + cleaned.substring(4);
-        }
-
-        if (cleaned.startsWith("221") && !cleaned.startsWith("00221")) {
-            return "00" + cleaned;
+        StringBuilder query = new StringBuilder("(").append(party).append("Key:").append(key);
+        query.append(" OR ").append(party).append("Phone:(");
+        query.append('"').append(PartyKey.toInternational(key)).append("\" OR \"").append(key).append('"');
+        String national = PartyKey.toNational(key);
+        if (national != null) {
+            query.append(" OR \"0").append(national).append("\" OR \"").append(national).append('"');
         }
-
-        return cleaned;
+        return query.append("))").toString();
     }
 
     /**
@@ -482,19 +495,20 @@ class TransactionHistorySearchRepositoryInternalImpl implements TransactionHisto
 
     @Override
     public void index(TransactionHistory entity) {
-        try {
-            repository.findById(entity.getId()).ifPresent(elasticsearchTemplate::save);
-        } catch (Exception e) {
-            LOG.error("Failed to index transaction: {}", entity.getId(), e);
+        index(entity, null);
+    }
+
+    @Override
+    public void index(TransactionHistory entity, TransactionHistory previous) {
+        if (!changeStreamEnabled) {
+            bulkIndexer.index(entity, previous);
         }
     }
 
     @Override
-    public void deleteFromIndexById(String id) {
-        try {
-            elasticsearchTemplate.delete(String.valueOf(id), TransactionHistory.class);
-        } catch (Exception e) {
-            LOG.error("Failed to delete from index: {}", id, e);
+    public void deleteFromIndexById(String id, TransactionHistory previous) {
+        if (!changeStreamEnabled) {
+            bulkIndexer.delete(id, previous);
         }
     }
 }
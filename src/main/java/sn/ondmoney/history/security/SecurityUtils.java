@@ -54,6 +54,22 @@ public final class SecurityUtils {
         return null;
     }
 
+    /**
+     * Get the phone number of the current user, from the {@code phone_number} claim of its token.
+     *
+     * @return the phone number of the current user.
+     */
+    public static Optional<String> getCurrentUserPhoneNumber() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Map<String, Object> claims = null;
+        if (authentication instanceof JwtAuthenticationToken jwtAuthentication) {
+            claims = jwtAuthentication.getToken().getClaims();
+        } else if (authentication != null && authentication.getPrincipal() instanceof DefaultOidcUser oidcUser) {
+            claims = oidcUser.getAttributes();
+        }
+        return Optional.ofNullable(claims).map(attributes -> attributes.get("phone_number")).map(Object::toString);
+    }
+
     /**
      * Check if a user is authenticated.
      *
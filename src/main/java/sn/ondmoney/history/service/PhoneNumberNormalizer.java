@@ -1,36 +1,39 @@
 package sn.ondmoney.history.service;
 
 import org.springframework.stereotype.Service;
+import sn.ondmoney.history.domain.PartyKey;
 
 @Service
 public class PhoneNumberNormalizer {
 
+    /**
+     * The phone number in the {@code 00}-prefixed international form of its {@link PartyKey}; without separators when
+     * it is not a phone number.
+     */
     public String normalize(String phone) {
         if (phone == null || phone.isBlank()) {
             return phone;
         }
-
-        // Nettoyage
-        String cleaned = phone.trim()
-            .replaceAll("\\s+", "")
-            .replaceAll("[.-]", "");
-
-        // Convertit +221 en 00221
-        if (cleaned.startsWith("+221")) {
-            return "00221" + cleaned.substring(4);
+        long key = PartyKey.of(phone);
+        if (key != PartyKey.NONE) {
+            return PartyKey.toInternational(key);
         }
 
-        // Si commence par 221 sans 00, ajoute 00
-        if (cleaned.startsWith("221") && !cleaned.startsWith("00221")) {
-            return "00" + cleaned;
-        }
-
-        // Si commence par 0 (numéro local), convertit en 00221
-        if (cleaned.startsWith("0") && cleaned.length() >= 10) {
-            // Ex: 0771234567 -> 00221771234567
-            return "00221" + cleaned.substring(1);
+        // Nettoyage
+        StringBuilder cleaned = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (!Character.isWhitespace(c) && c != '.' && c != '-') {
+                cleaned.append(c);
+            }
         }
+        return cleaned.toString();
+    }
 
-        return cleaned;
+    /**
+     * The {@link PartyKey} of the phone number, {@link PartyKey#NONE} if it is not one.
+     */
+    public long key(String phone) {
+        return PartyKey.of(phone);
     }
 }
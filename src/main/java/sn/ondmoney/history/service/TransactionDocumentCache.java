@@ -0,0 +1,251 @@
+package sn.ondmoney.history.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Near cache of transactions by id: Caffeine on each node (L1) in front of Redis (L2), in front of MongoDB.
+ * <p>
+ * Updates and deletes evict both tiers and publish the ids on a Redis topic, so that every node drops them from its
+ * L1. Pub/sub delivery is not guaranteed, so L1 is cleared whenever the subscription is (re)established and entries
+ * expire anyway: records in a terminal status, which are not expected to change, after
+ * {@code application.document-cache.l1-terminal-ttl}, the others after {@code pending-ttl}.
+ * <p>
+ * A lookup that read a transaction just before it changed could otherwise cache the old version after the eviction. An
+ * eviction therefore replaces the Redis entry with a tombstone for {@code tombstone-ttl}: lookups only add entries
+ * that are absent from Redis, and only put in L1 what they could add or found in Redis, unless the node received an
+ * eviction of the id after the lookup started.
+ * <p>
+ * The cached DTOs are shared between callers and must not be modified.
+ */
+@Service
+public class TransactionDocumentCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionDocumentCache.class);
+
+    private static final String KEY_PREFIX = "history:transaction:";
+    private static final String INVALIDATION_TOPIC = "history:transaction:invalidations";
+    private static final String TOMBSTONE = "evicted";
+
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final ApplicationProperties.DocumentCache properties;
+    private final Cache<String, TransactionHistoryDTO> local;
+    private final Cache<String, Long> evictedAt;
+    private final RTopic invalidations;
+
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+
+    public TransactionDocumentCache(
+        RedissonClient redissonClient,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.redissonClient = redissonClient;
+        this.objectMapper = objectMapper;
+        this.properties = applicationProperties.getDocumentCache();
+        this.local = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxSize())
+            .expireAfter(new StatusExpiry(properties.getL1TerminalTtl(), properties.getPendingTtl()))
+            .recordStats()
+            .build();
+        this.evictedAt = Caffeine.newBuilder().expireAfterWrite(properties.getTombstoneTtl()).build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "transactionDocuments");
+        this.l2Hits = l2Counter(meterRegistry, "hit");
+        this.l2Misses = l2Counter(meterRegistry, "miss");
+
+        this.invalidations = redissonClient.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE);
+        if (properties.isEnabled()) {
+            invalidations.addListener(String.class, (channel, ids) -> invalidateLocally(Arrays.asList(ids.split(","))));
+            invalidations.addListener(
+                new BaseStatusListener() {
+                    @Override
+                    public void onSubscribe(String channel) {
+                        // Evictions published while unsubscribed are lost
+                        local.invalidateAll();
+                    }
+                }
+            );
+        }
+    }
+
+    private static Counter l2Counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("history.transaction.cache.l2.requests")
+            .description("Redis lookups of transactions missing from the node cache")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * The transactions with the given ids, from L1, then L2, then {@code loader} for the rest.
+     *
+     * @param loader reads the transactions missing from both tiers; unknown ids are absent from its result.
+     */
+    public Map<String, TransactionHistoryDTO> getAll(
+        Collection<String> ids,
+        Function<Collection<String>, Map<String, TransactionHistoryDTO>> loader
+    ) {
+        if (!properties.isEnabled()) {
+            return loader.apply(ids);
+        }
+        long started = System.nanoTime();
+        Map<String, TransactionHistoryDTO> found = new HashMap<>(local.getAllPresent(ids));
+        if (found.size() == ids.size()) {
+            return found;
+        }
+
+        Set<String> missing = new LinkedHashSet<>(ids);
+        missing.removeAll(found.keySet());
+        try {
+            Map<String, String> remote = redissonClient
+                .getBuckets(StringCodec.INSTANCE)
+                .get(missing.stream().map(TransactionDocumentCache::key).toArray(String[]::new));
+            int hits = 0;
+            for (Map.Entry<String, String> entry : remote.entrySet()) {
+                if (TOMBSTONE.equals(entry.getValue())) {
+                    continue;
+                }
+                TransactionHistoryDTO dto = objectMapper.readValue(entry.getValue(), TransactionHistoryDTO.class);
+                found.put(dto.getId(), dto);
+                putLocally(dto, started);
+                missing.remove(dto.getId());
+                hits++;
+            }
+            l2Hits.increment(hits);
+        } catch (RuntimeException | JsonProcessingException e) {
+            LOG.warn("Transaction cache unavailable, reading from the database: {}", e.getMessage());
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        l2Misses.increment(missing.size());
+        Map<String, TransactionHistoryDTO> loaded = loader.apply(missing);
+        put(loaded.values(), started);
+        found.putAll(loaded);
+        return found;
+    }
+
+    /**
+     * Evicts the given transactions from Redis and from the cache of every node.
+     */
+    public void evict(Collection<String> ids) {
+        if (!properties.isEnabled() || ids.isEmpty()) {
+            return;
+        }
+        invalidateLocally(ids);
+        try {
+            RBatch batch = redissonClient.createBatch();
+            ids.forEach(id -> batch.getBucket(key(id), StringCodec.INSTANCE).setAsync(TOMBSTONE, properties.getTombstoneTtl()));
+            batch.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE).publishAsync(String.join(",", ids));
+            batch.execute();
+        } catch (RuntimeException e) {
+            LOG.warn(
+                "Could not evict cached transactions {}, other nodes keep them at most {}: {}",
+                ids,
+                properties.getL1TerminalTtl(),
+                e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * Caches freshly loaded transactions in Redis, unless present there, either cached meanwhile or evicted, and then on
+     * this node.
+     */
+    private void put(Collection<TransactionHistoryDTO> dtos, long started) {
+        if (dtos.isEmpty()) {
+            return;
+        }
+        try {
+            RBatch batch = redissonClient.createBatch();
+            Map<TransactionHistoryDTO, RFuture<Boolean>> added = new IdentityHashMap<>();
+            for (TransactionHistoryDTO dto : dtos) {
+                Duration ttl = isTerminal(dto) ? properties.getL2TerminalTtl() : properties.getPendingTtl();
+                String json = objectMapper.writeValueAsString(dto);
+                added.put(dto, batch.getBucket(key(dto.getId()), StringCodec.INSTANCE).setIfAbsentAsync(json, ttl));
+            }
+            batch.execute();
+            added.forEach((dto, result) -> {
+                if (Boolean.TRUE.equals(result.toCompletableFuture().getNow(false))) {
+                    putLocally(dto, started);
+                }
+            });
+        } catch (RuntimeException | JsonProcessingException e) {
+            LOG.warn("Could not cache {} transactions: {}", dtos.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Caches a transaction on this node, unless it was evicted since {@code started}.
+     */
+    private void putLocally(TransactionHistoryDTO dto, long started) {
+        Long evicted = evictedAt.getIfPresent(dto.getId());
+        if (evicted == null || evicted - started < 0) {
+            local.put(dto.getId(), dto);
+        }
+    }
+
+    private void invalidateLocally(Collection<String> ids) {
+        long now = System.nanoTime();
+        ids.forEach(id -> evictedAt.put(id, now));
+        local.invalidateAll(ids);
+    }
+
+    private static boolean isTerminal(TransactionHistoryDTO dto) {
+        return dto.getStatus() != null && dto.getStatus().isTerminal();
+    }
+
+    private static String key(String id) {
+        return KEY_PREFIX + id;
+    }
+
+    /**
+     * Node-local lifetime by status, reset whenever the entry is replaced.
+     */
+    private record StatusExpiry(Duration terminalTtl, Duration pendingTtl) implements Expiry<String, TransactionHistoryDTO> {
+        @Override
+        public long expireAfterCreate(String id, TransactionHistoryDTO dto, long currentTime) {
+            return (isTerminal(dto) ? terminalTtl : pendingTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String id, TransactionHistoryDTO dto, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, dto, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String id, TransactionHistoryDTO dto, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
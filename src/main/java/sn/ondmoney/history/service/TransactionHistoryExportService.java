@@ -0,0 +1,159 @@
+package sn.ondmoney.history.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.ExportFormat;
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
+import sn.ondmoney.history.service.mapper.TransactionHistoryMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes account statements straight from a MongoDB cursor.
+ * <p>
+ * Memory use does not depend on the size of the export: documents are mapped and written one at a time, and the output
+ * is flushed after every {@code application.export.batch-size} documents so the client receives the data as it is read.
+ */
+@Service
+public class TransactionHistoryExportService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryExportService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final List<Column> CSV_COLUMNS = List.of(
+        new Column("id", TransactionHistoryDTO::getId),
+        new Column("transaction_id", TransactionHistoryDTO::getTransactionId),
+        new Column("external_transaction_id", TransactionHistoryDTO::getExternalTransactionId),
+        new Column("transaction_date", TransactionHistoryDTO::getTransactionDate),
+        new Column("type", TransactionHistoryDTO::getType),
+        new Column("status", TransactionHistoryDTO::getStatus),
+        new Column("amount", dto -> dto.getAmount() != null ? dto.getAmount().toPlainString() : null),
+        new Column("fees", dto -> dto.getFees() != null ? dto.getFees().toPlainString() : null),
+        new Column("currency", TransactionHistoryDTO::getCurrency),
+        new Column("sender_phone", TransactionHistoryDTO::getSenderPhone),
+        new Column("sender_name", TransactionHistoryDTO::getSenderName),
+        new Column("receiver_phone", TransactionHistoryDTO::getReceiverPhone),
+        new Column("receiver_name", TransactionHistoryDTO::getReceiverName),
+        new Column("balance_before", dto -> dto.getBalanceBefore() != null ? dto.getBalanceBefore().toPlainString() : null),
+        new Column("balance_after", dto -> dto.getBalanceAfter() != null ? dto.getBalanceAfter().toPlainString() : null),
+        new Column("merchant_code", TransactionHistoryDTO::getMerchantCode),
+        new Column("bill_reference", TransactionHistoryDTO::getBillReference),
+        new Column("bank_account_number", TransactionHistoryDTO::getBankAccountNumber),
+        new Column("description", TransactionHistoryDTO::getDescription),
+        new Column("correlation_id", TransactionHistoryDTO::getCorrelationId)
+    );
+
+    private final TransactionHistoryMongoSearchService mongoSearchService;
+    private final TransactionHistoryMapper transactionHistoryMapper;
+    private final ObjectWriter jsonWriter;
+    private final ApplicationProperties.Export properties;
+
+    public TransactionHistoryExportService(
+        TransactionHistoryMongoSearchService mongoSearchService,
+        TransactionHistoryMapper transactionHistoryMapper,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoSearchService = mongoSearchService;
+        this.transactionHistoryMapper = transactionHistoryMapper;
+        this.jsonWriter = objectMapper.writerFor(TransactionHistoryDTO.class);
+        this.properties = applicationProperties.getExport();
+    }
+
+    /**
+     * Writes every transaction matching {@code criteria}, newest first. The stream is flushed but not closed.
+     *
+     * @return the number of transactions written.
+     */
+    public long export(TransactionSearchCriteria criteria, ExportFormat format, OutputStream out) throws IOException {
+        int batchSize = properties.getBatchSize();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long count = 0;
+
+        try (Stream<TransactionHistory> histories = mongoSearchService.streamTransactions(criteria, Sort.Direction.DESC, batchSize)) {
+            if (format == ExportFormat.CSV) {
+                writeCsvHeader(writer);
+            }
+            Iterator<TransactionHistory> iterator = histories.iterator();
+            while (iterator.hasNext()) {
+                TransactionHistoryDTO dto = transactionHistoryMapper.toDto(iterator.next());
+                if (format == ExportFormat.CSV) {
+                    writeCsvRow(writer, dto);
+                } else {
+                    writer.write(jsonWriter.writeValueAsString(dto));
+                    writer.write('\n');
+                }
+                if (++count % batchSize == 0) {
+                    writer.flush();
+                }
+            }
+        }
+        writer.flush();
+        LOG.debug("Exported {} transactions as {}", count, format);
+        return count;
+    }
+
+    private static void writeCsvHeader(Writer writer) throws IOException {
+        for (int i = 0; i < CSV_COLUMNS.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(CSV_COLUMNS.get(i).name());
+        }
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvRow(Writer writer, TransactionHistoryDTO dto) throws IOException {
+        for (int i = 0; i < CSV_COLUMNS.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = CSV_COLUMNS.get(i).value().apply(dto);
+            if (value != null) {
+                writer.write(csvField(value.toString()));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Quotes a value when needed (RFC 4180) and neutralizes text that a spreadsheet would run as a formula.
+     */
+    static String csvField(String value) {
+        if (!value.isEmpty() && isFormula(value)) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static boolean isFormula(String value) {
+        char first = value.charAt(0);
+        if (first == '=' || first == '@' || first == '\t' || first == '\r') {
+            return true;
+        }
+        // "+221..." phone numbers and negative amounts stay as they are
+        return (first == '+' || first == '-') && (value.length() == 1 || !Character.isDigit(value.charAt(1)));
+    }
+
+    private record Column(String name, Function<TransactionHistoryDTO, Object> value) {}
+}
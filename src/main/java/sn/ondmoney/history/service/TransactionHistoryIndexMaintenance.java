@@ -0,0 +1,250 @@
+package sn.ondmoney.history.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.HealthStatus;
+import co.elastic.clients.elasticsearch.cat.shards.ShardsRecord;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.json.JsonData;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.enumeration.ReindexState;
+import sn.ondmoney.history.repository.search.TransactionHistoryIndices;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compacts and expires the monthly search indices, see {@link TransactionHistoryIndices}.
+ * <p>
+ * A month that has been over for {@code compact-after} no longer receives writes but for late status changes. Its
+ * index is shrunk to {@code compact-shards} primary shards: write-blocked, gathered on one node without replicas, then
+ * copied by the {@code _shrink} API into a new index that takes over the read alias and the month name. The result is
+ * force-merged to one segment and marked {@code compacted} in its mapping {@code _meta}. Writes to the month while it is
+ * blocked fail and are retried by the bulk indexer or spilled. An index whose shard count cannot be divided down is only
+ * force-merged.
+ * <p>
+ * Months older than {@code retention-months} are deleted. Runs on one instance at a time, never during a reindex.
+ */
+@Service
+public class TransactionHistoryIndexMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryIndexMaintenance.class);
+
+    private static final String LOCK = "history:index-maintenance";
+    private static final String COMPACTED = "compacted";
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+    private static final long POLL_INTERVAL_MILLIS = 5000;
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+    private final TransactionHistoryIndices indices;
+    private final TransactionHistoryReindexService reindexService;
+    private final RedissonClient redissonClient;
+    private final ApplicationProperties.Search.Partitions properties;
+
+    public TransactionHistoryIndexMaintenance(
+        ElasticsearchTemplate elasticsearchTemplate,
+        TransactionHistoryIndices indices,
+        TransactionHistoryReindexService reindexService,
+        RedissonClient redissonClient,
+        ApplicationProperties applicationProperties
+    ) {
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.indices = indices;
+        this.reindexService = reindexService;
+        this.redissonClient = redissonClient;
+        this.properties = applicationProperties.getSearch().getPartitions();
+    }
+
+    @Scheduled(cron = "${application.search.partitions.maintenance-cron:0 30 2 * * *}", zone = "UTC")
+    public void run() {
+        RLock lock = redissonClient.getLock(LOCK);
+        if (!lock.tryLock()) {
+            LOG.debug("Search index maintenance already running on another instance");
+            return;
+        }
+        try {
+            maintain();
+        } catch (Exception e) {
+            LOG.error("Search index maintenance failed", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes expired months and compacts the closed ones, oldest first. A month that fails is left for the next run.
+     */
+    public void maintain() {
+        indices.initialize();
+        if (indices.isLegacy()) {
+            LOG.info("Skipping search index maintenance: the single {} index has not been reindexed yet", TransactionHistoryIndices.ALIAS);
+            return;
+        }
+        if (reindexService.status().filter(checkpoint -> checkpoint.getState() == ReindexState.RUNNING).isPresent()) {
+            LOG.info("Skipping search index maintenance while a reindex is running");
+            return;
+        }
+
+        Map<String, YearMonth> months = new TreeMap<>();
+        elasticsearchTemplate
+            .execute(client -> client.indices().getAlias(alias -> alias.name(TransactionHistoryIndices.ALIAS)).result().keySet())
+            .forEach(index -> {
+                YearMonth month = TransactionHistoryIndices.monthOf(index);
+                if (month != null) {
+                    months.put(index, month);
+                }
+            });
+
+        Instant now = Instant.now();
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        months.forEach((index, month) -> {
+            try {
+                if (properties.getRetentionMonths() > 0 && month.isBefore(current.minusMonths(properties.getRetentionMonths()))) {
+                    elasticsearchTemplate.execute(client -> client.indices().delete(delete -> delete.index(index)));
+                    LOG.info("Deleted search index {}, past the retention of {} months", index, properties.getRetentionMonths());
+                } else if (now.isAfter(start(month.plusMonths(1)).plus(properties.getCompactAfter())) && !isCompacted(index)) {
+                    compact(index, month);
+                }
+            } catch (Exception e) {
+                LOG.error("Maintenance of search index {} failed", index, e);
+            }
+        });
+    }
+
+    private boolean isCompacted(String index) {
+        return elasticsearchTemplate.execute(client -> {
+            var mapping = client.indices().getMapping(get -> get.index(index)).result().get(index);
+            return mapping != null && mapping.mappings().meta().containsKey(COMPACTED);
+        });
+    }
+
+    private void compact(String index, YearMonth month) {
+        elasticsearchTemplate.execute(client -> {
+            IndexSettings settings = client.indices().getSettings(get -> get.index(index)).result().get(index).settings();
+            IndexSettings indexSettings = settings.index() != null ? settings.index() : settings;
+            int shards = Integer.parseInt(indexSettings.numberOfShards());
+            String replicas = indexSettings.numberOfReplicas();
+            int targetShards = properties.getCompactShards();
+
+            String compacted = index;
+            if (shards > targetShards && shards % targetShards == 0) {
+                compacted = shrink(client, index, month, targetShards, replicas);
+            }
+            String target = compacted;
+            client.indices().forcemerge(merge -> merge.index(target).maxNumSegments(1L).waitForCompletion(false));
+            client.indices().putMapping(put -> put.index(target).meta(COMPACTED, JsonData.of(Instant.now().toString())));
+            LOG.info("Compacted search index {} of {} into {}", index, month, target);
+            return null;
+        });
+    }
+
+    /**
+     * Shrinks the index into a new one and moves the aliases to it.
+     *
+     * @return the new index.
+     */
+    private String shrink(ElasticsearchClient client, String index, YearMonth month, int targetShards, String replicas)
+        throws IOException {
+        String node = client
+            .cat()
+            .shards(shards -> shards.index(index))
+            .valueBody()
+            .stream()
+            .filter(shard -> "p".equals(shard.prirep()) && "STARTED".equals(shard.state()))
+            .map(ShardsRecord::node)
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("No started primary shard for " + index));
+
+        // A copy of every shard on one node, and no more writes
+        client
+            .indices()
+            .putSettings(put ->
+                put
+                    .index(index)
+                    .settings(s ->
+                        s
+                            .numberOfReplicas("0")
+                            .blocks(blocks -> blocks.write(true))
+                            .otherSettings("index.routing.allocation.require._name", JsonData.of(node))
+                    )
+            );
+        long deadline = System.nanoTime() + properties.getAllocationTimeout().toNanos();
+        while (
+            !client
+                .cat()
+                .shards(shards -> shards.index(index))
+                .valueBody()
+                .stream()
+                .allMatch(shard -> "STARTED".equals(shard.state()) && node.equals(shard.node()))
+        ) {
+            awaitDeadline(deadline, index);
+            pause();
+        }
+
+        String target = TransactionHistoryIndices.monthIndex(
+            TransactionHistoryIndices.ALIAS + "_shrunk_" + VERSION_FORMAT.format(Instant.now()) + "-",
+            start(month)
+        );
+        client
+            .indices()
+            .shrink(shrink ->
+                shrink
+                    .index(index)
+                    .target(target)
+                    .settings("index.number_of_shards", JsonData.of(targetShards))
+                    .settings("index.number_of_replicas", JsonData.of(replicas != null ? Integer.parseInt(replicas) : 1))
+                    .settings("index.routing.allocation.require._name", JsonData.fromJson("null"))
+                    .settings("index.blocks.write", JsonData.fromJson("null"))
+            );
+        while (
+            client
+                .cluster()
+                .health(health -> health.index(target).waitForStatus(HealthStatus.Yellow).timeout(t -> t.time("20s")))
+                .timedOut()
+        ) {
+            awaitDeadline(deadline, target);
+        }
+
+        String monthName = TransactionHistoryIndices.monthIndex(TransactionHistoryIndices.MONTH_PREFIX, start(month));
+        client
+            .indices()
+            .updateAliases(update ->
+                update
+                    .actions(action -> action.add(add -> add.index(target).alias(TransactionHistoryIndices.ALIAS)))
+                    .actions(action -> action.add(add -> add.index(target).alias(monthName).isWriteIndex(true)))
+                    .actions(action -> action.removeIndex(remove -> remove.index(index)))
+            );
+        return target;
+    }
+
+    private static void awaitDeadline(long deadline, String index) {
+        if (System.nanoTime() > deadline) {
+            throw new IllegalStateException("Shards of " + index + " were not allocated in time");
+        }
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard allocation", e);
+        }
+    }
+
+    private static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
@@ -0,0 +1,255 @@
+package sn.ondmoney.history.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.repository.search.TransactionHistoryBulkIndexer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@code transactionhistory} index in sync with the {@code transaction_history} collection by tailing a
+ * MongoDB change stream, so every writer (REST, GraphQL, Kafka consumers) goes through one indexing path.
+ * <p>
+ * Changes are handed to the {@link TransactionHistoryBulkIndexer} in batches. Once a batch is acknowledged, i.e. every
+ * change of it is in Elasticsearch or spilled to {@code pending_index}, the resume token is stored in
+ * {@code change_stream_checkpoints}, and a restart continues from there instead of rescanning. A batch with changes
+ * waiting for a retry keeps the previous token until a later flush succeeds.
+ * <p>
+ * Pre-images are enabled on the collection, so that each change also carries the version it replaces or deletes: a
+ * document whose {@code transactionDate} moved to another month is deleted from the month index of that version, and a
+ * delete goes to its month index directly, see {@link TransactionHistoryBulkIndexer}. Changes recorded before, or
+ * whose pre-image has expired with the oplog, are handled without it.
+ * <p>
+ * Only the instance holding the {@code history:change-stream-sync} lock tails the stream; the others wait to take over.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.search.change-stream", name = "enabled", havingValue = "true")
+public class TransactionHistoryIndexSynchronizer implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryIndexSynchronizer.class);
+
+    private static final String LOCK = "history:change-stream-sync";
+    private static final String CHECKPOINT_COLLECTION = "change_stream_checkpoints";
+    private static final String STREAM_NAME = "transaction_history";
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private final MongoTemplate mongoTemplate;
+    private final TransactionHistoryBulkIndexer bulkIndexer;
+    private final RedissonClient redissonClient;
+    private final ApplicationProperties.Search.ChangeStream properties;
+
+    private volatile boolean running;
+    private Thread worker;
+    private boolean preImagesChecked;
+
+    public TransactionHistoryIndexSynchronizer(
+        MongoTemplate mongoTemplate,
+        TransactionHistoryBulkIndexer bulkIndexer,
+        RedissonClient redissonClient,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.bulkIndexer = bulkIndexer;
+        this.redissonClient = redissonClient;
+        this.properties = applicationProperties.getSearch().getChangeStream();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::run, "es-change-stream-sync");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        RLock lock = redissonClient.getLock(LOCK);
+        while (running) {
+            try {
+                // Held until stopped, renewed by the Redisson watchdog
+                if (!lock.isHeldByCurrentThread() && !lock.tryLock()) {
+                    LOG.debug("Change stream tailed by another instance, checking again in {}", properties.getRetryBackoff());
+                    backOff();
+                    continue;
+                }
+                tail(lock);
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    // The oplog no longer holds our position: changes were missed and only a reindex recovers them
+                    LOG.error("Change stream resume point is no longer in the oplog, restarting from now; run a reindex to catch up");
+                    deleteResumeToken();
+                } else {
+                    LOG.error("Change stream failed, retrying in {}", properties.getRetryBackoff(), e);
+                    backOff();
+                }
+            } catch (Exception e) {
+                if (running) {
+                    LOG.error("Change stream failed, retrying in {}", properties.getRetryBackoff(), e);
+                    backOff();
+                }
+            }
+        }
+        try {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Could not release {}: {}", LOCK, e.getMessage());
+        }
+        LOG.info("Change stream synchronizer stopped");
+    }
+
+    private void tail(RLock lock) {
+        String collectionName = mongoTemplate.getCollectionName(TransactionHistory.class);
+        enablePreImages(collectionName);
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        var changeStream = collection
+            .watch(List.of(Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete"))))
+            .fullDocument(FullDocument.UPDATE_LOOKUP)
+            .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+            .batchSize(properties.getBatchSize())
+            .maxAwaitTime(properties.getMaxAwait().toMillis(), TimeUnit.MILLISECONDS);
+
+        BsonDocument resumeToken = loadResumeToken();
+        if (resumeToken != null) {
+            changeStream = changeStream.resumeAfter(resumeToken);
+        }
+        LOG.info("Tailing {} change stream {}", STREAM_NAME, resumeToken != null ? "from stored resume token" : "from now");
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+            boolean acknowledged = true;
+            while (running) {
+                if (!lock.isHeldByCurrentThread()) {
+                    LOG.warn("Lost {}, leaving the change stream to another instance", LOCK);
+                    return;
+                }
+                int count = 0;
+                ChangeStreamDocument<Document> change;
+                // tryNext() returns null once the server has nothing more within max-await
+                while (count < properties.getBatchSize() && (change = cursor.tryNext()) != null) {
+                    apply(change);
+                    count++;
+                }
+                if (count > 0 || !acknowledged) {
+                    acknowledged = bulkIndexer.flush();
+                    LOG.debug("Synchronized {} changes to Elasticsearch", count);
+                }
+                BsonDocument token = cursor.getResumeToken();
+                if (acknowledged && token != null && !token.equals(resumeToken)) {
+                    saveResumeToken(token);
+                    resumeToken = token;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records pre-images of the collection's changes, once per start; without the privilege to do so, changes come
+     * without them.
+     */
+    private void enablePreImages(String collectionName) {
+        if (preImagesChecked) {
+            return;
+        }
+        try {
+            mongoTemplate.executeCommand(
+                new Document("collMod", collectionName).append("changeStreamPreAndPostImages", new Document("enabled", true))
+            );
+        } catch (RuntimeException e) {
+            LOG.warn(
+                "Could not enable pre-images on {}, moved documents may keep a copy in their previous month index: {}",
+                collectionName,
+                e.getMessage()
+            );
+        }
+        preImagesChecked = true;
+    }
+
+    private void apply(ChangeStreamDocument<Document> change) {
+        Document before = change.getFullDocumentBeforeChange();
+        TransactionHistory previous = before != null ? mongoTemplate.getConverter().read(TransactionHistory.class, before) : null;
+        switch (change.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                Document document = change.getFullDocument();
+                if (document != null) {
+                    bulkIndexer.index(mongoTemplate.getConverter().read(TransactionHistory.class, document), previous);
+                }
+            }
+            case DELETE -> bulkIndexer.delete(idOf(change.getDocumentKey()), previous);
+            default -> LOG.debug("Ignoring {} change", change.getOperationType());
+        }
+    }
+
+    private static String idOf(BsonDocument documentKey) {
+        BsonValue id = documentKey.get("_id");
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private MongoCollection<BsonDocument> checkpoints() {
+        return mongoTemplate.getDb().getCollection(CHECKPOINT_COLLECTION, BsonDocument.class);
+    }
+
+    private BsonDocument loadResumeToken() {
+        BsonDocument checkpoint = checkpoints().find(Filters.eq("_id", STREAM_NAME)).first();
+        return checkpoint != null && checkpoint.isDocument("resumeToken") ? checkpoint.getDocument("resumeToken") : null;
+    }
+
+    private void saveResumeToken(BsonDocument token) {
+        BsonDocument checkpoint = new BsonDocument("_id", new BsonString(STREAM_NAME))
+            .append("resumeToken", token)
+            .append("updatedAt", new BsonDateTime(System.currentTimeMillis()));
+        checkpoints().replaceOne(Filters.eq("_id", STREAM_NAME), checkpoint, new ReplaceOptions().upsert(true));
+    }
+
+    private void deleteResumeToken() {
+        checkpoints().deleteOne(Filters.eq("_id", STREAM_NAME));
+    }
+
+    private void backOff() {
+        try {
+            Thread.sleep(properties.getRetryBackoff().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
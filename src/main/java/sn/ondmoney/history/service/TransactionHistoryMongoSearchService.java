@@ -1,22 +1,33 @@
 package sn.ondmoney.history.service;
 
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.PartyKey;
 import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
 import sn.ondmoney.history.domain.enumeration.TransactionDirection;
 import sn.ondmoney.history.domain.enumeration.TransactionStatus;
 import sn.ondmoney.history.domain.enumeration.TransactionType;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionCursor;
+import sn.ondmoney.history.service.dto.TransactionFields;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Service for searching transactions in MongoDB
@@ -26,10 +37,15 @@ public class TransactionHistoryMongoSearchService {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryMongoSearchService.class);
 
+    static final String SENDER = "sender";
+    static final String RECEIVER = "receiver";
+
     private final MongoTemplate mongoTemplate;
+    private final long totalCap;
 
-    public TransactionHistoryMongoSearchService(MongoTemplate mongoTemplate) {
+    public TransactionHistoryMongoSearchService(MongoTemplate mongoTemplate, ApplicationProperties applicationProperties) {
         this.mongoTemplate = mongoTemplate;
+        this.totalCap = applicationProperties.getSearch().getTotalCap();
     }
 
     public Page<TransactionHistory> searchTransactions(
@@ -49,124 +65,268 @@ public class TransactionHistoryMongoSearchService {
         String descriptionContains,
         Pageable pageable
     ) {
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria();
+        criteria.setSenderPhone(senderPhone);
+        criteria.setReceiverPhone(receiverPhone);
+        criteria.setTypes(types);
+        criteria.setStatuses(statuses);
+        criteria.setStartDate(startDate);
+        criteria.setEndDate(endDate);
+        criteria.setMinAmount(minAmount);
+        criteria.setMaxAmount(maxAmount);
+        criteria.setCurrency(currency);
+        criteria.setDirection(direction);
+        criteria.setMerchantCode(merchantCode);
+        criteria.setBillReference(billReference);
+        criteria.setBankAccountNumber(bankAccountNumber);
+        criteria.setDescriptionContains(descriptionContains);
+        return searchTransactions(criteria, pageable);
+    }
+
+    public Page<TransactionHistory> searchTransactions(TransactionSearchCriteria criteria, Pageable pageable) {
+        return searchTransactions(criteria, pageable, TotalMode.EXACT, TransactionFields.ALL);
+    }
+
+    /**
+     * Offset page whose total is computed according to {@code totalMode}. One row past the page is fetched, so
+     * {@link SearchPage#hasNext()} is exact even when no count runs. Only {@code fields} are loaded.
+     */
+    public SearchPage<TransactionHistory> searchTransactions(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields
+    ) {
+        Query query = buildQuery(criteria, List.of());
+        boolean filtered = !query.getQueryObject().isEmpty();
+        project(query, fields);
+
+        // Add pagination and sorting
+        query.with(pageable);
+        if (pageable.isPaged()) {
+            query.limit(pageable.getPageSize() + 1);
+        }
+
+        LOG.debug("MongoDB query: {}, total mode: {}", query, totalMode);
+
+        // Execute query
+        List<TransactionHistory> results = mongoTemplate.find(query, TransactionHistory.class);
+        boolean hasNext = pageable.isPaged() && results.size() > pageable.getPageSize();
+        if (hasNext) {
+            results = results.subList(0, pageable.getPageSize());
+        }
+
+        long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        if (!hasNext && (!results.isEmpty() || offset == 0)) {
+            // Last page: the total is known without counting
+            return new SearchPage<>(results, pageable, offset + results.size(), false, totalMode, true);
+        }
+
+        Query countQuery = Query.of(query).skip(-1).limit(-1);
+        return switch (totalMode) {
+            case EXACT -> new SearchPage<>(results, pageable, mongoTemplate.count(countQuery, TransactionHistory.class), hasNext, totalMode, true);
+            case ESTIMATED -> filtered
+                ? cappedPage(results, pageable, countQuery, hasNext, totalMode)
+                : new SearchPage<>(results, pageable, mongoTemplate.estimatedCount(TransactionHistory.class), hasNext, totalMode, false);
+            case CAPPED -> cappedPage(results, pageable, countQuery, hasNext, totalMode);
+            case NONE -> new SearchPage<>(results, pageable, offset + results.size() + (hasNext ? 1 : 0), hasNext, totalMode, false);
+        };
+    }
+
+    private SearchPage<TransactionHistory> cappedPage(
+        List<TransactionHistory> results,
+        Pageable pageable,
+        Query countQuery,
+        boolean hasNext,
+        TotalMode totalMode
+    ) {
+        long count = mongoTemplate.count(countQuery.limit((int) totalCap), TransactionHistory.class);
+        return new SearchPage<>(results, pageable, count, hasNext, totalMode, count < totalCap);
+    }
+
+    /**
+     * Keyset page ordered by ({@code transaction_date}, {@code _id}): resumes strictly after {@code after} with a range
+     * predicate instead of skipping rows, so every page costs the same whatever its depth.
+     *
+     * @param after position of the last row of the previous page, or {@code null} for the first page.
+     * @param limit maximum number of rows to return; callers usually ask for one more than they show to detect a next page.
+     * @param fields properties to load.
+     */
+    public List<TransactionHistory> searchTransactionsAfter(
+        TransactionSearchCriteria criteria,
+        TransactionCursor after,
+        int limit,
+        Sort.Direction direction,
+        TransactionFields fields
+    ) {
+        List<Criteria> keyset = after != null ? List.of(keysetCriteria(after, direction)) : List.of();
+        Query query = buildQuery(criteria, keyset)
+            .with(Sort.by(direction, "transaction_date").and(Sort.by(direction, "_id")))
+            .limit(limit);
+        project(query, fields);
+
+        LOG.debug("MongoDB keyset query: {}", query);
+        return mongoTemplate.find(query, TransactionHistory.class);
+    }
+
+    /**
+     * Every match in ({@code transaction_date}, {@code _id}) order, read lazily from a single cursor fetching
+     * {@code batchSize} documents per round-trip. The caller must close the stream.
+     */
+    public Stream<TransactionHistory> streamTransactions(TransactionSearchCriteria criteria, Sort.Direction direction, int batchSize) {
+        Query query = buildQuery(criteria, List.of())
+            .with(Sort.by(direction, "transaction_date").and(Sort.by(direction, "_id")))
+            .cursorBatchSize(batchSize);
+
+        LOG.debug("MongoDB export query: {}", query);
+        return mongoTemplate.stream(query, TransactionHistory.class);
+    }
+
+    static void project(Query query, TransactionFields fields) {
+        if (!fields.isAll()) {
+            // Property names, mapped to document field names by the typed query
+            query.fields().include(fields.getNames().toArray(String[]::new));
+        }
+    }
+
+    private static Criteria keysetCriteria(TransactionCursor after, Sort.Direction direction) {
+        Object id = ObjectId.isValid(after.getId()) ? new ObjectId(after.getId()) : after.getId();
+        if (direction == Sort.Direction.DESC) {
+            return new Criteria().orOperator(
+                Criteria.where("transaction_date").lt(after.getTransactionDate()),
+                Criteria.where("transaction_date").is(after.getTransactionDate()).and("_id").lt(id)
+            );
+        }
+        return new Criteria().orOperator(
+            Criteria.where("transaction_date").gt(after.getTransactionDate()),
+            Criteria.where("transaction_date").is(after.getTransactionDate()).and("_id").gt(id)
+        );
+    }
+
+    /**
+     * Matches the indexed {@code <party>_key}; text that is not a phone number has no key and is compared with
+     * {@code <party>_phone} as stored.
+     */
+    static Criteria party(String party, String phone) {
+        long key = PartyKey.of(phone);
+        return key != PartyKey.NONE ? Criteria.where(party + "_key").is(key) : Criteria.where(party + "_phone").is(phone);
+    }
+
+    static Query buildQuery(TransactionSearchCriteria search, List<Criteria> extraCriteria) {
+        String senderPhone = search.getSenderPhone();
+        String receiverPhone = search.getReceiverPhone();
+        TransactionDirection direction = search.getDirection();
+
         LOG.debug(
             "MongoDB search - sender: {}, receiver: {}, types: {}, statuses: {}, direction: {}",
             senderPhone,
             receiverPhone,
-            types,
-            statuses,
+            search.getTypes(),
+            search.getStatuses(),
             direction
         );
 
-        Query query = new Query();
-        Criteria criteria = new Criteria();
+        // Collected and combined with $and, so that several $or clauses can coexist
+        List<Criteria> criteria = new ArrayList<>();
 
         // Handle phone number filtering based on direction
         if (direction != null) {
             switch (direction) {
                 case SENT:
                     if (senderPhone != null) {
-                        query.addCriteria(Criteria.where("sender_phone").is(senderPhone));
+                        criteria.add(party(SENDER, senderPhone));
                     }
                     break;
                 case RECEIVED:
                     if (receiverPhone != null) {
-                        query.addCriteria(Criteria.where("receiver_phone").is(receiverPhone));
+                        criteria.add(party(RECEIVER, receiverPhone));
                     }
                     break;
                 case ALL:
                     // For ALL, search both sender and receiver
-                    if (senderPhone != null) {
-                        query.addCriteria(new Criteria().orOperator(
-                            Criteria.where("sender_phone").is(senderPhone),
-                            Criteria.where("receiver_phone").is(senderPhone)
-                        ));
-                    } else if (receiverPhone != null) {
-                        query.addCriteria(new Criteria().orOperator(
-                            Criteria.where("sender_phone").is(receiverPhone),
-                            Criteria.where("receiver_phone").is(receiverPhone)
-                        ));
+                    String phone = senderPhone != null ? senderPhone : receiverPhone;
+                    if (phone != null) {
+                        criteria.add(new Criteria().orOperator(party(SENDER, phone), party(RECEIVER, phone)));
                     }
                     break;
             }
         } else {
             // No direction specified
             if (senderPhone != null) {
-                query.addCriteria(Criteria.where("sender_phone").is(senderPhone));
+                criteria.add(party(SENDER, senderPhone));
             }
             if (receiverPhone != null) {
-                query.addCriteria(Criteria.where("receiver_phone").is(receiverPhone));
+                criteria.add(party(RECEIVER, receiverPhone));
             }
         }
 
         // Transaction types
-        if (types != null && !types.isEmpty()) {
-            query.addCriteria(Criteria.where("type").in(types));
+        if (search.getTypes() != null && !search.getTypes().isEmpty()) {
+            criteria.add(Criteria.where("type").in(search.getTypes()));
         }
 
         // Transaction statuses
-        if (statuses != null && !statuses.isEmpty()) {
-            query.addCriteria(Criteria.where("status").in(statuses));
+        if (search.getStatuses() != null && !search.getStatuses().isEmpty()) {
+            criteria.add(Criteria.where("status").in(search.getStatuses()));
         }
 
         // Date range
-        if (startDate != null || endDate != null) {
+        if (search.getStartDate() != null || search.getEndDate() != null) {
             Criteria dateCriteria = Criteria.where("transaction_date");
-            if (startDate != null) {
-                dateCriteria = dateCriteria.gte(startDate);
+            if (search.getStartDate() != null) {
+                dateCriteria = dateCriteria.gte(search.getStartDate());
             }
-            if (endDate != null) {
-                dateCriteria = dateCriteria.lte(endDate);
+            if (search.getEndDate() != null) {
+                dateCriteria = dateCriteria.lte(search.getEndDate());
             }
-            query.addCriteria(dateCriteria);
+            criteria.add(dateCriteria);
         }
 
-        // Amount range
-        if (minAmount != null || maxAmount != null) {
+        // Amount range, compared numerically on Decimal128 values
+        if (search.getMinAmount() != null || search.getMaxAmount() != null) {
             Criteria amountCriteria = Criteria.where("amount");
-            if (minAmount != null) {
-                amountCriteria = amountCriteria.gte(minAmount.toString());
+            if (search.getMinAmount() != null) {
+                amountCriteria = amountCriteria.gte(new Decimal128(search.getMinAmount()));
             }
-            if (maxAmount != null) {
-                amountCriteria = amountCriteria.lte(maxAmount.toString());
+            if (search.getMaxAmount() != null) {
+                amountCriteria = amountCriteria.lte(new Decimal128(search.getMaxAmount()));
             }
-            query.addCriteria(amountCriteria);
+            criteria.add(amountCriteria);
         }
 
         // Currency
-        if (currency != null) {
-            query.addCriteria(Criteria.where("currency").is(currency));
+        if (search.getCurrency() != null) {
+            criteria.add(Criteria.where("currency").is(search.getCurrency()));
         }
 
         // Merchant code
-        if (merchantCode != null) {
-            query.addCriteria(Criteria.where("merchant_code").is(merchantCode));
+        if (search.getMerchantCode() != null) {
+            criteria.add(Criteria.where("merchant_code").is(search.getMerchantCode()));
         }
 
         // Bill reference
-        if (billReference != null) {
-            query.addCriteria(Criteria.where("bill_reference").is(billReference));
+        if (search.getBillReference() != null) {
+            criteria.add(Criteria.where("bill_reference").is(search.getBillReference()));
         }
 
         // Bank account number
-        if (bankAccountNumber != null) {
-            query.addCriteria(Criteria.where("bank_account_number").is(bankAccountNumber));
+        if (search.getBankAccountNumber() != null) {
+            criteria.add(Criteria.where("bank_account_number").is(search.getBankAccountNumber()));
         }
 
         // Description contains
-        if (descriptionContains != null) {
-            query.addCriteria(Criteria.where("description").regex(descriptionContains, "i"));
+        if (search.getDescriptionContains() != null) {
+            criteria.add(Criteria.where("description").regex(search.getDescriptionContains(), "i"));
         }
 
-        // Add pagination and sorting
-        query.with(pageable);
-
-        LOG.debug("MongoDB query: {}", query);
-
-        // Execute query
-        List<TransactionHistory> results = mongoTemplate.find(query, TransactionHistory.class);
-        long total = mongoTemplate.count(query.skip(-1).limit(-1), TransactionHistory.class);
+        criteria.addAll(extraCriteria);
 
-        return new PageImpl<>(results, pageable, total);
+        Query query = new Query();
+        if (criteria.size() == 1) {
+            query.addCriteria(criteria.get(0));
+        } else if (!criteria.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(criteria));
+        }
+        return query;
     }
 }
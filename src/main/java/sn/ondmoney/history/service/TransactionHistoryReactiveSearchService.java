@@ -0,0 +1,96 @@
+package sn.ondmoney.history.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionFields;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
+
+import java.util.List;
+
+/**
+ * Offset search of {@link TransactionHistoryMongoSearchService} on the reactive MongoDB driver.
+ * <p>
+ * The queries are the same, but the page and the count needed for its total are sent concurrently, so a page costs
+ * one round-trip instead of two. The count of a page that turns out to be the last one is ignored, the total being
+ * known from its rows.
+ */
+@Service
+public class TransactionHistoryReactiveSearchService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryReactiveSearchService.class);
+
+    private static final Total UNCOUNTED = new Total(-1, false);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final long totalCap;
+
+    public TransactionHistoryReactiveSearchService(ReactiveMongoTemplate reactiveMongoTemplate, ApplicationProperties applicationProperties) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.totalCap = applicationProperties.getSearch().getTotalCap();
+    }
+
+    /**
+     * See {@link TransactionHistoryMongoSearchService#searchTransactions(TransactionSearchCriteria, Pageable, TotalMode, TransactionFields)}.
+     */
+    public Mono<SearchPage<TransactionHistory>> searchTransactions(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields
+    ) {
+        Query query = TransactionHistoryMongoSearchService.buildQuery(criteria, List.of());
+        boolean filtered = !query.getQueryObject().isEmpty();
+        Query countQuery = Query.of(query);
+        TransactionHistoryMongoSearchService.project(query, fields);
+
+        query.with(pageable);
+        if (pageable.isPaged()) {
+            query.limit(pageable.getPageSize() + 1);
+        }
+
+        LOG.debug("Reactive MongoDB query: {}, total mode: {}", query, totalMode);
+
+        Mono<List<TransactionHistory>> rows = reactiveMongoTemplate.find(query, TransactionHistory.class).collectList();
+        Mono<Total> total = switch (totalMode) {
+            case EXACT -> reactiveMongoTemplate.count(countQuery, TransactionHistory.class).map(count -> new Total(count, true));
+            case ESTIMATED -> filtered
+                ? capped(countQuery)
+                : reactiveMongoTemplate.estimatedCount(TransactionHistory.class).map(count -> new Total(count, false));
+            case CAPPED -> capped(countQuery);
+            case NONE -> Mono.just(UNCOUNTED);
+        };
+        return Mono.zip(rows, total, (results, count) -> page(results, pageable, totalMode, count));
+    }
+
+    private Mono<Total> capped(Query countQuery) {
+        return reactiveMongoTemplate
+            .count(countQuery.limit((int) totalCap), TransactionHistory.class)
+            .map(count -> new Total(count, count < totalCap));
+    }
+
+    private static SearchPage<TransactionHistory> page(List<TransactionHistory> results, Pageable pageable, TotalMode totalMode, Total total) {
+        boolean hasNext = pageable.isPaged() && results.size() > pageable.getPageSize();
+        List<TransactionHistory> content = hasNext ? results.subList(0, pageable.getPageSize()) : results;
+
+        long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        if (!hasNext && (!content.isEmpty() || offset == 0)) {
+            // Last page: the total is known without counting
+            return new SearchPage<>(content, pageable, offset + content.size(), false, totalMode, true);
+        }
+        if (total == UNCOUNTED) {
+            return new SearchPage<>(content, pageable, offset + content.size() + (hasNext ? 1 : 0), hasNext, totalMode, false);
+        }
+        return new SearchPage<>(content, pageable, total.count(), hasNext, totalMode, total.exact());
+    }
+
+    private record Total(long count, boolean exact) {}
+}
@@ -0,0 +1,311 @@
+package sn.ondmoney.history.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.ReindexCheckpoint;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.ReindexState;
+import sn.ondmoney.history.repository.search.TransactionHistoryBulkIndexer;
+import sn.ondmoney.history.repository.search.TransactionHistoryIndices;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds the search indices without downtime.
+ * <p>
+ * Documents are streamed from {@code transaction_history} in {@code _id} order into a new generation of monthly
+ * indices, {@code transactionhistory_v<version>-yyyy.MM}, by parallel bulk workers, while searches keep hitting the
+ * current indices through the {@code transactionhistory} alias. The generation has its own index template, without the
+ * alias. Live writes are mirrored to the new indices during the run, and the reindex itself only creates documents, so
+ * it never overwrites a newer live write. Once the copy is complete the read alias and the month names are swapped
+ * atomically, see {@link TransactionHistoryIndices}.
+ * <p>
+ * Progress is saved in {@code reindex_checkpoints} after every batch; a failed run can be resumed from there.
+ */
+@Service
+public class TransactionHistoryReindexService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryReindexService.class);
+
+    public static final String ALIAS = TransactionHistoryIndices.ALIAS;
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+    private static final int CONFLICT = 409;
+
+    private final MongoTemplate mongoTemplate;
+    private final ElasticsearchTemplate elasticsearchTemplate;
+    private final TransactionHistoryBulkIndexer bulkIndexer;
+    private final TransactionHistoryIndices indices;
+    private final ApplicationProperties.Search.Reindex properties;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public TransactionHistoryReindexService(
+        MongoTemplate mongoTemplate,
+        ElasticsearchTemplate elasticsearchTemplate,
+        TransactionHistoryBulkIndexer bulkIndexer,
+        TransactionHistoryIndices indices,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.bulkIndexer = bulkIndexer;
+        this.indices = indices;
+        this.properties = applicationProperties.getSearch().getReindex();
+    }
+
+    /**
+     * Starts a reindex in the background.
+     *
+     * @param resume continue the last unfinished run instead of starting over.
+     * @return the initial checkpoint of the run.
+     * @throws IllegalStateException if a reindex is already running.
+     */
+    public ReindexCheckpoint start(boolean resume) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A reindex is already running");
+        }
+
+        try {
+            ReindexCheckpoint checkpoint = resume
+                ? status().filter(existing -> existing.getState() != ReindexState.COMPLETED).orElse(null)
+                : null;
+            if (checkpoint == null) {
+                checkpoint = new ReindexCheckpoint();
+                checkpoint.setId(ALIAS);
+                checkpoint.setTargetIndex(ALIAS + "_v" + VERSION_FORMAT.format(Instant.now()));
+                checkpoint.setStartedAt(Instant.now());
+                indices.initialize();
+                createGeneration(checkpoint.getTargetIndex());
+            } else {
+                LOG.info("Resuming reindex into {} after id {}", checkpoint.getTargetIndex(), checkpoint.getLastId());
+            }
+            checkpoint.setState(ReindexState.RUNNING);
+            checkpoint.setError(null);
+            checkpoint.setFinishedAt(null);
+            checkpoint.setTotal(mongoTemplate.estimatedCount(TransactionHistory.class));
+            save(checkpoint);
+
+            ReindexCheckpoint job = checkpoint;
+            Thread thread = new Thread(() -> run(job), "es-reindex");
+            thread.setDaemon(true);
+            thread.start();
+            return checkpoint;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    public Optional<ReindexCheckpoint> status() {
+        return Optional.ofNullable(mongoTemplate.findById(ALIAS, ReindexCheckpoint.class));
+    }
+
+    private void run(ReindexCheckpoint checkpoint) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(properties.getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "es-reindex-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        bulkIndexer.setMirrorPrefix(prefix(checkpoint.getTargetIndex()));
+        try {
+            copy(checkpoint, workers);
+            refresh(checkpoint.getTargetIndex());
+            swapAlias(checkpoint.getTargetIndex());
+            bulkIndexer.setMirrorPrefix(null);
+            elasticsearchTemplate.indexOps(TransactionHistory.class).deleteIndexTemplate(checkpoint.getTargetIndex());
+            checkpoint.setState(ReindexState.COMPLETED);
+            checkpoint.setFinishedAt(Instant.now());
+            save(checkpoint);
+            LOG.info("Reindexed {} documents into {}", checkpoint.getIndexed(), checkpoint.getTargetIndex());
+        } catch (Exception e) {
+            LOG.error("Reindex into {} failed after id {}", checkpoint.getTargetIndex(), checkpoint.getLastId(), e);
+            checkpoint.setState(ReindexState.FAILED);
+            checkpoint.setError(e.getMessage());
+            save(checkpoint);
+        } finally {
+            bulkIndexer.setMirrorPrefix(null);
+            workers.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    private void copy(ReindexCheckpoint checkpoint, ExecutorService workers) throws Exception {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "id")).cursorBatchSize(properties.getBatchSize());
+        if (checkpoint.getLastId() != null) {
+            query.addCriteria(Criteria.where("id").gt(checkpoint.getLastId()));
+        }
+
+        // Batches complete out of order; the checkpoint only moves past a batch once every earlier one is done
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        try (Stream<TransactionHistory> documents = mongoTemplate.stream(query, TransactionHistory.class)) {
+            Iterator<TransactionHistory> iterator = documents.iterator();
+            List<TransactionHistory> chunk = new ArrayList<>(properties.getBatchSize());
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == properties.getBatchSize() || !iterator.hasNext()) {
+                    while (inFlight.size() >= properties.getParallelism() * 2) {
+                        complete(checkpoint, inFlight.poll());
+                    }
+                    List<TransactionHistory> batch = chunk;
+                    String lastId = batch.get(batch.size() - 1).getId();
+                    inFlight.add(new Batch(lastId, batch.size(), workers.submit(() -> indexBatch(checkpoint.getTargetIndex(), batch))));
+                    chunk = new ArrayList<>(properties.getBatchSize());
+                }
+                while (!inFlight.isEmpty() && inFlight.peek().result().isDone()) {
+                    complete(checkpoint, inFlight.poll());
+                }
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            complete(checkpoint, inFlight.poll());
+        }
+    }
+
+    private void complete(ReindexCheckpoint checkpoint, Batch batch) throws InterruptedException, ExecutionException {
+        batch.result().get();
+        checkpoint.setLastId(batch.lastId());
+        checkpoint.setIndexed(checkpoint.getIndexed() + batch.size());
+        save(checkpoint);
+    }
+
+    private Void indexBatch(String targetIndex, List<TransactionHistory> documents) throws InterruptedException {
+        List<IndexQuery> queries = documents
+            .stream()
+            .map(document ->
+                new IndexQueryBuilder()
+                    .withId(document.getId())
+                    .withObject(document)
+                    .withIndex(TransactionHistoryIndices.monthIndex(prefix(targetIndex), document.getTransactionDate()))
+                    .withOpType(IndexQuery.OpType.CREATE)
+                    .build()
+            )
+            .toList();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                elasticsearchTemplate.bulkIndex(queries, TransactionHistory.class);
+                return null;
+            } catch (BulkFailureException e) {
+                // Conflicts mean a mirrored live write or an earlier attempt already created the document
+                Set<String> failedIds = e
+                    .getFailedDocuments()
+                    .entrySet()
+                    .stream()
+                    .filter(failure -> failure.getValue().status() == null || failure.getValue().status() != CONFLICT)
+                    .map(failure -> failure.getKey())
+                    .collect(Collectors.toSet());
+                if (failedIds.isEmpty()) {
+                    return null;
+                }
+                if (attempt >= properties.getMaxRetries()) {
+                    throw e;
+                }
+                queries = queries.stream().filter(query -> failedIds.contains(query.getId())).toList();
+            } catch (RuntimeException e) {
+                if (attempt >= properties.getMaxRetries()) {
+                    throw e;
+                }
+            }
+            Thread.sleep(500L * attempt);
+        }
+    }
+
+    /**
+     * Installs the template of the generation's month indices, which are then created by their first write.
+     */
+    private void createGeneration(String targetIndex) {
+        // No refreshes while bulk loading; restored before the alias swap
+        indices.putTemplate(targetIndex, prefix(targetIndex) + "*", new Settings().append("index.refresh_interval", "-1"), false);
+        LOG.info("Created index template {}", targetIndex);
+    }
+
+    private void refresh(String targetIndex) {
+        String pattern = prefix(targetIndex) + "*";
+        elasticsearchTemplate.execute(client -> {
+            client.indices().putSettings(settings -> settings.index(pattern).settings(s -> s.refreshInterval(t -> t.time("1s"))));
+            return client.indices().refresh(refresh -> refresh.index(pattern));
+        });
+    }
+
+    /**
+     * Points the read alias and every month name at the generation's indices, and drops the indices they pointed to,
+     * in a single request. The first time, this replaces the concrete {@code transactionhistory} index created before
+     * monthly indices; month indices created by live writes since then are concrete too, and replaced the same way.
+     */
+    private void swapAlias(String targetIndex) {
+        elasticsearchTemplate.execute(client -> {
+            var indices = client.indices();
+            String prefix = prefix(targetIndex);
+            if (!indices.exists(exists -> exists.index(prefix + "*").allowNoIndices(false)).value()) {
+                // Nothing to copy: an empty current month keeps the alias in place
+                indices.create(create -> create.index(TransactionHistoryIndices.monthIndex(prefix, null)));
+            }
+            List<String> generation = new ArrayList<>(indices.get(get -> get.index(prefix + "*")).result().keySet());
+            boolean aliasExists = indices.existsAlias(alias -> alias.name(ALIAS)).value();
+            boolean concreteIndexExists = !aliasExists && indices.exists(exists -> exists.index(ALIAS)).value();
+            List<String> previous = aliasExists
+                ? new ArrayList<>(indices.getAlias(alias -> alias.name(ALIAS)).result().keySet())
+                : List.of();
+
+            indices.updateAliases(update -> {
+                if (concreteIndexExists) {
+                    update.actions(action -> action.removeIndex(remove -> remove.index(ALIAS)));
+                }
+                previous
+                    .stream()
+                    .filter(index -> !generation.contains(index))
+                    .forEach(index -> update.actions(action -> action.removeIndex(remove -> remove.index(index))));
+                for (String index : generation) {
+                    String month = TransactionHistoryIndices.MONTH_PREFIX + index.substring(prefix.length());
+                    update.actions(action -> action.add(add -> add.index(index).alias(ALIAS)));
+                    update.actions(action -> action.add(add -> add.index(index).alias(month).isWriteIndex(true)));
+                }
+                return update;
+            });
+            LOG.info("Alias {} now points to {} monthly indices of {}", ALIAS, generation.size(), targetIndex);
+            return null;
+        });
+        this.indices.legacyReplaced();
+    }
+
+    private static String prefix(String targetIndex) {
+        return targetIndex + "-";
+    }
+
+    private void save(ReindexCheckpoint checkpoint) {
+        checkpoint.setUpdatedAt(Instant.now());
+        mongoTemplate.save(checkpoint);
+    }
+
+    private record Batch(String lastId, int size, Future<Void> result) {}
+}
@@ -3,19 +3,20 @@ package sn.ondmoney.history.service;
 import sn.ondmoney.history.domain.TransactionHistory;
 import sn.ondmoney.history.domain.enumeration.*;
 import sn.ondmoney.history.repository.search.TransactionHistorySearchRepository;
-import sn.ondmoney.history.web.graphql.response.*;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionCursor;
+import sn.ondmoney.history.service.dto.TransactionFields;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class TransactionHistorySearchService {
@@ -24,16 +25,13 @@ public class TransactionHistorySearchService {
 
     private final TransactionHistorySearchRepository transactionHistorySearchRepository;
     private final TransactionHistoryMongoSearchService mongoSearchService;
-    private final PhoneNumberNormalizer phoneNormalizer;
 
     public TransactionHistorySearchService(
         TransactionHistorySearchRepository transactionHistorySearchRepository,
-        TransactionHistoryMongoSearchService mongoSearchService,
-        PhoneNumberNormalizer phoneNormalizer
+        TransactionHistoryMongoSearchService mongoSearchService
     ) {
         this.transactionHistorySearchRepository = transactionHistorySearchRepository;
         this.mongoSearchService = mongoSearchService;
-        this.phoneNormalizer = phoneNormalizer;
     }
 
     // Search with all new criteria
@@ -81,396 +79,25 @@ public class TransactionHistorySearchService {
         );
     }
 
-    // Get user transaction statistics
-    public UserTransactionStats getUserTransactionStats(
-        String phoneNumber,
-        Instant startDate,
-        Instant endDate,
-        List<TransactionType> types,
-        TransactionDirection direction
-    ) {
-        LOG.debug("Getting transaction stats for user: {}", phoneNumber);
-
-        // Query for user's transactions
-        String query = buildUserStatsQuery(phoneNumber, startDate, endDate, types, direction);
-        Pageable pageable = Pageable.unpaged();
-        Page<TransactionHistory> allTransactions = transactionHistorySearchRepository.search(query, pageable);
-
-        List<TransactionHistory> transactions = allTransactions.getContent();
-
-        if (transactions.isEmpty()) {
-            return createEmptyStats(startDate, endDate);
-        }
-
-        return createUserTransactionStats(transactions, startDate, endDate);
-    }
-
-    // Helper method to build query string
-    private String buildQueryString(
-        String senderPhone,
-        String receiverPhone,
-        List<TransactionType> types,
-        List<TransactionStatus> statuses,
-        Instant startDate,
-        Instant endDate,
-        BigDecimal minAmount,
-        BigDecimal maxAmount,
-        String currency,
-        TransactionDirection direction,
-        String merchantCode,
-        String billReference,
-        String bankAccountNumber,
-        String descriptionContains
-    ) {
-        StringBuilder queryBuilder = new StringBuilder();
-
-        // Normalize and escape phone numbers
-        String normalizedSenderPhone = normalizeAndEscapePhone(senderPhone);
-        String normalizedReceiverPhone = normalizeAndEscapePhone(receiverPhone);
-
-        // Handle direction - if direction is specified, adjust phone filters
-        if (direction != null) {
-            switch (direction) {
-                case SENT:
-                    if (normalizedSenderPhone != null) {
-                        addAndClause(queryBuilder);
-                        queryBuilder.append("senderPhone:\"").append(normalizedSenderPhone).append("\"");
-                    }
-                    break;
-                case RECEIVED:
-                    if (normalizedReceiverPhone != null) {
-                        addAndClause(queryBuilder);
-                        queryBuilder.append("receiverPhone:\"").append(normalizedReceiverPhone).append("\"");
-                    }
-                    break;
-                case ALL:
-                    // For ALL, we need to search both sender and receiver
-                    if (normalizedSenderPhone != null && normalizedReceiverPhone != null) {
-                        addAndClause(queryBuilder);
-                        queryBuilder.append("(senderPhone:\"").append(normalizedSenderPhone)
-                            .append("\" OR receiverPhone:\"").append(normalizedReceiverPhone).append("\")");
-                    } else if (normalizedSenderPhone != null) {
-                        addAndClause(queryBuilder);
-                        queryBuilder.append("(senderPhone:\"").append(normalizedSenderPhone)
-                            .append("\" OR receiverPhone:\"").append(normalizedSenderPhone).append("\")");
-                    } else if (normalizedReceiverPhone != null) {
-                        addAndClause(queryBuilder);
-                        queryBuilder.append("(senderPhone:\"").append(normalizedReceiverPhone)
-                            .append("\" OR receiverPhone:\"").append(normalizedReceiverPhone).append("\")");
-                    }
-                    break;
-            }
-        } else {
-            // No direction specified, use individual phone filters
-            if (normalizedSenderPhone != null) {
-                addAndClause(queryBuilder);
-                queryBuilder.append("senderPhone:\"").append(normalizedSenderPhone).append("\"");
-            }
-            if (normalizedReceiverPhone != null) {
-                addAndClause(queryBuilder);
-                queryBuilder.append("receiverPhone:\"").append(normalizedReceiverPhone).append("\"");
-            }
-        }
-
-        // Multiple types
-        if (types != null && !types.isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("(");
-            for (int i = 0; i < types.size(); i++) {
-                if (i > 0) queryBuilder.append(" OR ");
-                queryBuilder.append("type:").append(types.get(i));
-            }
-            queryBuilder.append(")");
-        }
-
-        // Multiple statuses
-        if (statuses != null && !statuses.isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("(");
-            for (int i = 0; i < statuses.size(); i++) {
-                if (i > 0) queryBuilder.append(" OR ");
-                queryBuilder.append("status:").append(statuses.get(i));
-            }
-            queryBuilder.append(")");
-        }
-
-        // Date range
-        if (startDate != null && endDate != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("transactionDate:[").append(startDate).append(" TO ").append(endDate).append("]");
-        } else if (startDate != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("transactionDate:[").append(startDate).append(" TO *]");
-        } else if (endDate != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("transactionDate:[* TO ").append(endDate).append("]");
-        }
-
-        // Amount range
-        if (minAmount != null && maxAmount != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("amount:[").append(minAmount).append(" TO ").append(maxAmount).append("]");
-        } else if (minAmount != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("amount:[").append(minAmount).append(" TO *]");
-        } else if (maxAmount != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("amount:[* TO ").append(maxAmount).append("]");
-        }
-
-        // Currency
-        if (currency != null && !currency.trim().isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("currency:").append(currency);
-        }
-
-        // Merchant code
-        if (merchantCode != null && !merchantCode.trim().isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("merchantCode:").append(merchantCode);
-        }
-
-        // Bill reference
-        if (billReference != null && !billReference.trim().isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("billReference:").append(billReference);
-        }
-
-        // Bank account number
-        if (bankAccountNumber != null && !bankAccountNumber.trim().isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("bankAccountNumber:").append(bankAccountNumber);
-        }
-
-        // Description contains (wildcard search)
-        if (descriptionContains != null && !descriptionContains.trim().isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("description:*").append(descriptionContains).append("*");
-        }
-
-        String finalQuery = queryBuilder.toString();
-        return finalQuery.isEmpty() ? "*" : finalQuery;
-    }
-
-    private void addAndClause(StringBuilder queryBuilder) {
-        if (queryBuilder.length() > 0) {
-            queryBuilder.append(" AND ");
-        }
-    }
-
-    // Build query for user statistics
-    private String buildUserStatsQuery(
-        String phoneNumber,
-        Instant startDate,
-        Instant endDate,
-        List<TransactionType> types,
-        TransactionDirection direction
+    // Search with all criteria and an explicit total mode
+    public SearchPage<TransactionHistory> advancedSearch(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields
     ) {
-        StringBuilder queryBuilder = new StringBuilder();
-
-        // Normalize and escape phone number
-        String normalizedPhone = normalizeAndEscapePhone(phoneNumber);
-
-        // User is involved in transaction (as sender or receiver based on direction)
-        if (normalizedPhone != null) {
-            if (direction == null || direction == TransactionDirection.ALL) {
-                queryBuilder.append("(senderPhone:\"").append(normalizedPhone)
-                    .append("\" OR receiverPhone:\"").append(normalizedPhone).append("\")");
-            } else if (direction == TransactionDirection.SENT) {
-                queryBuilder.append("senderPhone:\"").append(normalizedPhone).append("\"");
-            } else if (direction == TransactionDirection.RECEIVED) {
-                queryBuilder.append("receiverPhone:\"").append(normalizedPhone).append("\"");
-            }
-        }
-
-        // Date range
-        if (startDate != null && endDate != null) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("transactionDate:[").append(startDate).append(" TO ").append(endDate).append("]");
-        }
-
-        // Transaction types
-        if (types != null && !types.isEmpty()) {
-            addAndClause(queryBuilder);
-            queryBuilder.append("(");
-            for (int i = 0; i < types.size(); i++) {
-                if (i > 0) queryBuilder.append(" OR ");
-                queryBuilder.append("type:").append(types.get(i));
-            }
-            queryBuilder.append(")");
-        }
-
-        return queryBuilder.toString();
-    }
-
-    /**
-     * Normalize and escape phone number for Elasticsearch QueryString.
-     * Converts +221 to 00221 and escapes special characters.
-     */
-    private String normalizeAndEscapePhone(String phone) {
-        if (phone == null || phone.trim().isEmpty()) {
-            return null;
-        }
-
-        // Normalize using PhoneNumberNormalizer (+221 -> 00221)
-        String normalized = phoneNormalizer.normalize(phone);
-
-        // Escape special characters for Elasticsearch QueryString
-        return escapeQueryString(normalized);
-    }
-
-    /**
-     * Escape special characters for Elasticsearch QueryString.
-     * Characters: + - = && || > < ! ( ) { } [ ] ^ " ~ * ? : \ /
-     */
-    private String escapeQueryString(String input) {
-        if (input == null || input.isEmpty()) {
-            return input;
-        }
-        return input.replaceAll("([+\\-=&|><!(){}\\[\\]^\"~*?:\\\\/])", "\\\\$1");
+        return mongoSearchService.searchTransactions(criteria, pageable, totalMode, fields);
     }
 
-    // Create user transaction statistics from transaction list
-    private UserTransactionStats createUserTransactionStats(
-        List<TransactionHistory> transactions,
-        Instant startDate,
-        Instant endDate
+    // Keyset (cursor) search, see TransactionHistoryMongoSearchService#searchTransactionsAfter
+    public List<TransactionHistory> advancedSearchAfter(
+        TransactionSearchCriteria criteria,
+        TransactionCursor after,
+        int limit,
+        Sort.Direction direction,
+        TransactionFields fields
     ) {
-        UserTransactionStats stats = new UserTransactionStats();
-
-        // Basic counts
-        int total = transactions.size();
-        stats.setTotalTransactions(total);
-
-        // Amount calculations
-        BigDecimal totalAmount = transactions.stream()
-            .map(TransactionHistory::getAmount)
-            .filter(Objects::nonNull)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        stats.setTotalAmount(totalAmount);
-
-        // Status counts
-        stats.setSuccessfulTransactions((int) transactions.stream()
-            .filter(t -> t.getStatus() == TransactionStatus.SUCCESS)
-            .count());
-        stats.setFailedTransactions((int) transactions.stream()
-            .filter(t -> t.getStatus() == TransactionStatus.FAILED)
-            .count());
-        stats.setPendingTransactions((int) transactions.stream()
-            .filter(t -> t.getStatus() == TransactionStatus.PENDING)
-            .count());
-        stats.setCancelledTransactions((int) transactions.stream()
-            .filter(t -> t.getStatus() == TransactionStatus.CANCELLED)
-            .count());
-        stats.setProcessingTransactions((int) transactions.stream()
-            .filter(t -> t.getStatus() == TransactionStatus.PROCESSING)
-            .count());
-
-        // Transaction type summary
-        Map<TransactionType, List<TransactionHistory>> transactionsByType = transactions.stream()
-            .collect(Collectors.groupingBy(TransactionHistory::getType));
-
-        List<TransactionTypeSummary> typeSummaries = transactionsByType.entrySet().stream()
-            .map(entry -> {
-                TransactionType type = entry.getKey();
-                List<TransactionHistory> typeTransactions = entry.getValue();
-
-                BigDecimal typeTotalAmount = typeTransactions.stream()
-                    .map(TransactionHistory::getAmount)
-                    .filter(Objects::nonNull)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-                float percentage = total > 0 ? (typeTransactions.size() * 100.0f) / total : 0;
-
-                return new TransactionTypeSummary(
-                    type,
-                    typeTransactions.size(),
-                    typeTotalAmount,
-                    percentage
-                );
-            })
-            .sorted((a, b) -> b.getCount() - a.getCount()) // Sort by count descending
-            .collect(Collectors.toList());
-
-        stats.setTransactionTypeSummary(typeSummaries);
-
-        // Date information
-        Instant firstTransactionDate = transactions.stream()
-            .map(TransactionHistory::getTransactionDate)
-            .filter(Objects::nonNull)
-            .min(Instant::compareTo)
-            .orElse(null);
-        stats.setFirstTransactionDate(firstTransactionDate);
-
-        Instant lastTransactionDate = transactions.stream()
-            .map(TransactionHistory::getTransactionDate)
-            .filter(Objects::nonNull)
-            .max(Instant::compareTo)
-            .orElse(null);
-        stats.setLastTransactionDate(lastTransactionDate);
-
-        stats.setPeriodStart(startDate);
-        stats.setPeriodEnd(endDate);
-
-        // Monthly summary
-        if (startDate != null && endDate != null) {
-            List<MonthlySummary> monthlySummaries = calculateMonthlySummaries(transactions, startDate, endDate);
-            stats.setMonthlySummary(monthlySummaries);
-        }
-
-        return stats;
-    }
-
-    private List<MonthlySummary> calculateMonthlySummaries(
-        List<TransactionHistory> transactions,
-        Instant startDate,
-        Instant endDate
-    ) {
-        // Group transactions by month
-        Map<String, List<TransactionHistory>> transactionsByMonth = transactions.stream()
-            .collect(Collectors.groupingBy(t -> {
-                Instant date = t.getTransactionDate();
-                if (date == null) return "unknown";
-                YearMonth yearMonth = YearMonth.from(date.atZone(java.time.ZoneId.systemDefault()));
-                return yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-            }));
-
-        return transactionsByMonth.entrySet().stream()
-            .map(entry -> {
-                String month = entry.getKey();
-                List<TransactionHistory> monthTransactions = entry.getValue();
-
-                BigDecimal monthTotalAmount = monthTransactions.stream()
-                    .map(TransactionHistory::getAmount)
-                    .filter(Objects::nonNull)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-                return new MonthlySummary(
-                    month,
-                    monthTransactions.size(),
-                    monthTotalAmount
-                );
-            })
-            .sorted(Comparator.comparing(MonthlySummary::getMonth))
-            .collect(Collectors.toList());
-    }
-
-    private UserTransactionStats createEmptyStats(Instant startDate, Instant endDate) {
-        UserTransactionStats stats = new UserTransactionStats();
-        stats.setTotalTransactions(0);
-        stats.setTotalAmount(BigDecimal.ZERO);
-        stats.setSuccessfulTransactions(0);
-        stats.setFailedTransactions(0);
-        stats.setPendingTransactions(0);
-        stats.setCancelledTransactions(0);
-        stats.setProcessingTransactions(0);
-        stats.setTransactionTypeSummary(Collections.emptyList());
-        stats.setFirstTransactionDate(null);
-        stats.setLastTransactionDate(null);
-        stats.setPeriodStart(startDate);
-        stats.setPeriodEnd(endDate);
-        stats.setMonthlySummary(Collections.emptyList());
-        return stats;
+        return mongoSearchService.searchTransactionsAfter(criteria, after, limit, direction, fields);
     }
 
     public Page<TransactionHistory> searchTransactions(String query, Pageable pageable) {
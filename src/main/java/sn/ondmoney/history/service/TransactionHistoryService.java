@@ -1,23 +1,35 @@
 package sn.ondmoney.history.service;
 
+import sn.ondmoney.history.config.ApplicationProperties;
 import sn.ondmoney.history.domain.TransactionHistory;
 import sn.ondmoney.history.domain.enumeration.*;
 import sn.ondmoney.history.repository.TransactionHistoryRepository;
 import sn.ondmoney.history.repository.search.TransactionHistorySearchRepository;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionCursor;
+import sn.ondmoney.history.service.dto.TransactionFields;
 import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
 import sn.ondmoney.history.service.mapper.TransactionHistoryMapper;
 import sn.ondmoney.history.web.graphql.response.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Service Implementation for managing {@link TransactionHistory}.
@@ -28,21 +40,41 @@ public class TransactionHistoryService {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryService.class);
 
+    private static final int MAX_CONNECTION_SIZE = 100;
+
     private final TransactionHistoryRepository transactionHistoryRepository;
     private final TransactionHistoryMapper transactionHistoryMapper;
     private final TransactionHistorySearchRepository transactionHistorySearchRepository;
     private final TransactionHistorySearchService transactionHistorySearchService;
 
     private final PhoneNumberNormalizer phoneNumberNormalizer;
+    private final UserStatsService userStatsService;
+    private final UserTimelineService userTimelineService;
+    private final TransactionSearchCache searchCache;
+    private final TransactionDocumentCache documentCache;
+    private final TransactionHistoryReactiveSearchService reactiveSearchService;
+    private final boolean reactive;
 
     public TransactionHistoryService(
         TransactionHistoryRepository transactionHistoryRepository,
         TransactionHistoryMapper transactionHistoryMapper,
         TransactionHistorySearchRepository transactionHistorySearchRepository,
         TransactionHistorySearchService transactionHistorySearchService,
-        PhoneNumberNormalizer phoneNumberNormalizer
+        PhoneNumberNormalizer phoneNumberNormalizer,
+        UserStatsService userStatsService,
+        UserTimelineService userTimelineService,
+        TransactionSearchCache searchCache,
+        TransactionDocumentCache documentCache,
+        TransactionHistoryReactiveSearchService reactiveSearchService,
+        ApplicationProperties applicationProperties
     ) {
         this.phoneNumberNormalizer = phoneNumberNormalizer;
+        this.userStatsService = userStatsService;
+        this.userTimelineService = userTimelineService;
+        this.searchCache = searchCache;
+        this.documentCache = documentCache;
+        this.reactiveSearchService = reactiveSearchService;
+        this.reactive = applicationProperties.getSearch().isReactive();
         this.transactionHistoryRepository = transactionHistoryRepository;
         this.transactionHistoryMapper = transactionHistoryMapper;
         this.transactionHistorySearchRepository = transactionHistorySearchRepository;
@@ -160,7 +192,90 @@ public class TransactionHistoryService {
     }
 
     /**
-     * Get user transaction statistics
+     * Search with all criteria, computing the total according to {@code totalMode}. Properties outside {@code fields}
+     * are left {@code null}. Searches scoped to a phone number are cached, see {@link TransactionSearchCache}.
+     */
+    public SearchPage<TransactionHistoryDTO> searchByCriteria(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields
+    ) {
+        LOG.debug("Search with criteria - sender: {}, receiver: {}, direction: {}, total mode: {}, fields: {}",
+            criteria.getSenderPhone(),
+            criteria.getReceiverPhone(),
+            criteria.getDirection(),
+            totalMode,
+            fields
+        );
+        TotalMode mode = totalMode != null ? totalMode : TotalMode.EXACT;
+        return searchCache.searchPage(criteria, pageable, mode, fields, () ->
+            userTimelineService.serves(criteria, pageable, fields)
+                ? userTimelineService.searchPage(criteria, pageable, mode)
+                : transactionHistorySearchService.advancedSearch(criteria, pageable, mode, fields).map(transactionHistoryMapper::toDto)
+        );
+    }
+
+    /**
+     * {@link #searchByCriteria(TransactionSearchCriteria, Pageable, TotalMode, TransactionFields)} for non-blocking
+     * callers: on the reactive driver when {@code application.search.reactive} is set, otherwise on a bounded elastic
+     * thread.
+     */
+    public Mono<SearchPage<TransactionHistoryDTO>> searchByCriteriaReactive(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields
+    ) {
+        if (!reactive) {
+            return Mono.fromCallable(() -> searchByCriteria(criteria, pageable, totalMode, fields)).subscribeOn(Schedulers.boundedElastic());
+        }
+        LOG.debug("Reactive search with criteria - sender: {}, receiver: {}, direction: {}, total mode: {}, fields: {}",
+            criteria.getSenderPhone(),
+            criteria.getReceiverPhone(),
+            criteria.getDirection(),
+            totalMode,
+            fields
+        );
+        TotalMode mode = totalMode != null ? totalMode : TotalMode.EXACT;
+        return searchCache.searchPageReactive(criteria, pageable, mode, fields, () ->
+            userTimelineService.serves(criteria, pageable, fields)
+                ? userTimelineService.searchPageReactive(criteria, pageable, mode)
+                : reactiveSearchService.searchTransactions(criteria, pageable, mode, fields).map(page -> page.map(transactionHistoryMapper::toDto))
+        );
+    }
+
+    /**
+     * Cursor-paginated search ordered by transaction date then id.
+     *
+     * @param first number of transactions to return, at most {@value #MAX_CONNECTION_SIZE}.
+     * @param after {@code endCursor} of the previous page, or {@code null} for the first page.
+     * @param fields properties to load; the others are left {@code null}.
+     */
+    public TransactionConnection searchConnection(
+        TransactionSearchCriteria criteria,
+        int first,
+        String after,
+        SortDirection sortDirection,
+        TransactionFields fields
+    ) {
+        int size = Math.max(1, Math.min(first, MAX_CONNECTION_SIZE));
+        TransactionCursor cursor = after != null && !after.isBlank() ? TransactionCursor.decode(after) : null;
+        Sort.Direction direction = sortDirection == SortDirection.ASC ? Sort.Direction.ASC : Sort.Direction.DESC;
+        LOG.debug("Connection search - first: {}, after: {}, direction: {}", size, cursor, direction);
+
+        // One extra row tells whether a next page exists without counting
+        List<TransactionHistoryDTO> rows = transactionHistorySearchService
+            .advancedSearchAfter(criteria, cursor, size + 1, direction, fields)
+            .stream()
+            .map(transactionHistoryMapper::toDto)
+            .toList();
+        return TransactionConnection.from(rows, size, cursor != null);
+    }
+
+    /**
+     * Get user transaction statistics, answered from the {@code user_stats} rollups and cached until a transaction of
+     * the user is written.
      */
     public UserTransactionStats getUserTransactionStats(
         String phoneNumber,
@@ -170,12 +285,29 @@ public class TransactionHistoryService {
         TransactionDirection direction
     ) {
         LOG.debug("Getting transaction stats for user: {}", phoneNumber);
-        return transactionHistorySearchService.getUserTransactionStats(
-            phoneNumber,
-            startDate,
-            endDate,
-            types,
-            direction
+        return searchCache.userStats(phoneNumber, startDate, endDate, types, direction, () ->
+            userStatsService.getUserTransactionStats(phoneNumber, startDate, endDate, types, direction)
+        );
+    }
+
+    /**
+     * {@link #getUserTransactionStats} for non-blocking callers, see {@link #searchByCriteriaReactive}.
+     */
+    public Mono<UserTransactionStats> getUserTransactionStatsReactive(
+        String phoneNumber,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction
+    ) {
+        if (!reactive) {
+            return Mono.fromCallable(() -> getUserTransactionStats(phoneNumber, startDate, endDate, types, direction)).subscribeOn(
+                Schedulers.boundedElastic()
+            );
+        }
+        LOG.debug("Getting transaction stats for user: {}", phoneNumber);
+        return searchCache.userStatsReactive(phoneNumber, startDate, endDate, types, direction, () ->
+            userStatsService.getUserTransactionStatsReactive(phoneNumber, startDate, endDate, types, direction)
         );
     }
 
@@ -243,6 +375,9 @@ public class TransactionHistoryService {
         TransactionHistory entity = transactionHistoryMapper.toEntity(transactionHistoryDTO);
         entity = transactionHistoryRepository.save(entity);
         transactionHistorySearchRepository.index(entity);
+        userStatsService.apply(List.of(), List.of(entity));
+        userTimelineService.apply(List.of(), List.of(entity));
+        searchCache.invalidate(List.of(), List.of(entity));
         return transactionHistoryMapper.toDto(entity);
     }
 
@@ -258,9 +393,14 @@ public class TransactionHistoryService {
         // Normalisation simple
         normalizePhoneNumbers(transactionHistoryDTO);
 
+        List<TransactionHistory> previous = transactionHistoryRepository.findById(transactionHistoryDTO.getId()).stream().toList();
         TransactionHistory entity = transactionHistoryMapper.toEntity(transactionHistoryDTO);
         entity = transactionHistoryRepository.save(entity);
-        transactionHistorySearchRepository.index(entity);
+        transactionHistorySearchRepository.index(entity, previous.stream().findFirst().orElse(null));
+        userStatsService.apply(previous, List.of(entity));
+        userTimelineService.apply(previous, List.of(entity));
+        searchCache.invalidate(previous, List.of(entity));
+        documentCache.evict(List.of(entity.getId()));
         return transactionHistoryMapper.toDto(entity);
     }
 
@@ -273,6 +413,8 @@ public class TransactionHistoryService {
     public Optional<TransactionHistoryDTO> partialUpdate(TransactionHistoryDTO transactionHistoryDTO) {
         LOG.debug("Request to partially update TransactionHistory: {}", transactionHistoryDTO);
 
+        // Separate read: the entity below is modified in place
+        List<TransactionHistory> previous = transactionHistoryRepository.findById(transactionHistoryDTO.getId()).stream().toList();
         return transactionHistoryRepository
             .findById(transactionHistoryDTO.getId())
             .map(existingTransactionHistory -> {
@@ -290,7 +432,11 @@ public class TransactionHistoryService {
             })
             .map(transactionHistoryRepository::save)
             .map(savedTransactionHistory -> {
-                transactionHistorySearchRepository.index(savedTransactionHistory);
+                transactionHistorySearchRepository.index(savedTransactionHistory, previous.stream().findFirst().orElse(null));
+                userStatsService.apply(previous, List.of(savedTransactionHistory));
+                userTimelineService.apply(previous, List.of(savedTransactionHistory));
+                searchCache.invalidate(previous, List.of(savedTransactionHistory));
+                documentCache.evict(List.of(savedTransactionHistory.getId()));
                 return savedTransactionHistory;
             })
             .map(transactionHistoryMapper::toDto);
@@ -308,14 +454,65 @@ public class TransactionHistoryService {
     }
 
     /**
-     * Get one transactionHistory by id.
+     * Get one transactionHistory by id, through the {@link TransactionDocumentCache}.
      *
      * @param id the id of the entity.
      * @return the entity.
      */
     public Optional<TransactionHistoryDTO> findOne(String id) {
         LOG.debug("Request to get TransactionHistory : {}", id);
-        return transactionHistoryRepository.findById(id).map(transactionHistoryMapper::toDto);
+        return Optional.ofNullable(findAllById(List.of(id)).get(id));
+    }
+
+    /**
+     * Get the transactionHistories with the given ids from the {@link TransactionDocumentCache}, reading the missing
+     * ones in a single {@code _id $in} query.
+     *
+     * @param ids the ids of the entities.
+     * @return the entities by id; unknown ids are absent.
+     */
+    public Map<String, TransactionHistoryDTO> findAllById(Collection<String> ids) {
+        LOG.debug("Request to get {} TransactionHistories by id", ids.size());
+        return documentCache.getAll(ids, missing ->
+            transactionHistoryRepository
+                .findAllById(missing)
+                .stream()
+                .collect(Collectors.toMap(TransactionHistory::getId, transactionHistoryMapper::toDto))
+        );
+    }
+
+    /**
+     * Get the transactionHistories with the given business transaction ids in a single query.
+     *
+     * @param transactionIds the transaction ids.
+     * @return the entities by transaction id; unknown ids are absent.
+     */
+    public Map<String, TransactionHistoryDTO> findAllByTransactionId(Collection<String> transactionIds) {
+        LOG.debug("Request to get {} TransactionHistories by transactionId", transactionIds.size());
+        return transactionHistoryRepository
+            .findByTransactionIdIn(transactionIds)
+            .stream()
+            .collect(Collectors.toMap(TransactionHistory::getTransactionId, transactionHistoryMapper::toDto, (first, second) -> first));
+    }
+
+    /**
+     * Get the transactionHistories sharing each of the given correlation ids in a single query, newest first.
+     *
+     * @param correlationIds the correlation ids.
+     * @return the entities grouped by correlation id; unknown ids are absent.
+     */
+    public Map<String, List<TransactionHistoryDTO>> findAllByCorrelationId(Collection<String> correlationIds) {
+        LOG.debug("Request to get TransactionHistories for {} correlationIds", correlationIds.size());
+        return transactionHistoryRepository
+            .findByCorrelationIdIn(correlationIds)
+            .stream()
+            .sorted(Comparator.comparing(TransactionHistory::getTransactionDate, Comparator.nullsLast(Comparator.reverseOrder())))
+            .collect(
+                Collectors.groupingBy(
+                    TransactionHistory::getCorrelationId,
+                    Collectors.mapping(transactionHistoryMapper::toDto, Collectors.toList())
+                )
+            );
     }
 
     /**
@@ -325,8 +522,13 @@ public class TransactionHistoryService {
      */
     public void delete(String id) {
         LOG.debug("Request to delete TransactionHistory : {}", id);
+        List<TransactionHistory> previous = transactionHistoryRepository.findById(id).stream().toList();
         transactionHistoryRepository.deleteById(id);
-        transactionHistorySearchRepository.deleteFromIndexById(id);
+        transactionHistorySearchRepository.deleteFromIndexById(id, previous.stream().findFirst().orElse(null));
+        userStatsService.apply(previous, List.of());
+        userTimelineService.apply(previous, List.of());
+        searchCache.invalidate(previous, List.of());
+        documentCache.evict(List.of(id));
     }
 
     /**
@@ -337,7 +539,14 @@ public class TransactionHistoryService {
      * @return the list of entities.
      */
     public Page<TransactionHistoryDTO> search(String query, Pageable pageable) {
-        LOG.debug("Request to search for a page of TransactionHistories for query {}", query);
-        return transactionHistorySearchRepository.search(query, pageable).map(transactionHistoryMapper::toDto);
+        return search(query, pageable, TransactionFields.ALL);
+    }
+
+    /**
+     * Search for the transactionHistory corresponding to the query, fetching only {@code fields} from {@code _source}.
+     */
+    public Page<TransactionHistoryDTO> search(String query, Pageable pageable, TransactionFields fields) {
+        LOG.debug("Request to search for a page of TransactionHistories for query {}, fields {}", query, fields);
+        return transactionHistorySearchRepository.search(query, pageable, fields.getNames()).map(transactionHistoryMapper::toDto);
     }
 }
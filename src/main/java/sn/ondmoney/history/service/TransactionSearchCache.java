@@ -0,0 +1,402 @@
+package sn.ondmoney.history.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.PartyKey;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionFields;
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
+import sn.ondmoney.history.web.graphql.response.UserTransactionStats;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Redis cache of search pages and user statistics.
+ * <p>
+ * Entries are keyed by a hash of the normalized criteria and of the current <em>generation</em> of every phone number
+ * the query is scoped to. Writing a transaction bumps the generation of its sender and receiver, so the results
+ * cached for those phones are never read again and expire after {@code application.search.cache.ttl}; results of
+ * other users are left alone. Because the generations are read before the query runs, a result computed while a
+ * write is in progress is stored under the old generation and can never be served stale.
+ * <p>
+ * Searches that are not scoped to a phone number are not cached. Redis errors fall back to the database.
+ */
+@Service
+public class TransactionSearchCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionSearchCache.class);
+
+    private static final String KEY_PREFIX = "history:search:";
+    private static final String GENERATION_PREFIX = KEY_PREFIX + "generation:";
+
+    // Generations must outlive every entry built on them
+    private static final Duration GENERATION_TTL = Duration.ofDays(1);
+
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final PhoneNumberNormalizer phoneNormalizer;
+    private final ApplicationProperties.Search.Cache properties;
+    private final JavaType pageType;
+    private final JavaType statsType;
+
+    private final Region pages;
+    private final Region stats;
+
+    public TransactionSearchCache(
+        RedissonClient redissonClient,
+        ObjectMapper objectMapper,
+        PhoneNumberNormalizer phoneNormalizer,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.redissonClient = redissonClient;
+        this.objectMapper = objectMapper;
+        this.phoneNormalizer = phoneNormalizer;
+        this.properties = applicationProperties.getSearch().getCache();
+        this.pageType = objectMapper.getTypeFactory().constructType(CachedPage.class);
+        this.statsType = objectMapper.getTypeFactory().constructType(UserTransactionStats.class);
+        this.pages = new Region("page", meterRegistry);
+        this.stats = new Region("stats", meterRegistry);
+    }
+
+    public SearchPage<TransactionHistoryDTO> searchPage(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields,
+        Supplier<SearchPage<TransactionHistoryDTO>> loader
+    ) {
+        Set<String> phones = phones(criteria);
+        if (phones.isEmpty()) {
+            return loader.get();
+        }
+        String key = pageKey(criteria, pageable, totalMode, fields);
+        CachedPage cached = get(pages, key, phones, pageType, () -> CachedPage.of(loader.get()));
+        return cached.toPage(pageable);
+    }
+
+    /**
+     * Same as {@link #searchPage}, without blocking on Redis.
+     */
+    public Mono<SearchPage<TransactionHistoryDTO>> searchPageReactive(
+        TransactionSearchCriteria criteria,
+        Pageable pageable,
+        TotalMode totalMode,
+        TransactionFields fields,
+        Supplier<Mono<SearchPage<TransactionHistoryDTO>>> loader
+    ) {
+        Set<String> phones = phones(criteria);
+        if (phones.isEmpty()) {
+            return Mono.defer(loader);
+        }
+        String key = pageKey(criteria, pageable, totalMode, fields);
+        return this.<CachedPage>getReactive(pages, key, phones, pageType, () -> loader.get().map(CachedPage::of)).map(cached ->
+            cached.toPage(pageable)
+        );
+    }
+
+    private static Set<String> phones(TransactionSearchCriteria criteria) {
+        return Stream.of(criteria.getSenderPhone(), criteria.getReceiverPhone())
+            .filter(Objects::nonNull)
+            .map(TransactionSearchCache::party)
+            .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * The generation name of a phone number: its {@link PartyKey}, so that every spelling shares one generation.
+     */
+    private static String party(String phone) {
+        long key = PartyKey.of(phone);
+        return key != PartyKey.NONE ? String.valueOf(key) : phone;
+    }
+
+    private static String pageKey(TransactionSearchCriteria criteria, Pageable pageable, TotalMode totalMode, TransactionFields fields) {
+        return String.join(
+            "|",
+            "page",
+            criteria.getSenderPhone(),
+            criteria.getReceiverPhone(),
+            sorted(criteria.getTypes()),
+            sorted(criteria.getStatuses()),
+            String.valueOf(criteria.getStartDate()),
+            String.valueOf(criteria.getEndDate()),
+            plain(criteria.getMinAmount()),
+            plain(criteria.getMaxAmount()),
+            criteria.getCurrency(),
+            String.valueOf(criteria.getDirection()),
+            criteria.getMerchantCode(),
+            criteria.getBillReference(),
+            criteria.getBankAccountNumber(),
+            criteria.getDescriptionContains(),
+            String.valueOf(pageable.getPageNumber()),
+            String.valueOf(pageable.getPageSize()),
+            pageable.getSort().toString(),
+            String.valueOf(totalMode),
+            fields.toString()
+        );
+    }
+
+    public UserTransactionStats userStats(
+        String phoneNumber,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction,
+        Supplier<UserTransactionStats> loader
+    ) {
+        String phone = phoneNormalizer.normalize(phoneNumber);
+        return get(stats, statsKey(phone, startDate, endDate, types, direction), Set.of(party(phone)), statsType, loader);
+    }
+
+    /**
+     * Same as {@link #userStats}, without blocking on Redis.
+     */
+    public Mono<UserTransactionStats> userStatsReactive(
+        String phoneNumber,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction,
+        Supplier<Mono<UserTransactionStats>> loader
+    ) {
+        String phone = phoneNormalizer.normalize(phoneNumber);
+        return getReactive(stats, statsKey(phone, startDate, endDate, types, direction), Set.of(party(phone)), statsType, loader);
+    }
+
+    private static String statsKey(String phone, Instant startDate, Instant endDate, List<TransactionType> types, TransactionDirection direction) {
+        return String.join(
+            "|",
+            "stats",
+            phone,
+            String.valueOf(startDate),
+            String.valueOf(endDate),
+            sorted(types),
+            String.valueOf(direction)
+        );
+    }
+
+    /**
+     * Drops the cached results of every sender and receiver of the given transactions.
+     */
+    public void invalidate(Collection<TransactionHistory> previous, Collection<TransactionHistory> current) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Set<String> phones = new TreeSet<>();
+        Stream.concat(previous.stream(), current.stream()).forEach(history -> {
+            addPhone(phones, history.getSenderPhone());
+            addPhone(phones, history.getReceiverPhone());
+        });
+        if (phones.isEmpty()) {
+            return;
+        }
+        try {
+            RBatch batch = redissonClient.createBatch();
+            for (String phone : phones) {
+                batch.getAtomicLong(GENERATION_PREFIX + phone).incrementAndGetAsync();
+                batch.getAtomicLong(GENERATION_PREFIX + phone).expireAsync(GENERATION_TTL.plus(properties.getTtl()));
+            }
+            batch.execute();
+            LOG.debug("Invalidated cached searches of {} phone numbers", phones.size());
+        } catch (RuntimeException e) {
+            LOG.warn("Could not invalidate cached searches of {}, they expire after {}: {}", phones, properties.getTtl(), e.getMessage());
+        }
+    }
+
+    private static void addPhone(Set<String> phones, String phone) {
+        if (phone != null && !phone.isBlank()) {
+            phones.add(party(phone));
+        }
+    }
+
+    private <T> T get(Region region, String criteriaKey, Set<String> phones, JavaType type, Supplier<T> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        String key;
+        try {
+            key = key(region, criteriaKey, phones, redissonClient.getBuckets(LongCodec.INSTANCE).get(generationKeys(phones)));
+            String json = redissonClient.<String>getBucket(key, StringCodec.INSTANCE).get();
+            if (json != null) {
+                region.hits.increment();
+                return objectMapper.readValue(json, type);
+            }
+        } catch (RuntimeException | JsonProcessingException e) {
+            LOG.warn("Search cache unavailable, querying the database: {}", e.getMessage());
+            return loader.get();
+        }
+
+        region.misses.increment();
+        T value = loader.get();
+        try {
+            redissonClient.<String>getBucket(key, StringCodec.INSTANCE).set(objectMapper.writeValueAsString(value), properties.getTtl());
+        } catch (RuntimeException | JsonProcessingException e) {
+            LOG.warn("Could not cache {} result: {}", region.name, e.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * Redis calls are chained asynchronously; Redis errors fall back to {@code loader}, whose own errors are propagated.
+     */
+    private <T> Mono<T> getReactive(Region region, String criteriaKey, Set<String> phones, JavaType type, Supplier<Mono<T>> loader) {
+        if (!properties.isEnabled()) {
+            return Mono.defer(loader);
+        }
+        return Mono.fromCompletionStage(() -> redissonClient.getBuckets(LongCodec.INSTANCE).<Long>getAsync(generationKeys(phones)))
+            .flatMap(generations -> {
+                String key = key(region, criteriaKey, phones, generations);
+                return Mono.fromCompletionStage(() -> redissonClient.<String>getBucket(key, StringCodec.INSTANCE).getAsync())
+                    .map(json -> new Lookup(key, json))
+                    .defaultIfEmpty(new Lookup(key, null));
+            })
+            .onErrorResume(e -> {
+                LOG.warn("Search cache unavailable, querying the database: {}", e.getMessage());
+                return Mono.just(Lookup.UNAVAILABLE);
+            })
+            .flatMap(lookup -> {
+                if (lookup == Lookup.UNAVAILABLE) {
+                    return loader.get();
+                }
+                if (lookup.json() != null) {
+                    region.hits.increment();
+                    try {
+                        return Mono.just(objectMapper.readValue(lookup.json(), type));
+                    } catch (JsonProcessingException e) {
+                        LOG.warn("Search cache unavailable, querying the database: {}", e.getMessage());
+                        return loader.get();
+                    }
+                }
+                region.misses.increment();
+                return loader.get().flatMap(value -> store(region, lookup.key(), value).thenReturn(value));
+            });
+    }
+
+    private Mono<Void> store(Region region, String key, Object value) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Could not cache {} result: {}", region.name, e.getMessage());
+            return Mono.empty();
+        }
+        return Mono.fromCompletionStage(() -> redissonClient.<String>getBucket(key, StringCodec.INSTANCE).setAsync(json, properties.getTtl()))
+            .onErrorResume(e -> {
+                LOG.warn("Could not cache {} result: {}", region.name, e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private static String key(Region region, String criteriaKey, Set<String> phones, Map<String, Long> generations) {
+        String phoneGenerations = phones
+            .stream()
+            .map(phone -> phone + "=" + generations.getOrDefault(GENERATION_PREFIX + phone, 0L))
+            .collect(Collectors.joining(","));
+        return KEY_PREFIX + region.name + ":" + hash(criteriaKey + "|" + phoneGenerations);
+    }
+
+    private static String[] generationKeys(Set<String> phones) {
+        return phones.stream().map(phone -> GENERATION_PREFIX + phone).toArray(String[]::new);
+    }
+
+    private static String sorted(Collection<? extends Enum<?>> values) {
+        return values == null ? "" : values.stream().map(Enum::name).sorted().distinct().collect(Collectors.joining(","));
+    }
+
+    private static String plain(BigDecimal amount) {
+        return amount == null ? "" : amount.stripTrailingZeros().toPlainString();
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Region {
+
+        private final String name;
+        private final Counter hits;
+        private final Counter misses;
+
+        private Region(String name, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.hits = requests(meterRegistry, name, "hit");
+            this.misses = requests(meterRegistry, name, "miss");
+            Gauge.builder("history.search.cache.hit.ratio", this, Region::hitRatio)
+                .description("Share of cached lookups answered from Redis")
+                .tag("cache", name)
+                .register(meterRegistry);
+        }
+
+        private static Counter requests(MeterRegistry meterRegistry, String cache, String result) {
+            return Counter.builder("history.search.cache.requests")
+                .description("Search cache lookups by result")
+                .tag("cache", cache)
+                .tag("result", result)
+                .register(meterRegistry);
+        }
+
+        private double hitRatio() {
+            double total = hits.count() + misses.count();
+            return total == 0 ? 0 : hits.count() / total;
+        }
+    }
+
+    /**
+     * Result of a Redis lookup; {@code json} is {@code null} on a miss.
+     */
+    private record Lookup(String key, String json) {
+        static final Lookup UNAVAILABLE = new Lookup(null, null);
+    }
+
+    /**
+     * Serialized form of a {@link SearchPage}; the pageable comes from the request.
+     */
+    record CachedPage(List<TransactionHistoryDTO> content, long total, boolean hasNext, TotalMode totalMode, boolean totalExact) {
+        static CachedPage of(SearchPage<TransactionHistoryDTO> page) {
+            return new CachedPage(page.getContent(), page.getTotalElements(), page.hasNext(), page.getTotalMode(), page.isTotalExact());
+        }
+
+        SearchPage<TransactionHistoryDTO> toPage(Pageable pageable) {
+            return new SearchPage<>(content, pageable, total, hasNext, totalMode, totalExact);
+        }
+    }
+}
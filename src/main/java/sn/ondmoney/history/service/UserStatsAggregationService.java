@@ -0,0 +1,241 @@
+package sn.ondmoney.history.service;
+
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+import sn.ondmoney.history.web.graphql.response.MonthlySummary;
+import sn.ondmoney.history.web.graphql.response.TransactionTypeSummary;
+import sn.ondmoney.history.web.graphql.response.UserTransactionStats;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Computes user statistics in MongoDB with a single {@code $facet} pipeline over {@code transaction_history}: the JVM
+ * only receives a handful of grouped documents, whatever the number of matching transactions.
+ * <p>
+ * Unlike the rollups, any date range is answered directly, and a transaction between two accounts of the same user is
+ * counted once.
+ */
+@Service
+public class UserStatsAggregationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserStatsAggregationService.class);
+
+    private static final String HISTORY_COLLECTION = "transaction_history";
+
+    private final MongoTemplate mongoTemplate;
+    private final PhoneNumberNormalizer phoneNormalizer;
+    private final ZoneId timeZone;
+
+    public UserStatsAggregationService(
+        MongoTemplate mongoTemplate,
+        PhoneNumberNormalizer phoneNormalizer,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.phoneNormalizer = phoneNormalizer;
+        this.timeZone = applicationProperties.getStats().getTimeZone();
+    }
+
+    /**
+     * Time zone as MongoDB date operators take it: they reject the {@code Z} id of {@link ZoneOffset#UTC}.
+     */
+    private String timezone() {
+        return timeZone.equals(ZoneOffset.UTC) ? "UTC" : timeZone.getId();
+    }
+
+    public UserTransactionStats getUserTransactionStats(
+        String phoneNumber,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction
+    ) {
+        String phone = phoneNormalizer.normalize(phoneNumber);
+        boolean monthly = startDate != null && endDate != null;
+
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(matchCriteria(phone, startDate, endDate, types, direction)),
+            facet(monthly)
+        );
+        LOG.debug("User stats aggregation: {}", aggregation);
+        Document result = mongoTemplate.aggregate(aggregation, HISTORY_COLLECTION, Document.class).getUniqueMappedResult();
+        return toStats(result, startDate, endDate, monthly);
+    }
+
+    private Criteria matchCriteria(
+        String phone,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction
+    ) {
+        Criteria criteria;
+        if (direction == TransactionDirection.SENT) {
+            criteria = TransactionHistoryMongoSearchService.party(TransactionHistoryMongoSearchService.SENDER, phone);
+        } else if (direction == TransactionDirection.RECEIVED) {
+            criteria = TransactionHistoryMongoSearchService.party(TransactionHistoryMongoSearchService.RECEIVER, phone);
+        } else {
+            criteria = new Criteria().orOperator(
+                TransactionHistoryMongoSearchService.party(TransactionHistoryMongoSearchService.SENDER, phone),
+                TransactionHistoryMongoSearchService.party(TransactionHistoryMongoSearchService.RECEIVER, phone)
+            );
+        }
+        if (startDate != null && endDate != null) {
+            criteria = criteria.and("transaction_date").gte(startDate).lte(endDate);
+        } else if (startDate != null) {
+            criteria = criteria.and("transaction_date").gte(startDate);
+        } else if (endDate != null) {
+            criteria = criteria.and("transaction_date").lte(endDate);
+        }
+        if (types != null && !types.isEmpty()) {
+            criteria = criteria.and("type").in(types.stream().map(Enum::name).toList());
+        }
+        return criteria;
+    }
+
+    /**
+     * One stage computing every breakdown. Amounts go through {@code $toDecimal} so they sum exactly whether stored
+     * as strings or decimals.
+     */
+    private AggregationOperation facet(boolean monthly) {
+        Document amount = new Document("$toDecimal", "$amount");
+        Document facets = new Document()
+            .append(
+                "totals",
+                List.of(
+                    new Document(
+                        "$group",
+                        new Document("_id", null)
+                            .append("count", new Document("$sum", 1))
+                            .append("amount", new Document("$sum", amount))
+                            .append("first", new Document("$min", "$transaction_date"))
+                            .append("last", new Document("$max", "$transaction_date"))
+                    )
+                )
+            )
+            .append("byStatus", List.of(new Document("$group", new Document("_id", "$status").append("count", new Document("$sum", 1)))))
+            .append(
+                "byType",
+                List.of(
+                    new Document(
+                        "$group",
+                        new Document("_id", "$type").append("count", new Document("$sum", 1)).append("amount", new Document("$sum", amount))
+                    ),
+                    new Document("$sort", new Document("count", -1))
+                )
+            );
+        if (monthly) {
+            Document month = new Document(
+                "$dateTrunc",
+                new Document("date", "$transaction_date").append("unit", "month").append("timezone", timezone())
+            );
+            facets.append(
+                "byMonth",
+                List.of(
+                    new Document(
+                        "$group",
+                        new Document("_id", month).append("count", new Document("$sum", 1)).append("amount", new Document("$sum", amount))
+                    ),
+                    new Document("$sort", new Document("_id", 1))
+                )
+            );
+        }
+        return context -> new Document("$facet", facets);
+    }
+
+    private UserTransactionStats toStats(Document result, Instant startDate, Instant endDate, boolean monthly) {
+        UserTransactionStats stats = new UserTransactionStats();
+        stats.setPeriodStart(startDate);
+        stats.setPeriodEnd(endDate);
+        stats.setTotalAmount(BigDecimal.ZERO);
+        stats.setTransactionTypeSummary(Collections.emptyList());
+
+        List<Document> totals = result != null ? result.getList("totals", Document.class) : List.of();
+        if (totals.isEmpty()) {
+            stats.setMonthlySummary(Collections.emptyList());
+            return stats;
+        }
+
+        Document total = totals.get(0);
+        int count = total.getInteger("count");
+        stats.setTotalTransactions(count);
+        stats.setTotalAmount(decimal(total.get("amount")));
+        stats.setFirstTransactionDate(instant(total.getDate("first")));
+        stats.setLastTransactionDate(instant(total.getDate("last")));
+
+        for (Document status : result.getList("byStatus", Document.class)) {
+            int statusCount = status.getInteger("count");
+            switch (TransactionStatus.valueOf(status.getString("_id"))) {
+                case SUCCESS -> stats.setSuccessfulTransactions(statusCount);
+                case FAILED -> stats.setFailedTransactions(statusCount);
+                case PENDING -> stats.setPendingTransactions(statusCount);
+                case CANCELLED -> stats.setCancelledTransactions(statusCount);
+                case PROCESSING -> stats.setProcessingTransactions(statusCount);
+                default -> LOG.debug("No counter for status {}", status.getString("_id"));
+            }
+        }
+
+        List<TransactionTypeSummary> typeSummaries = new ArrayList<>();
+        for (Document type : result.getList("byType", Document.class)) {
+            int typeCount = type.getInteger("count");
+            typeSummaries.add(
+                new TransactionTypeSummary(
+                    TransactionType.valueOf(type.getString("_id")),
+                    typeCount,
+                    decimal(type.get("amount")),
+                    (typeCount * 100.0f) / count
+                )
+            );
+        }
+        typeSummaries.sort(Comparator.comparingInt(TransactionTypeSummary::getCount).reversed());
+        stats.setTransactionTypeSummary(typeSummaries);
+
+        if (monthly) {
+            stats.setMonthlySummary(
+                result
+                    .getList("byMonth", Document.class)
+                    .stream()
+                    .map(month ->
+                        new MonthlySummary(
+                            YearMonth.from(month.getDate("_id").toInstant().atZone(timeZone)).format(UserStatsService.MONTH_FORMAT),
+                            month.getInteger("count"),
+                            decimal(month.get("amount"))
+                        )
+                    )
+                    .toList()
+            );
+        }
+        return stats;
+    }
+
+    private static BigDecimal decimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return value instanceof Number number ? new BigDecimal(number.toString()) : BigDecimal.ZERO;
+    }
+
+    private static Instant instant(Date date) {
+        return date != null ? date.toInstant() : null;
+    }
+}
@@ -0,0 +1,565 @@
+package sn.ondmoney.history.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.UserStats;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+import sn.ondmoney.history.web.graphql.response.MonthlySummary;
+import sn.ondmoney.history.web.graphql.response.TransactionTypeSummary;
+import sn.ondmoney.history.web.graphql.response.UserTransactionStats;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the {@code user_stats} rollups and answers user statistics from them.
+ * <p>
+ * Writers report each transaction's previous and current state through {@link #apply}; the difference is applied with
+ * one unordered bulk of {@code $inc} upserts, so a redelivered record that did not change anything is a no-op.
+ * <p>
+ * The Kafka writer cannot rely on that: once a record is stored, its redelivery no longer sees the previous state. It
+ * stores each transaction's change with the record itself ({@link #pending}) and applies it with
+ * {@link #applyPending}, which records the change's {@code op} id in the touched rollups and skips rollups that already
+ * hold it. A change left behind by a crash is applied again by the next write of the transaction. Only the last
+ * {@value #APPLIED_OPS_KEPT} op ids are kept per rollup, so that a busy rollup does not grow without bound: a change
+ * retried after that many others reached the same rollup is counted again.
+ * <p>
+ * A transfer to oneself counts once for each side too. Its {@code RECEIVED} side goes to rollups flagged
+ * {@code self_transfer}, which statistics over both directions leave out, so that it is counted once there, as by
+ * {@link UserStatsAggregationService}.
+ * <p>
+ * Rollups are monthly, in {@code application.stats.time-zone}. A requested period that starts or ends inside a month is completed with an aggregation
+ * over {@code transaction_history} restricted to that partial month. With {@code application.stats.source: AGGREGATION}
+ * queries bypass the rollups entirely, see {@link UserStatsAggregationService}.
+ */
+@Service
+public class UserStatsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserStatsService.class);
+
+    static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private static final String HISTORY_COLLECTION = "transaction_history";
+
+    /**
+     * Field of a {@code transaction_history} document holding its change not yet applied to the rollups.
+     */
+    public static final String PENDING_FIELD = "stats_pending";
+
+    private static final String APPLIED_OPS = "applied_ops";
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    /**
+     * Last op ids kept per rollup. Every pending change pushes its op id and trims the array to this size, so a change
+     * is only skipped as a duplicate when retried before that many other changes hit the same rollup.
+     */
+    private static final int APPLIED_OPS_KEPT = 200;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final PhoneNumberNormalizer phoneNormalizer;
+    private final UserStatsAggregationService aggregationService;
+    private final ApplicationProperties.Stats properties;
+    private final ZoneId timeZone;
+
+    public UserStatsService(
+        MongoTemplate mongoTemplate,
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        PhoneNumberNormalizer phoneNormalizer,
+        UserStatsAggregationService aggregationService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.phoneNormalizer = phoneNormalizer;
+        this.aggregationService = aggregationService;
+        this.properties = applicationProperties.getStats();
+        this.timeZone = properties.getTimeZone();
+    }
+
+    /**
+     * Moves transactions from their previous state to their current one in the rollups.
+     *
+     * @param previous stored state of the transactions before the write; empty for new transactions.
+     * @param current  state after the write; empty for deletes.
+     */
+    public void apply(Collection<TransactionHistory> previous, Collection<TransactionHistory> current) {
+        Collection<Delta> deltas = deltas(previous, current);
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserStats.class);
+        for (Delta delta : deltas) {
+            operations.upsert(Query.query(Criteria.where("_id").is(delta.id())), update(delta, now));
+        }
+        operations.execute();
+        LOG.debug("Applied {} user stats changes", deltas.size());
+    }
+
+    /**
+     * Change of one transaction from its previous state to its current one, to be stored in {@link #PENDING_FIELD} of
+     * the written record and then applied by {@link #applyPending}.
+     *
+     * @return {@code null} if the rollups do not change.
+     */
+    public Document pending(TransactionHistory previous, TransactionHistory current) {
+        Collection<Delta> deltas = deltas(
+            previous != null ? List.of(previous) : List.of(),
+            current != null ? List.of(current) : List.of()
+        );
+        if (deltas.isEmpty()) {
+            return null;
+        }
+        return new Document("op", new ObjectId().toHexString()).append("deltas", deltas.stream().map(Delta::toDocument).toList());
+    }
+
+    /**
+     * Applies changes built by {@link #pending}, each at most once per rollup.
+     */
+    public void applyPending(Collection<Document> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserStats.class);
+        for (Document change : changes) {
+            String op = change.getString("op");
+            for (Document document : change.getList("deltas", Document.class)) {
+                Delta delta = Delta.of(document);
+                Update update = update(delta, now).push(APPLIED_OPS).slice(-APPLIED_OPS_KEPT).each(op);
+                // A rollup already holding the op matches nothing, and the upsert then fails on its _id
+                operations.upsert(Query.query(Criteria.where("_id").is(delta.id()).and(APPLIED_OPS).ne(op)), update);
+            }
+        }
+        try {
+            operations.execute();
+        } catch (BulkOperationException e) {
+            List<BulkWriteError> errors = e.getErrors();
+            if (errors.stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY_ERROR)) {
+                throw e;
+            }
+            LOG.debug("Skipped {} user stats changes already applied", errors.size());
+        }
+        LOG.debug("Applied {} pending user stats changes", changes.size());
+    }
+
+    private static Update update(Delta delta, Instant now) {
+        Update update = new Update()
+            .setOnInsert("phone", delta.phone)
+            .setOnInsert("month", delta.month)
+            .setOnInsert("direction", delta.direction.name())
+            .setOnInsert("type", delta.type.name())
+            .setOnInsert("status", delta.status.name())
+            .setOnInsert("self_transfer", delta.selfTransfer)
+            .inc("count", delta.count)
+            .inc("total_amount", new Decimal128(delta.amount))
+            .set("updated_at", now);
+        if (delta.first != null) {
+            update.min("first_transaction_date", delta.first).max("last_transaction_date", delta.last);
+        }
+        return update;
+    }
+
+    /**
+     * Net changes per rollup key; keys whose count and amount cancel out are left out.
+     */
+    Collection<Delta> deltas(Collection<TransactionHistory> previous, Collection<TransactionHistory> current) {
+        Map<String, Delta> deltas = new LinkedHashMap<>();
+        previous.forEach(history -> accumulate(deltas, history, -1));
+        current.forEach(history -> accumulate(deltas, history, 1));
+        deltas.values().removeIf(delta -> delta.count == 0 && delta.amount.signum() == 0);
+        return deltas.values();
+    }
+
+    private void accumulate(Map<String, Delta> deltas, TransactionHistory history, int sign) {
+        if (history == null || history.getTransactionDate() == null || history.getType() == null || history.getStatus() == null) {
+            return;
+        }
+        String sender = phoneNormalizer.normalize(history.getSenderPhone());
+        String receiver = phoneNormalizer.normalize(history.getReceiverPhone());
+        accumulate(deltas, history, sender, TransactionDirection.SENT, false, sign);
+        accumulate(deltas, history, receiver, TransactionDirection.RECEIVED, receiver != null && receiver.equals(sender), sign);
+    }
+
+    private void accumulate(
+        Map<String, Delta> deltas,
+        TransactionHistory history,
+        String phone,
+        TransactionDirection direction,
+        boolean selfTransfer,
+        int sign
+    ) {
+        if (phone == null || phone.isBlank()) {
+            return;
+        }
+        String month = monthOf(history.getTransactionDate());
+        Delta delta = deltas.computeIfAbsent(
+            UserStats.idOf(phone, month, direction, history.getType(), history.getStatus(), selfTransfer),
+            id -> new Delta(phone, month, direction, history.getType(), history.getStatus(), selfTransfer)
+        );
+        BigDecimal amount = history.getAmount() != null ? history.getAmount() : BigDecimal.ZERO;
+        delta.count += sign;
+        delta.amount = sign > 0 ? delta.amount.add(amount) : delta.amount.subtract(amount);
+        if (sign > 0) {
+            // Bounds only widen: a transaction moving to another status leaves its date on the old key
+            Instant date = history.getTransactionDate();
+            delta.first = delta.first == null || date.isBefore(delta.first) ? date : delta.first;
+            delta.last = delta.last == null || date.isAfter(delta.last) ? date : delta.last;
+        }
+    }
+
+    /**
+     * Statistics of a user's transactions, optionally restricted to a period, types and a direction.
+     */
+    public UserTransactionStats getUserTransactionStats(
+        String phoneNumber,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction
+    ) {
+        if (properties.getSource() == ApplicationProperties.Stats.Source.AGGREGATION) {
+            return aggregationService.getUserTransactionStats(phoneNumber, startDate, endDate, types, direction);
+        }
+
+        Plan plan = plan(phoneNumber, startDate, endDate, types, direction);
+        List<UserStats> rows = new ArrayList<>();
+        if (plan.rollups() != null) {
+            rows.addAll(mongoTemplate.find(plan.rollups(), UserStats.class));
+        }
+        for (Partial partial : plan.partials()) {
+            mongoTemplate.aggregate(partial.aggregation(), HISTORY_COLLECTION, UserStats.class).forEach(row -> rows.add(partial.complete(row)));
+        }
+        return summarize(rows, startDate, endDate);
+    }
+
+    /**
+     * Same as {@link #getUserTransactionStats}, on the reactive driver: the rollups and the partial month aggregations
+     * are queried concurrently. The {@code AGGREGATION} source still blocks, on a bounded elastic thread.
+     */
+    public Mono<UserTransactionStats> getUserTransactionStatsReactive(
+        String phoneNumber,
+        Instant startDate,
+        Instant endDate,
+        List<TransactionType> types,
+        TransactionDirection direction
+    ) {
+        if (properties.getSource() == ApplicationProperties.Stats.Source.AGGREGATION) {
+            return Mono.fromCallable(() -> aggregationService.getUserTransactionStats(phoneNumber, startDate, endDate, types, direction))
+                .subscribeOn(Schedulers.boundedElastic());
+        }
+
+        Plan plan = plan(phoneNumber, startDate, endDate, types, direction);
+        Flux<UserStats> rollups = plan.rollups() != null ? reactiveMongoTemplate.find(plan.rollups(), UserStats.class) : Flux.empty();
+        Flux<UserStats> partials = Flux.fromIterable(plan.partials()).flatMap(partial ->
+            reactiveMongoTemplate.aggregate(partial.aggregation(), HISTORY_COLLECTION, UserStats.class).map(partial::complete)
+        );
+        return Flux.merge(rollups, partials).collectList().map(rows -> summarize(rows, startDate, endDate));
+    }
+
+    /**
+     * Splits the requested period into whole months, read from the rollups, and partial months at either end.
+     */
+    private Plan plan(String phoneNumber, Instant startDate, Instant endDate, List<TransactionType> types, TransactionDirection direction) {
+        String phone = phoneNormalizer.normalize(phoneNumber);
+        boolean both = direction == null || direction == TransactionDirection.ALL;
+        List<TransactionDirection> directions = both ? List.of(TransactionDirection.SENT, TransactionDirection.RECEIVED) : List.of(direction);
+        if (phone == null || phone.isBlank() || (startDate != null && endDate != null && startDate.isAfter(endDate))) {
+            return new Plan(null, List.of());
+        }
+
+        YearMonth startMonth = startDate != null ? YearMonth.from(startDate.atZone(timeZone)) : null;
+        YearMonth endMonth = endDate != null ? YearMonth.from(endDate.atZone(timeZone)) : null;
+        boolean partialStart = startDate != null && !startDate.equals(startOf(startMonth));
+        boolean partialEnd = endDate != null && endDate.isBefore(endOf(endMonth));
+
+        // Whole months come from the rollups
+        YearMonth firstFull = startMonth == null ? null : partialStart ? startMonth.plusMonths(1) : startMonth;
+        YearMonth lastFull = endMonth == null ? null : partialEnd ? endMonth.minusMonths(1) : endMonth;
+        Query rollups = null;
+        if (firstFull == null || lastFull == null || !firstFull.isAfter(lastFull)) {
+            Criteria criteria = Criteria.where("phone").is(phone).and("direction").in(directions.stream().map(Enum::name).toList());
+            if (both) {
+                // Transfers to oneself were counted on their SENT side
+                criteria = criteria.and("self_transfer").ne(true);
+            }
+            if (firstFull != null && lastFull != null) {
+                criteria = criteria.and("month").gte(firstFull.format(MONTH_FORMAT)).lte(lastFull.format(MONTH_FORMAT));
+            } else if (firstFull != null) {
+                criteria = criteria.and("month").gte(firstFull.format(MONTH_FORMAT));
+            } else if (lastFull != null) {
+                criteria = criteria.and("month").lte(lastFull.format(MONTH_FORMAT));
+            }
+            if (types != null && !types.isEmpty()) {
+                criteria = criteria.and("type").in(types.stream().map(Enum::name).toList());
+            }
+            rollups = Query.query(criteria);
+            rollups.fields().exclude(APPLIED_OPS);
+        }
+
+        // Partial months at either end are aggregated from the transactions themselves
+        List<Partial> partials = new ArrayList<>();
+        if (partialStart) {
+            Instant to = endDate != null && endMonth.equals(startMonth) ? endDate : endOf(startMonth);
+            partials.addAll(partials(phone, directions, both, types, startDate, to, startMonth));
+        }
+        if (partialEnd && !(partialStart && endMonth.equals(startMonth))) {
+            Instant from = startDate != null && startMonth.equals(endMonth) ? startDate : startOf(endMonth);
+            partials.addAll(partials(phone, directions, both, types, from, endDate, endMonth));
+        }
+        return new Plan(rollups, partials);
+    }
+
+    private List<Partial> partials(
+        String phone,
+        List<TransactionDirection> directions,
+        boolean both,
+        List<TransactionType> types,
+        Instant from,
+        Instant to,
+        YearMonth month
+    ) {
+        List<Partial> partials = new ArrayList<>();
+        for (TransactionDirection direction : directions) {
+            Criteria criteria = TransactionHistoryMongoSearchService.party(
+                direction == TransactionDirection.SENT ? TransactionHistoryMongoSearchService.SENDER : TransactionHistoryMongoSearchService.RECEIVER,
+                phone
+            )
+                .and("transaction_date").gte(from).lte(to);
+            if (both && direction == TransactionDirection.RECEIVED) {
+                criteria = criteria.norOperator(TransactionHistoryMongoSearchService.party(TransactionHistoryMongoSearchService.SENDER, phone));
+            }
+            if (types != null && !types.isEmpty()) {
+                criteria = criteria.and("type").in(types.stream().map(Enum::name).toList());
+            }
+            Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.group("type", "status")
+                    .count().as("count")
+                    .sum(ConvertOperators.ToDecimal.toDecimal("$amount")).as("total_amount")
+                    .min("transaction_date").as("first_transaction_date")
+                    .max("transaction_date").as("last_transaction_date"),
+                Aggregation.project("count", "total_amount", "first_transaction_date", "last_transaction_date", "type", "status")
+                    .andExclude("_id")
+            );
+            partials.add(new Partial(phone, direction, month.format(MONTH_FORMAT), aggregation));
+        }
+        return partials;
+    }
+
+    static UserTransactionStats summarize(List<UserStats> rows, Instant startDate, Instant endDate) {
+        UserTransactionStats stats = new UserTransactionStats();
+        stats.setPeriodStart(startDate);
+        stats.setPeriodEnd(endDate);
+
+        long total = 0;
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        Map<TransactionStatus, Long> byStatus = new EnumMap<>(TransactionStatus.class);
+        Map<TransactionType, long[]> typeCounts = new EnumMap<>(TransactionType.class);
+        Map<TransactionType, BigDecimal> typeAmounts = new EnumMap<>(TransactionType.class);
+        Map<String, long[]> monthCounts = new TreeMap<>();
+        Map<String, BigDecimal> monthAmounts = new TreeMap<>();
+        Instant first = null;
+        Instant last = null;
+
+        for (UserStats row : rows) {
+            if (row.getCount() <= 0) {
+                continue;
+            }
+            BigDecimal amount = row.getTotalAmount() != null ? row.getTotalAmount() : BigDecimal.ZERO;
+            total += row.getCount();
+            totalAmount = totalAmount.add(amount);
+            byStatus.merge(row.getStatus(), row.getCount(), Long::sum);
+            typeCounts.computeIfAbsent(row.getType(), type -> new long[1])[0] += row.getCount();
+            typeAmounts.merge(row.getType(), amount, BigDecimal::add);
+            monthCounts.computeIfAbsent(row.getMonth(), month -> new long[1])[0] += row.getCount();
+            monthAmounts.merge(row.getMonth(), amount, BigDecimal::add);
+            if (row.getFirstTransactionDate() != null && (first == null || row.getFirstTransactionDate().isBefore(first))) {
+                first = row.getFirstTransactionDate();
+            }
+            if (row.getLastTransactionDate() != null && (last == null || row.getLastTransactionDate().isAfter(last))) {
+                last = row.getLastTransactionDate();
+            }
+        }
+
+        stats.setTotalTransactions((int) total);
+        stats.setTotalAmount(totalAmount);
+        stats.setSuccessfulTransactions(byStatus.getOrDefault(TransactionStatus.SUCCESS, 0L).intValue());
+        stats.setFailedTransactions(byStatus.getOrDefault(TransactionStatus.FAILED, 0L).intValue());
+        stats.setPendingTransactions(byStatus.getOrDefault(TransactionStatus.PENDING, 0L).intValue());
+        stats.setCancelledTransactions(byStatus.getOrDefault(TransactionStatus.CANCELLED, 0L).intValue());
+        stats.setProcessingTransactions(byStatus.getOrDefault(TransactionStatus.PROCESSING, 0L).intValue());
+        stats.setFirstTransactionDate(first);
+        stats.setLastTransactionDate(last);
+
+        long grandTotal = total;
+        stats.setTransactionTypeSummary(
+            typeCounts
+                .entrySet()
+                .stream()
+                .map(entry ->
+                    new TransactionTypeSummary(
+                        entry.getKey(),
+                        (int) entry.getValue()[0],
+                        typeAmounts.get(entry.getKey()),
+                        grandTotal > 0 ? (entry.getValue()[0] * 100.0f) / grandTotal : 0
+                    )
+                )
+                .sorted(Comparator.comparingInt(TransactionTypeSummary::getCount).reversed())
+                .toList()
+        );
+
+        if (total == 0) {
+            stats.setMonthlySummary(Collections.emptyList());
+        } else if (startDate != null && endDate != null) {
+            stats.setMonthlySummary(
+                monthCounts
+                    .entrySet()
+                    .stream()
+                    .map(entry -> new MonthlySummary(entry.getKey(), (int) entry.getValue()[0], monthAmounts.get(entry.getKey())))
+                    .toList()
+            );
+        }
+        return stats;
+    }
+
+    String monthOf(Instant date) {
+        return YearMonth.from(date.atZone(timeZone)).format(MONTH_FORMAT);
+    }
+
+    private Instant startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay(timeZone).toInstant();
+    }
+
+    /**
+     * Last millisecond of the month, the precision of BSON dates.
+     */
+    private Instant endOf(YearMonth month) {
+        return startOf(month.plusMonths(1)).minusMillis(1);
+    }
+
+    /**
+     * Queries answering a statistics request; {@code rollups} is {@code null} when no whole month is requested.
+     */
+    private record Plan(Query rollups, List<Partial> partials) {}
+
+    /**
+     * Aggregation of one direction over a partial month, whose rows are shaped like rollups.
+     */
+    private record Partial(String phone, TransactionDirection direction, String month, Aggregation aggregation) {
+        UserStats complete(UserStats row) {
+            row.setId(null);
+            row.setPhone(phone);
+            row.setMonth(month);
+            row.setDirection(direction);
+            return row;
+        }
+    }
+
+    /**
+     * Pending change to one {@code user_stats} document.
+     */
+    static final class Delta {
+
+        final String phone;
+        final String month;
+        final TransactionDirection direction;
+        final TransactionType type;
+        final TransactionStatus status;
+        final boolean selfTransfer;
+        long count;
+        BigDecimal amount = BigDecimal.ZERO;
+        Instant first;
+        Instant last;
+
+        Delta(
+            String phone,
+            String month,
+            TransactionDirection direction,
+            TransactionType type,
+            TransactionStatus status,
+            boolean selfTransfer
+        ) {
+            this.phone = phone;
+            this.month = month;
+            this.direction = direction;
+            this.type = type;
+            this.status = status;
+            this.selfTransfer = selfTransfer;
+        }
+
+        String id() {
+            return UserStats.idOf(phone, month, direction, type, status, selfTransfer);
+        }
+
+        Document toDocument() {
+            Document document = new Document("phone", phone)
+                .append("month", month)
+                .append("direction", direction.name())
+                .append("type", type.name())
+                .append("status", status.name())
+                .append("self_transfer", selfTransfer)
+                .append("count", count)
+                .append("amount", new Decimal128(amount));
+            if (first != null) {
+                document.append("first", Date.from(first)).append("last", Date.from(last));
+            }
+            return document;
+        }
+
+        static Delta of(Document document) {
+            Delta delta = new Delta(
+                document.getString("phone"),
+                document.getString("month"),
+                TransactionDirection.valueOf(document.getString("direction")),
+                TransactionType.valueOf(document.getString("type")),
+                TransactionStatus.valueOf(document.getString("status")),
+                document.getBoolean("self_transfer", false)
+            );
+            delta.count = ((Number) document.get("count")).longValue();
+            delta.amount = document.get("amount", Decimal128.class).bigDecimalValue();
+            if (document.getDate("first") != null) {
+                delta.first = document.getDate("first").toInstant();
+                delta.last = document.getDate("last").toInstant();
+            }
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package sn.ondmoney.history.service;
+
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.PartyKey;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.UserTimeline;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionFields;
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Maintains the {@code user_timeline} buckets and serves the newest transactions of a party from them.
+ * <p>
+ * Writers report each transaction's previous and current state through {@link #apply}, like {@link UserStatsService}:
+ * the transaction is pulled from every bucket it was or is in, then pushed to the bucket of its current day, in one
+ * ordered bulk. A redelivered record therefore replaces its own entry.
+ * <p>
+ * A page is read by walking the party's buckets newest day first, usually one or two documents, instead of merging
+ * the sender and receiver indexes of {@code transaction_history}. Its total is the sum of the bucket counts, only
+ * computed when the page is not the last one. Entries hold the properties shown in lists, so only pages asking for
+ * no other property are read there.
+ */
+@Service
+public class UserTimelineService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserTimelineService.class);
+
+    static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "transactionDate");
+
+    /**
+     * Properties of {@link TransactionHistoryDTO} held by {@link UserTimeline.Entry}.
+     */
+    private static final Set<String> ENTRY_FIELDS = Set.of(
+        "id",
+        "transactionId",
+        "type",
+        "status",
+        "amount",
+        "currency",
+        "senderPhone",
+        "receiverPhone",
+        "senderName",
+        "receiverName",
+        "transactionDate"
+    );
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ApplicationProperties.Timeline properties;
+
+    public UserTimelineService(
+        MongoTemplate mongoTemplate,
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.properties = applicationProperties.getTimeline();
+    }
+
+    /**
+     * Moves transactions from their previous state to their current one in the timelines of their parties.
+     *
+     * @param previous stored state of the transactions before the write; empty for new transactions.
+     * @param current  state after the write; empty for deletes.
+     */
+    public void apply(Collection<TransactionHistory> previous, Collection<TransactionHistory> current) {
+        Set<Slot> slots = new LinkedHashSet<>();
+        Stream.concat(previous.stream(), current.stream()).forEach(history -> slots.addAll(slots(history)));
+        if (slots.isEmpty()) {
+            return;
+        }
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, UserTimeline.class);
+        for (Slot slot : slots) {
+            operations.updateMulti(
+                Query.query(Criteria.where("party_key").is(slot.partyKey()).and("day").is(slot.day()).and("entries.transaction_id").is(slot.transactionId())),
+                new Update().pull("entries", new Document("transaction_id", slot.transactionId())).inc("count", -1)
+            );
+        }
+        push(operations, current);
+        operations.execute();
+        LOG.debug("Applied {} user timeline changes", slots.size());
+    }
+
+    /**
+     * Adds transactions without knowing their previous state, e.g. while rebuilding the collection. Each transaction is
+     * first pulled from any bucket of its parties, so one that {@link #apply} already added meanwhile, or a retried
+     * batch, is not listed twice.
+     */
+    public void append(Collection<TransactionHistory> histories) {
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, UserTimeline.class);
+        for (TransactionHistory history : histories) {
+            for (Slot slot : slots(history)) {
+                operations.updateMulti(
+                    Query.query(Criteria.where("party_key").is(slot.partyKey()).and("entries.transaction_id").is(slot.transactionId())),
+                    new Update().pull("entries", new Document("transaction_id", slot.transactionId())).inc("count", -1)
+                );
+            }
+        }
+        if (push(operations, histories) > 0) {
+            operations.execute();
+        }
+    }
+
+    private int push(BulkOperations operations, Collection<TransactionHistory> histories) {
+        int pushed = 0;
+        for (TransactionHistory history : histories) {
+            for (Slot slot : slots(history)) {
+                operations.upsert(
+                    Query.query(Criteria.where("party_key").is(slot.partyKey()).and("day").is(slot.day()).and("count").lt(properties.getBucketSize())),
+                    new Update()
+                        .push("entries")
+                        .sort(Sort.by(Sort.Direction.DESC, "transaction_date"))
+                        .each(entry(history, slot.direction()))
+                        .inc("count", 1)
+                );
+                pushed++;
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * The buckets a transaction belongs to: one per party with a {@link PartyKey}, a single one for a transfer to itself.
+     */
+    static List<Slot> slots(TransactionHistory history) {
+        if (history == null || history.getTransactionId() == null || history.getTransactionDate() == null) {
+            return List.of();
+        }
+        String day = DAY_FORMAT.format(history.getTransactionDate());
+        List<Slot> slots = new ArrayList<>(2);
+        if (history.getSenderKey() != null) {
+            slots.add(new Slot(history.getSenderKey(), day, history.getTransactionId(), TransactionDirection.SENT));
+        }
+        if (history.getReceiverKey() != null && !history.getReceiverKey().equals(history.getSenderKey())) {
+            slots.add(new Slot(history.getReceiverKey(), day, history.getTransactionId(), TransactionDirection.RECEIVED));
+        }
+        return slots;
+    }
+
+    private static UserTimeline.Entry entry(TransactionHistory history, TransactionDirection direction) {
+        UserTimeline.Entry entry = new UserTimeline.Entry();
+        entry.setHistoryId(history.getId());
+        entry.setTransactionId(history.getTransactionId());
+        entry.setDirection(direction);
+        entry.setType(history.getType());
+        entry.setStatus(history.getStatus());
+        entry.setAmount(history.getAmount());
+        entry.setCurrency(history.getCurrency());
+        entry.setSenderPhone(history.getSenderPhone());
+        entry.setReceiverPhone(history.getReceiverPhone());
+        entry.setSenderName(history.getSenderName());
+        entry.setReceiverName(history.getReceiverName());
+        entry.setTransactionDate(history.getTransactionDate());
+        return entry;
+    }
+
+    /**
+     * Whether the page can be read from the timeline: all transactions of one party, newest first, ending within the
+     * first {@code max-read} entries, with no property the entries do not hold.
+     */
+    public boolean serves(TransactionSearchCriteria criteria, Pageable pageable, TransactionFields fields) {
+        return (
+            properties.isEnabled() &&
+            !fields.isAll() &&
+            ENTRY_FIELDS.containsAll(fields.getNames()) &&
+            partyKey(criteria) != PartyKey.NONE &&
+            criteria.getDirection() == TransactionDirection.ALL &&
+            isEmpty(criteria.getTypes()) &&
+            isEmpty(criteria.getStatuses()) &&
+            Stream.of(
+                criteria.getStartDate(),
+                criteria.getEndDate(),
+                criteria.getMinAmount(),
+                criteria.getMaxAmount(),
+                criteria.getCurrency(),
+                criteria.getMerchantCode(),
+                criteria.getBillReference(),
+                criteria.getBankAccountNumber(),
+                criteria.getDescriptionContains()
+            ).allMatch(Objects::isNull) &&
+            pageable.isPaged() &&
+            pageable.getOffset() + pageable.getPageSize() <= properties.getMaxRead() &&
+            (pageable.getSort().isUnsorted() || pageable.getSort().equals(NEWEST_FIRST))
+        );
+    }
+
+    /**
+     * Reads a page that the timeline {@link #serves}.
+     */
+    public SearchPage<TransactionHistoryDTO> searchPage(TransactionSearchCriteria criteria, Pageable pageable, TotalMode totalMode) {
+        long partyKey = partyKey(criteria);
+        Reader reader = new Reader(pageable);
+        try (Stream<UserTimeline> buckets = mongoTemplate.stream(bucketQuery(partyKey), UserTimeline.class)) {
+            Iterator<UserTimeline> iterator = buckets.iterator();
+            while (iterator.hasNext()) {
+                UserTimeline bucket = iterator.next();
+                if (!reader.needs(bucket)) {
+                    break;
+                }
+                reader.add(bucket);
+            }
+        }
+        Long total = reader.needsTotal(totalMode)
+            ? Objects.requireNonNullElse(mongoTemplate.aggregate(totalAggregation(partyKey), UserTimeline.class, Total.class).getUniqueMappedResult(), Total.NONE).total()
+            : null;
+        return page(reader, pageable, totalMode, total);
+    }
+
+    /**
+     * Same as {@link #searchPage}, on the reactive driver.
+     */
+    public Mono<SearchPage<TransactionHistoryDTO>> searchPageReactive(TransactionSearchCriteria criteria, Pageable pageable, TotalMode totalMode) {
+        long partyKey = partyKey(criteria);
+        Reader reader = new Reader(pageable);
+        return reactiveMongoTemplate
+            .find(bucketQuery(partyKey), UserTimeline.class)
+            .takeWhile(reader::needs)
+            .doOnNext(reader::add)
+            .then(Mono.defer(() -> total(partyKey, reader, totalMode)))
+            .map(total -> page(reader, pageable, totalMode, total.orElse(null)));
+    }
+
+    private Mono<Optional<Long>> total(long partyKey, Reader reader, TotalMode totalMode) {
+        if (!reader.needsTotal(totalMode)) {
+            return Mono.just(Optional.empty());
+        }
+        return reactiveMongoTemplate
+            .aggregate(totalAggregation(partyKey), UserTimeline.class, Total.class)
+            .next()
+            .defaultIfEmpty(Total.NONE)
+            .map(total -> Optional.of(total.total()));
+    }
+
+    private static Query bucketQuery(long partyKey) {
+        // Sorted on the index, read a couple of buckets at a time: most pages need no more
+        return Query.query(Criteria.where("party_key").is(partyKey).and("count").gt(0)).with(Sort.by(Sort.Direction.DESC, "day")).cursorBatchSize(2);
+    }
+
+    private static Aggregation totalAggregation(long partyKey) {
+        return Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("party_key").is(partyKey)),
+            Aggregation.group().sum("count").as("total")
+        );
+    }
+
+    private static SearchPage<TransactionHistoryDTO> page(Reader reader, Pageable pageable, TotalMode totalMode, Long total) {
+        List<UserTimeline.Entry> entries = reader.page();
+        List<TransactionHistoryDTO> content = new ArrayList<>(entries.size());
+        for (UserTimeline.Entry entry : entries) {
+            content.add(toDto(entry));
+        }
+        boolean hasNext = reader.hasNext();
+        if (!hasNext) {
+            return new SearchPage<>(content, pageable, pageable.getOffset() + entries.size(), false, totalMode, true);
+        }
+        if (total == null) {
+            return new SearchPage<>(content, pageable, pageable.getOffset() + entries.size() + 1, true, totalMode, false);
+        }
+        return new SearchPage<>(content, pageable, total, true, totalMode, true);
+    }
+
+    private static TransactionHistoryDTO toDto(UserTimeline.Entry entry) {
+        TransactionHistoryDTO dto = new TransactionHistoryDTO();
+        dto.setId(entry.getHistoryId());
+        dto.setTransactionId(entry.getTransactionId());
+        dto.setType(entry.getType());
+        dto.setStatus(entry.getStatus());
+        dto.setAmount(entry.getAmount());
+        dto.setCurrency(entry.getCurrency());
+        dto.setSenderPhone(entry.getSenderPhone());
+        dto.setReceiverPhone(entry.getReceiverPhone());
+        dto.setSenderName(entry.getSenderName());
+        dto.setReceiverName(entry.getReceiverName());
+        dto.setTransactionDate(entry.getTransactionDate());
+        return dto;
+    }
+
+    private static long partyKey(TransactionSearchCriteria criteria) {
+        String senderPhone = criteria.getSenderPhone();
+        String receiverPhone = criteria.getReceiverPhone();
+        if ((senderPhone == null) == (receiverPhone == null)) {
+            return PartyKey.NONE;
+        }
+        return PartyKey.of(senderPhone != null ? senderPhone : receiverPhone);
+    }
+
+    private static boolean isEmpty(Collection<?> values) {
+        return values == null || values.isEmpty();
+    }
+
+    /**
+     * Where a transaction sits in one party's timeline.
+     */
+    record Slot(long partyKey, String day, String transactionId, TransactionDirection direction) {}
+
+    private record Total(long total) {
+        static final Total NONE = new Total(0);
+    }
+
+    /**
+     * Collects the entries of a page from buckets read newest day first. Buckets of the same day may hold any times of
+     * that day, so all of them are read before the first {@code offset + size + 1} entries are known.
+     */
+    static final class Reader {
+
+        private final long offset;
+        private final int size;
+        private final List<UserTimeline.Entry> entries = new ArrayList<>();
+        private String lastDay;
+
+        Reader(Pageable pageable) {
+            this.offset = pageable.getOffset();
+            this.size = pageable.getPageSize();
+        }
+
+        boolean needs(UserTimeline bucket) {
+            return entries.size() <= offset + size || bucket.getDay().equals(lastDay);
+        }
+
+        void add(UserTimeline bucket) {
+            entries.addAll(bucket.getEntries());
+            lastDay = bucket.getDay();
+        }
+
+        private List<UserTimeline.Entry> sorted() {
+            entries.sort(
+                Comparator.comparing(UserTimeline.Entry::getTransactionDate, Comparator.nullsLast(Comparator.reverseOrder())).thenComparing(
+                    UserTimeline.Entry::getHistoryId,
+                    Comparator.nullsLast(Comparator.reverseOrder())
+                )
+            );
+            return entries;
+        }
+
+        List<UserTimeline.Entry> page() {
+            List<UserTimeline.Entry> sorted = sorted();
+            int from = (int) Math.min(offset, sorted.size());
+            return sorted.subList(from, (int) Math.min(offset + size, sorted.size()));
+        }
+
+        boolean hasNext() {
+            return entries.size() > offset + size;
+        }
+
+        boolean needsTotal(TotalMode totalMode) {
+            return hasNext() && totalMode != TotalMode.NONE;
+        }
+    }
+}
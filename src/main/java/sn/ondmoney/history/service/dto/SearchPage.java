@@ -0,0 +1,51 @@
+package sn.ondmoney.history.service.dto;
+
+import sn.ondmoney.history.domain.enumeration.TotalMode;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A page whose total may be approximate, depending on the {@link TotalMode} of the search.
+ * <p>
+ * {@link #hasNext()} is always accurate: it comes from fetching one row past the page. When {@link #isTotalExact()}
+ * is {@code false}, {@link #getTotalElements()} is a lower bound.
+ */
+public class SearchPage<T> extends PageImpl<T> {
+
+    private final boolean hasNext;
+    private final TotalMode totalMode;
+    private final boolean totalExact;
+
+    public SearchPage(List<T> content, Pageable pageable, long total, boolean hasNext, TotalMode totalMode, boolean totalExact) {
+        super(content, pageable, total);
+        this.hasNext = hasNext;
+        this.totalMode = totalMode;
+        this.totalExact = totalExact;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public boolean isLast() {
+        return !hasNext;
+    }
+
+    public TotalMode getTotalMode() {
+        return totalMode;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    @Override
+    public <U> SearchPage<U> map(Function<? super T, ? extends U> converter) {
+        return new SearchPage<>(getContent().stream().<U>map(converter).toList(), getPageable(), getTotalElements(), hasNext, totalMode, totalExact);
+    }
+}
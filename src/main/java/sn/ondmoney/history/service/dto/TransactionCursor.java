@@ -0,0 +1,92 @@
+package sn.ondmoney.history.service.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position of a transaction in the ({@code transaction_date}, {@code _id}) keyset order, exchanged with clients as an
+ * opaque base64url string.
+ */
+public final class TransactionCursor {
+
+    private static final char SEPARATOR = ':';
+
+    private final Instant transactionDate;
+    private final String id;
+
+    public TransactionCursor(Instant transactionDate, String id) {
+        this.transactionDate = Objects.requireNonNull(transactionDate, "transactionDate");
+        this.id = Objects.requireNonNull(id, "id");
+    }
+
+    public static TransactionCursor of(TransactionHistoryDTO transaction) {
+        return new TransactionCursor(transaction.getTransactionDate(), transaction.getId());
+    }
+
+    public Instant getTransactionDate() {
+        return transactionDate;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String encode() {
+        String raw = transactionDate.toEpochMilli() + String.valueOf(SEPARATOR) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws InvalidCursorException if the value was not produced by {@link #encode()}.
+     */
+    public static TransactionCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new InvalidCursorException(cursor, null);
+            }
+            return new TransactionCursor(Instant.ofEpochMilli(Long.parseLong(raw.substring(0, separator))), raw.substring(separator + 1));
+        } catch (InvalidCursorException e) {
+            throw e;
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new InvalidCursorException(cursor, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TransactionCursor other)) {
+            return false;
+        }
+        return transactionDate.equals(other.transactionDate) && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(transactionDate, id);
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionCursor{transactionDate=" + transactionDate + ", id='" + id + "'}";
+    }
+
+    /**
+     * A cursor sent by a client that was not produced by {@link #encode()}.
+     */
+    public static class InvalidCursorException extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 1L;
+
+        InvalidCursorException(String cursor, Throwable cause) {
+            super("Invalid cursor: " + cursor, cause);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package sn.ondmoney.history.service.dto;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link TransactionHistoryDTO} properties a caller actually reads, used to project queries so that only those
+ * fields are fetched and decoded. Property names are the same in the entity, so they map to MongoDB fields and
+ * Elasticsearch {@code _source} paths directly.
+ * <p>
+ * {@code id} and {@code transactionDate} are always included: they identify the row and position pagination cursors.
+ */
+public final class TransactionFields {
+
+    public static final TransactionFields ALL = new TransactionFields(null);
+
+    private static final List<String> REQUIRED = List.of("id", "transactionDate");
+
+    private static final Set<String> AVAILABLE = Arrays.stream(TransactionHistoryDTO.class.getDeclaredFields())
+        .filter(field -> !Modifier.isStatic(field.getModifiers()))
+        .map(java.lang.reflect.Field::getName)
+        .collect(Collectors.toUnmodifiableSet());
+
+    private final Set<String> names;
+
+    private TransactionFields(Set<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * Projection on the given names; names that are not transaction properties (e.g. {@code __typename}) are ignored.
+     */
+    public static TransactionFields of(Collection<String> requested) {
+        Set<String> names = new LinkedHashSet<>(REQUIRED);
+        requested.stream().filter(AVAILABLE::contains).forEach(names::add);
+        return new TransactionFields(names);
+    }
+
+    /**
+     * Parses a comma-separated sparse fieldset, e.g. {@code amount,type,transactionDate}.
+     *
+     * @return {@link #ALL} when {@code fields} is empty.
+     * @throws IllegalArgumentException if a name is not a transaction property.
+     */
+    public static TransactionFields parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        List<String> requested = Arrays.stream(fields.split(",")).map(String::trim).filter(name -> !name.isEmpty()).toList();
+        List<String> unknown = requested.stream().filter(name -> !AVAILABLE.contains(name)).toList();
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown transaction fields: " + String.join(", ", unknown));
+        }
+        return of(requested);
+    }
+
+    public boolean isAll() {
+        return names == null;
+    }
+
+    /**
+     * The projected property names; empty for {@link #ALL}.
+     */
+    public Set<String> getNames() {
+        return names != null ? names : Set.of();
+    }
+
+    @Override
+    public String toString() {
+        return isAll() ? "*" : String.join(",", names);
+    }
+}
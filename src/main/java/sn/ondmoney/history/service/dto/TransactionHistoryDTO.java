@@ -97,6 +97,9 @@ public class TransactionHistoryDTO implements Serializable {
     @Field("correlation_id")
     private String correlationId;
 
+    @Field("counterparty_name")
+    private String counterpartyName;
+
     private Integer version;
 
     @NotNull
@@ -146,6 +149,7 @@ public class TransactionHistoryDTO implements Serializable {
             ", metadata='" + metadata + '\'' +
             ", errorMessage='" + errorMessage + '\'' +
             ", correlationId='" + correlationId + '\'' +
+            ", counterpartyName='" + counterpartyName + '\'' +
             ", version=" + version +
             ", historySaved=" + historySaved +
             '}';
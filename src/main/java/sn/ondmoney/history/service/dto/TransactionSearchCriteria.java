@@ -0,0 +1,35 @@
+package sn.ondmoney.history.service.dto;
+
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Filters of a transaction search, independent of how the results are paged.
+ */
+@Setter
+@Getter
+public class TransactionSearchCriteria implements Serializable {
+
+    private String senderPhone;
+    private String receiverPhone;
+    private List<TransactionType> types;
+    private List<TransactionStatus> statuses;
+    private Instant startDate;
+    private Instant endDate;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private String currency;
+    private TransactionDirection direction;
+    private String merchantCode;
+    private String billReference;
+    private String bankAccountNumber;
+    private String descriptionContains;
+}
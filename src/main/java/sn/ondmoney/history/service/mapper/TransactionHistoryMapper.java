@@ -45,6 +45,7 @@ public interface TransactionHistoryMapper extends EntityMapper<TransactionHistor
         dto.setMetadata(entity.getMetadata());
         dto.setErrorMessage(entity.getErrorMessage());
         dto.setCorrelationId(entity.getCorrelationId());
+        dto.setCounterpartyName(entity.getCounterpartyName());
         dto.setVersion(entity.getVersion());
         dto.setHistorySaved(entity.getHistorySaved());
 
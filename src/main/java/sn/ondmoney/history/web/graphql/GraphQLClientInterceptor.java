@@ -0,0 +1,23 @@
+package sn.ondmoney.history.web.graphql;
+
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import reactor.core.publisher.Mono;
+import sn.ondmoney.history.security.SecurityUtils;
+
+import java.util.Map;
+
+/**
+ * Stores the caller's login in the {@link graphql.GraphQLContext}, for the per-client budgets of
+ * {@link QueryCostInstrumentation}. Runs on the request thread, where the security context is set.
+ */
+public class GraphQLClientInterceptor implements WebGraphQlInterceptor {
+
+    @Override
+    public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain) {
+        String client = SecurityUtils.getCurrentUserLogin().orElse(QueryCostInstrumentation.ANONYMOUS);
+        request.configureExecutionInput((input, builder) -> builder.graphQLContext(Map.of(QueryCostInstrumentation.CLIENT_KEY, client)).build());
+        return chain.next(request);
+    }
+}
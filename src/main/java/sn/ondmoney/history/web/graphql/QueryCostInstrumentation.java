@@ -0,0 +1,299 @@
+package sn.ondmoney.history.web.graphql;
+
+import graphql.ExecutionResult;
+import graphql.analysis.QueryTraverser;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.CoercedVariables;
+import graphql.execution.DataFetcherResult;
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutionStepInfo;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.language.Document;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import graphql.schema.GraphQLArgument;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLInputObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sn.ondmoney.history.config.ApplicationProperties;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the {@code application.graphql} cost limits.
+ * <p>
+ * Before an operation runs, its cost is estimated from the selection: each field costs its weight multiplied by the
+ * page sizes ({@code size}/{@code first}, also inside input objects) of its enclosing fields. Page sizes above
+ * {@code max-page-size} are clamped, both in the estimate and in the arguments the data fetchers receive. Operations
+ * that are too deep or cost more than the caller's budget are aborted without touching the database.
+ * <p>
+ * The estimated cost and the actual cost (weights times the number of objects actually returned) are recorded in the
+ * {@code graphql.query.cost} summary, tagged by root field, to tune the weights.
+ */
+public class QueryCostInstrumentation extends SimplePerformantInstrumentation {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryCostInstrumentation.class);
+
+    /**
+     * {@link graphql.GraphQLContext} key of the caller the budget is looked up for, see {@link GraphQLClientInterceptor}.
+     */
+    public static final String CLIENT_KEY = QueryCostInstrumentation.class.getName() + ".client";
+
+    static final String ANONYMOUS = "anonymous";
+
+    private static final Set<String> PAGE_SIZE_ARGUMENTS = Set.of("size", "first");
+
+    private final ApplicationProperties.Graphql properties;
+    private final MeterRegistry meterRegistry;
+
+    public QueryCostInstrumentation(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getGraphql();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public CompletableFuture<InstrumentationState> createStateAsync(InstrumentationCreateStateParameters parameters) {
+        return CompletableFuture.completedFuture(new CostState());
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(
+        InstrumentationExecuteOperationParameters parameters,
+        InstrumentationState state
+    ) {
+        ExecutionContext context = parameters.getExecutionContext();
+        Estimate estimate = estimate(
+            context.getGraphQLSchema(),
+            context.getDocument(),
+            context.getOperationDefinition().getName(),
+            context.getCoercedVariables()
+        );
+        String client = context.getGraphQLContext().getOrDefault(CLIENT_KEY, ANONYMOUS);
+        long budget = properties.getClientBudgets().getOrDefault(client, properties.getBudget());
+        costSummary("estimated", estimate.rootField()).record(estimate.cost());
+
+        if (estimate.depth() > properties.getMaxDepth()) {
+            rejected("depth");
+            LOG.warn("Rejected GraphQL operation of {}: depth {} over {}", client, estimate.depth(), properties.getMaxDepth());
+            throw new AbortExecutionException(
+                "Query depth " + estimate.depth() + " exceeds the maximum of " + properties.getMaxDepth()
+            );
+        }
+        if (estimate.cost() > budget) {
+            rejected("cost");
+            LOG.warn("Rejected GraphQL operation {} of {}: cost {} over budget {}", estimate.rootField(), client, estimate.cost(), budget);
+            throw new AbortExecutionException(
+                "Query cost " + estimate.cost() + " exceeds the budget of " + budget + "; request smaller pages or fewer fields"
+            );
+        }
+        LOG.debug("GraphQL operation {} of {}: estimated cost {}", estimate.rootField(), client, estimate.cost());
+
+        if (!(state instanceof CostState cost)) {
+            return SimpleInstrumentationContext.noOp();
+        }
+        return SimpleInstrumentationContext.whenCompleted((result, throwable) ->
+            costSummary("actual", estimate.rootField()).record(cost.actual.sum())
+        );
+    }
+
+    @Override
+    public InstrumentationContext<Object> beginFieldFetch(InstrumentationFieldFetchParameters parameters, InstrumentationState state) {
+        ExecutionStepInfo step = parameters.getExecutionStepInfo();
+        if (!(state instanceof CostState cost) || GraphQLTypeUtil.isLeaf(GraphQLTypeUtil.unwrapAll(step.getType()))) {
+            return SimpleInstrumentationContext.noOp();
+        }
+        long weight = weight(step.getObjectType().getName(), step.getFieldDefinition().getName(), false);
+        return SimpleInstrumentationContext.whenCompleted((value, throwable) -> cost.actual.add(weight * count(value)));
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(
+        DataFetcher<?> dataFetcher,
+        InstrumentationFieldFetchParameters parameters,
+        InstrumentationState state
+    ) {
+        if (!hasPageSizeArgument(parameters.getExecutionStepInfo().getFieldDefinition())) {
+            return dataFetcher;
+        }
+        return environment -> {
+            Map<String, Object> clamped = clamp(environment.getArguments());
+            if (clamped == environment.getArguments()) {
+                return dataFetcher.get(environment);
+            }
+            return dataFetcher.get(DataFetchingEnvironmentImpl.newDataFetchingEnvironment(environment).arguments(clamped).build());
+        };
+    }
+
+    /**
+     * Estimates the cost and depth of an operation, with page sizes clamped to {@code max-page-size}. Introspection
+     * fields are ignored.
+     */
+    Estimate estimate(GraphQLSchema schema, Document document, String operationName, CoercedVariables variables) {
+        QueryTraverser traverser = QueryTraverser.newQueryTraverser()
+            .schema(schema)
+            .document(document)
+            .operationName(operationName)
+            .coercedVariables(variables)
+            .build();
+
+        long[] cost = { 0 };
+        int[] depth = { 0 };
+        Set<String> rootFields = new LinkedHashSet<>();
+        traverser.visitPreOrder(
+            new QueryVisitorStub() {
+                @Override
+                public void visitField(QueryVisitorFieldEnvironment environment) {
+                    if (environment.getField().getName().startsWith("__")) {
+                        return;
+                    }
+                    long multiplier = 1;
+                    int fieldDepth = 1;
+                    for (QueryVisitorFieldEnvironment parent = environment.getParentEnvironment(); parent != null; parent = parent.getParentEnvironment()) {
+                        if (parent.getField().getName().startsWith("__")) {
+                            return;
+                        }
+                        multiplier = saturatedMultiply(multiplier, pageSize(parent.getArguments()));
+                        fieldDepth++;
+                    }
+                    if (environment.getParentEnvironment() == null) {
+                        rootFields.add(environment.getField().getName());
+                    }
+                    boolean leaf = GraphQLTypeUtil.isLeaf(GraphQLTypeUtil.unwrapAll(environment.getFieldDefinition().getType()));
+                    long weight = weight(environment.getFieldsContainer().getName(), environment.getField().getName(), leaf);
+                    cost[0] = saturatedAdd(cost[0], saturatedMultiply(weight, multiplier));
+                    depth[0] = Math.max(depth[0], fieldDepth);
+                }
+            }
+        );
+        String rootField = rootFields.size() == 1 ? rootFields.iterator().next() : rootFields.isEmpty() ? "none" : "multiple";
+        return new Estimate(cost[0], depth[0], rootField);
+    }
+
+    private long weight(String type, String field, boolean leaf) {
+        Integer weight = properties.getFieldWeights().get(type + "." + field);
+        return weight != null ? weight : leaf ? 0 : 1;
+    }
+
+    /**
+     * The clamped page size found in {@code arguments} or in one of its input objects, 1 if there is none.
+     */
+    private long pageSize(Map<String, Object> arguments) {
+        for (Map.Entry<String, Object> argument : arguments.entrySet()) {
+            if (PAGE_SIZE_ARGUMENTS.contains(argument.getKey()) && argument.getValue() instanceof Number size) {
+                return Math.max(1, Math.min(size.longValue(), properties.getMaxPageSize()));
+            }
+            if (argument.getValue() instanceof Map<?, ?> input) {
+                @SuppressWarnings("unchecked")
+                long size = pageSize((Map<String, Object>) input);
+                if (size > 1) {
+                    return size;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Caps the page size arguments, also inside input objects.
+     *
+     * @return {@code arguments} itself when nothing was over {@code max-page-size}, a copy otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> clamp(Map<String, Object> arguments) {
+        Map<String, Object> clamped = arguments;
+        for (Map.Entry<String, Object> argument : arguments.entrySet()) {
+            Object value = argument.getValue();
+            Object replacement = value;
+            if (PAGE_SIZE_ARGUMENTS.contains(argument.getKey()) && value instanceof Integer size && size > properties.getMaxPageSize()) {
+                replacement = properties.getMaxPageSize();
+            } else if (value instanceof Map<?, ?> input) {
+                replacement = clamp((Map<String, Object>) input);
+            }
+            if (replacement != value) {
+                if (clamped == arguments) {
+                    clamped = new LinkedHashMap<>(arguments);
+                }
+                clamped.put(argument.getKey(), replacement);
+            }
+        }
+        return clamped;
+    }
+
+    private static boolean hasPageSizeArgument(GraphQLFieldDefinition field) {
+        for (GraphQLArgument argument : field.getArguments()) {
+            if (PAGE_SIZE_ARGUMENTS.contains(argument.getName()) || hasPageSizeField(argument.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasPageSizeField(GraphQLType type) {
+        return (
+            GraphQLTypeUtil.unwrapAll(type) instanceof GraphQLInputObjectType input &&
+            input.getFields().stream().anyMatch(field -> PAGE_SIZE_ARGUMENTS.contains(field.getName()))
+        );
+    }
+
+    private static long count(Object value) {
+        if (value instanceof DataFetcherResult<?> result) {
+            value = result.getData();
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        return value != null ? 1 : 0;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        return a != 0 && b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        return a > Long.MAX_VALUE - b ? Long.MAX_VALUE : a + b;
+    }
+
+    private DistributionSummary costSummary(String kind, String rootField) {
+        return DistributionSummary.builder("graphql.query.cost")
+            .description("Estimated and actual GraphQL operation cost")
+            .tag("kind", kind)
+            .tag("field", rootField)
+            .register(meterRegistry);
+    }
+
+    private void rejected(String reason) {
+        Counter.builder("graphql.query.rejected")
+            .description("GraphQL operations over the cost limits")
+            .tag("reason", reason)
+            .register(meterRegistry)
+            .increment();
+    }
+
+    record Estimate(long cost, int depth, String rootField) {}
+
+    private static final class CostState implements InstrumentationState {
+
+        private final LongAdder actual = new LongAdder();
+    }
+}
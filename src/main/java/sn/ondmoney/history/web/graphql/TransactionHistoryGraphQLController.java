@@ -3,10 +3,19 @@ package sn.ondmoney.history.web.graphql;
 
 import sn.ondmoney.history.domain.enumeration.*;
 import sn.ondmoney.history.service.TransactionHistoryService;
+import sn.ondmoney.history.service.dto.TransactionCursor;
+import sn.ondmoney.history.service.dto.TransactionFields;
 import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
 import sn.ondmoney.history.web.graphql.input.TransactionHistoryInput;
 import sn.ondmoney.history.web.graphql.input.TransactionSearchInput;
 import sn.ondmoney.history.web.graphql.response.*;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingFieldSelectionSet;
+import graphql.schema.SelectedField;
+import org.dataloader.DataLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -14,13 +23,17 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.GraphQlExceptionHandler;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.execution.ErrorType;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Controller
@@ -28,6 +41,15 @@ public class TransactionHistoryGraphQLController {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransactionHistoryGraphQLController.class);
 
+    // Selection set paths of the transaction fields in TransactionPage and TransactionConnection
+    private static final String PAGE_CONTENT = "content/*";
+    private static final String CONNECTION_NODE = "edges/node/*";
+
+    // DataLoader names, registered in GraphQLConfig
+    public static final String TRANSACTION_BY_ID = "transactionById";
+    public static final String TRANSACTION_BY_TRANSACTION_ID = "transactionByTransactionId";
+    public static final String TRANSACTIONS_BY_CORRELATION_ID = "transactionsByCorrelationId";
+
     private final TransactionHistoryService transactionHistoryService;
 
     public TransactionHistoryGraphQLController(
@@ -37,7 +59,10 @@ public class TransactionHistoryGraphQLController {
     }
 
     @QueryMapping
-    public TransactionPageResponse searchTransactions(@Argument TransactionSearchInput searchInput) {
+    public Mono<TransactionPageResponse> searchTransactions(
+        @Argument TransactionSearchInput searchInput,
+        DataFetchingFieldSelectionSet selectionSet
+    ) {
         LOG.debug("GraphQL request to search transactions with input: {}", searchInput);
 
         // Create pageable with sorting
@@ -48,45 +73,74 @@ public class TransactionHistoryGraphQLController {
             sort
         );
 
-        Page<TransactionHistoryDTO> page = transactionHistoryService.searchByCriteria(
-            searchInput.getSenderPhone(),
-            searchInput.getReceiverPhone(),
-            searchInput.getTypes(),
-            searchInput.getStatuses(),
-            searchInput.getStartDate(),
-            searchInput.getEndDate(),
-            searchInput.getMinAmount(),
-            searchInput.getMaxAmount(),
-            searchInput.getCurrency(),
-            searchInput.getDirection(),
-            searchInput.getMerchantCode(),
-            searchInput.getBillReference(),
-            searchInput.getBankAccountNumber(),
-            searchInput.getDescriptionContains(),
-            pageable
+        return transactionHistoryService
+            .searchByCriteriaReactive(toCriteria(searchInput), pageable, searchInput.getTotalMode(), selectedFields(selectionSet, PAGE_CONTENT))
+            .map(TransactionPageResponse::from);
+    }
+
+    @QueryMapping
+    public TransactionConnection searchTransactionsConnection(
+        @Argument TransactionSearchInput searchInput,
+        @Argument Integer first,
+        @Argument String after,
+        DataFetchingFieldSelectionSet selectionSet
+    ) {
+        LOG.debug("GraphQL request to search transactions connection with input: {}, after: {}", searchInput, after);
+
+        TransactionSearchInput input = searchInput != null ? searchInput : new TransactionSearchInput();
+
+        return transactionHistoryService.searchConnection(
+            toCriteria(input),
+            first != null ? first : 20,
+            after,
+            input.getSortDirection(),
+            selectedFields(selectionSet, CONNECTION_NODE)
         );
+    }
 
-        return TransactionPageResponse.from(page);
+    /**
+     * An {@code after} argument that is not an {@code endCursor} is the client's mistake, not a server error.
+     */
+    @GraphQlExceptionHandler
+    public GraphQLError handleInvalidCursor(TransactionCursor.InvalidCursorException e, DataFetchingEnvironment env) {
+        return GraphqlErrorBuilder.newError(env).errorType(ErrorType.BAD_REQUEST).message(e.getMessage()).build();
     }
 
     @QueryMapping
-    public TransactionHistoryDTO transactionHistory(@Argument String id) {
+    public CompletableFuture<TransactionHistoryDTO> transactionHistory(@Argument String id, DataFetchingEnvironment env) {
         LOG.debug("GraphQL request to get TransactionHistory : {}", id);
 
-        TransactionHistoryDTO dto = transactionHistoryService.findOne(id)
-            .orElseThrow(() -> new RuntimeException("TransactionHistory not found with id: " + id));
+        DataLoader<String, TransactionHistoryDTO> loader = env.getDataLoader(TRANSACTION_BY_ID);
+        return loader
+            .load(id)
+            .thenApply(dto -> {
+                if (dto == null) {
+                    throw new RuntimeException("TransactionHistory not found with id: " + id);
+                }
+                return dto;
+            });
+    }
 
-        LOG.debug("Found DTO - ID: {}, TransactionId: {}, Type: {}, Status: {}, Amount: {}, SenderPhone: {}, TransactionDate: {}",
-            dto.getId(),
-            dto.getTransactionId(),
-            dto.getType(),
-            dto.getStatus(),
-            dto.getAmount(),
-            dto.getSenderPhone(),
-            dto.getTransactionDate()
-        );
+    @QueryMapping
+    public CompletableFuture<TransactionHistoryDTO> transactionByTransactionId(
+        @Argument String transactionId,
+        DataFetchingEnvironment env
+    ) {
+        LOG.debug("GraphQL request to get TransactionHistory by transactionId : {}", transactionId);
+
+        DataLoader<String, TransactionHistoryDTO> loader = env.getDataLoader(TRANSACTION_BY_TRANSACTION_ID);
+        return loader.load(transactionId);
+    }
+
+    @QueryMapping
+    public CompletableFuture<List<TransactionHistoryDTO>> transactionsByCorrelationId(
+        @Argument String correlationId,
+        DataFetchingEnvironment env
+    ) {
+        LOG.debug("GraphQL request to get TransactionHistories by correlationId : {}", correlationId);
 
-        return dto;
+        DataLoader<String, List<TransactionHistoryDTO>> loader = env.getDataLoader(TRANSACTIONS_BY_CORRELATION_ID);
+        return loader.load(correlationId).thenApply(histories -> histories != null ? histories : List.of());
     }
 
     @QueryMapping
@@ -132,7 +186,7 @@ public class TransactionHistoryGraphQLController {
 
     // NEW: Get user's complete transaction history
     @QueryMapping
-    public TransactionPageResponse userTransactions(
+    public Mono<TransactionPageResponse> userTransactions(
         @Argument String phoneNumber,
         @Argument Integer page,
         @Argument Integer size,
@@ -142,7 +196,9 @@ public class TransactionHistoryGraphQLController {
         @Argument Instant endDate,
         @Argument TransactionDirection direction,
         @Argument TransactionSortField sortBy,
-        @Argument SortDirection sortDirection
+        @Argument SortDirection sortDirection,
+        @Argument TotalMode totalMode,
+        DataFetchingFieldSelectionSet selectionSet
     ) {
         LOG.debug("GraphQL request to get user transactions for: {}", phoneNumber);
 
@@ -154,49 +210,40 @@ public class TransactionHistoryGraphQLController {
             sort
         );
 
-        // Build search input based on direction
-        String senderPhone = null;
-        String receiverPhone = null;
-        TransactionDirection effectiveDirection = direction != null ? direction : TransactionDirection.ALL;
-
-        switch (effectiveDirection) {
-            case SENT:
-                senderPhone = phoneNumber;
-                break;
-            case RECEIVED:
-                receiverPhone = phoneNumber;
-                break;
-            case ALL:
-                // For ALL direction, pass phoneNumber as senderPhone
-                // The service layer will use it for both senderPhone and receiverPhone in OR query
-                senderPhone = phoneNumber;
-                break;
-        }
+        TransactionSearchCriteria criteria = userCriteria(phoneNumber, direction, types, statuses, startDate, endDate);
+        return transactionHistoryService
+            .searchByCriteriaReactive(criteria, pageable, totalMode, selectedFields(selectionSet, PAGE_CONTENT))
+            .map(TransactionPageResponse::from);
+    }
 
-        Page<TransactionHistoryDTO> userpage = transactionHistoryService.searchByCriteria(
-            senderPhone,
-            receiverPhone,
-            types,
-            statuses,
-            startDate,
-            endDate,
-            null, // minAmount
-            null, // maxAmount
-            null, // currency
-            effectiveDirection,
-            null, // merchantCode
-            null, // billReference
-            null, // bankAccountNumber
-            null, // descriptionContains
-            pageable
+    @QueryMapping
+    public TransactionConnection userTransactionsConnection(
+        @Argument String phoneNumber,
+        @Argument Integer first,
+        @Argument String after,
+        @Argument List<TransactionType> types,
+        @Argument List<TransactionStatus> statuses,
+        @Argument Instant startDate,
+        @Argument Instant endDate,
+        @Argument TransactionDirection direction,
+        @Argument SortDirection sortDirection,
+        DataFetchingFieldSelectionSet selectionSet
+    ) {
+        LOG.debug("GraphQL request to get user transactions connection for: {}, after: {}", phoneNumber, after);
+
+        TransactionSearchCriteria criteria = userCriteria(phoneNumber, direction, types, statuses, startDate, endDate);
+        return transactionHistoryService.searchConnection(
+            criteria,
+            first != null ? first : 20,
+            after,
+            sortDirection,
+            selectedFields(selectionSet, CONNECTION_NODE)
         );
-
-        return TransactionPageResponse.from(userpage);
     }
 
     // NEW: Get user transaction statistics
     @QueryMapping
-    public UserTransactionStats userTransactionStats(
+    public Mono<UserTransactionStats> userTransactionStats(
         @Argument String phoneNumber,
         @Argument Instant startDate,
         @Argument Instant endDate,
@@ -205,7 +252,7 @@ public class TransactionHistoryGraphQLController {
     ) {
         LOG.debug("GraphQL request to get user transaction stats for: {}", phoneNumber);
 
-        return transactionHistoryService.getUserTransactionStats(
+        return transactionHistoryService.getUserTransactionStatsReactive(
             phoneNumber,
             startDate,
             endDate,
@@ -254,6 +301,59 @@ public class TransactionHistoryGraphQLController {
         return true;
     }
 
+    /**
+     * Transaction properties requested under {@code path}, so that only those are loaded.
+     */
+    private static TransactionFields selectedFields(DataFetchingFieldSelectionSet selectionSet, String path) {
+        if (selectionSet == null) {
+            return TransactionFields.ALL;
+        }
+        return TransactionFields.of(selectionSet.getFields(path).stream().map(SelectedField::getName).toList());
+    }
+
+    private TransactionSearchCriteria toCriteria(TransactionSearchInput input) {
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria();
+        criteria.setSenderPhone(input.getSenderPhone());
+        criteria.setReceiverPhone(input.getReceiverPhone());
+        criteria.setTypes(input.getTypes());
+        criteria.setStatuses(input.getStatuses());
+        criteria.setStartDate(input.getStartDate());
+        criteria.setEndDate(input.getEndDate());
+        criteria.setMinAmount(input.getMinAmount());
+        criteria.setMaxAmount(input.getMaxAmount());
+        criteria.setCurrency(input.getCurrency());
+        criteria.setDirection(input.getDirection());
+        criteria.setMerchantCode(input.getMerchantCode());
+        criteria.setBillReference(input.getBillReference());
+        criteria.setBankAccountNumber(input.getBankAccountNumber());
+        criteria.setDescriptionContains(input.getDescriptionContains());
+        return criteria;
+    }
+
+    private TransactionSearchCriteria userCriteria(
+        String phoneNumber,
+        TransactionDirection direction,
+        List<TransactionType> types,
+        List<TransactionStatus> statuses,
+        Instant startDate,
+        Instant endDate
+    ) {
+        TransactionDirection effectiveDirection = direction != null ? direction : TransactionDirection.ALL;
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria();
+        // SENT and ALL match on senderPhone: for ALL the search service expands it to sender OR receiver
+        if (effectiveDirection == TransactionDirection.RECEIVED) {
+            criteria.setReceiverPhone(phoneNumber);
+        } else {
+            criteria.setSenderPhone(phoneNumber);
+        }
+        criteria.setDirection(effectiveDirection);
+        criteria.setTypes(types);
+        criteria.setStatuses(statuses);
+        criteria.setStartDate(startDate);
+        criteria.setEndDate(endDate);
+        return criteria;
+    }
+
     private TransactionHistoryDTO mapInputToDTO(TransactionHistoryInput input) {
         return new TransactionHistoryDTO();
     }
@@ -5,6 +5,7 @@ import sn.ondmoney.history.domain.enumeration.TransactionType;
 import sn.ondmoney.history.domain.enumeration.TransactionDirection;
 import sn.ondmoney.history.domain.enumeration.TransactionSortField;
 import sn.ondmoney.history.domain.enumeration.SortDirection;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -44,4 +45,5 @@ public class TransactionSearchInput {
     private Integer size = 20;
     private TransactionSortField sortBy = TransactionSortField.TRANSACTION_DATE;
     private SortDirection sortDirection = SortDirection.DESC;
+    private TotalMode totalMode = TotalMode.EXACT;
 }
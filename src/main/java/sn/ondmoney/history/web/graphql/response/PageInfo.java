@@ -0,0 +1,21 @@
+package sn.ondmoney.history.web.graphql.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class PageInfo {
+
+    private boolean hasNextPage;
+    private boolean hasPreviousPage;
+    private String startCursor;
+    private String endCursor;
+
+    public PageInfo(boolean hasNextPage, boolean hasPreviousPage, String startCursor, String endCursor) {
+        this.hasNextPage = hasNextPage;
+        this.hasPreviousPage = hasPreviousPage;
+        this.startCursor = startCursor;
+        this.endCursor = endCursor;
+    }
+}
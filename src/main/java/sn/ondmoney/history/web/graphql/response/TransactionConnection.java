@@ -0,0 +1,45 @@
+package sn.ondmoney.history.web.graphql.response;
+
+import sn.ondmoney.history.service.dto.TransactionCursor;
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Relay-style page of transactions, ordered by ({@code transactionDate}, {@code id}).
+ */
+@Setter
+@Getter
+public class TransactionConnection {
+
+    private List<TransactionEdge> edges;
+    private PageInfo pageInfo;
+
+    public TransactionConnection(List<TransactionEdge> edges, PageInfo pageInfo) {
+        this.edges = edges;
+        this.pageInfo = pageInfo;
+    }
+
+    /**
+     * @param rows up to {@code first + 1} rows; the extra row only signals that a next page exists.
+     */
+    public static TransactionConnection from(List<TransactionHistoryDTO> rows, int first, boolean hasPreviousPage) {
+        boolean hasNextPage = rows.size() > first;
+        List<TransactionEdge> edges = rows
+            .stream()
+            .limit(first)
+            .map(row -> new TransactionEdge(TransactionCursor.of(row).encode(), row))
+            .toList();
+        return new TransactionConnection(
+            edges,
+            new PageInfo(
+                hasNextPage,
+                hasPreviousPage,
+                edges.isEmpty() ? null : edges.get(0).getCursor(),
+                edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor()
+            )
+        );
+    }
+}
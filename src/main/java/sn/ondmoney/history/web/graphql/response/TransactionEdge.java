@@ -0,0 +1,18 @@
+package sn.ondmoney.history.web.graphql.response;
+
+import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class TransactionEdge {
+
+    private String cursor;
+    private TransactionHistoryDTO node;
+
+    public TransactionEdge(String cursor, TransactionHistoryDTO node) {
+        this.cursor = cursor;
+        this.node = node;
+    }
+}
@@ -1,5 +1,7 @@
 package sn.ondmoney.history.web.graphql.response;
 
+import sn.ondmoney.history.domain.enumeration.TotalMode;
+import sn.ondmoney.history.service.dto.SearchPage;
 import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
 import lombok.Getter;
 import lombok.Setter;
@@ -16,6 +18,10 @@ public class TransactionPageResponse {
     private Integer totalPages;
     private Integer size;
     private Integer number;
+    private boolean hasNext;
+    private TotalMode totalMode = TotalMode.EXACT;
+    // false when totalElements is only a lower bound (capped, estimated or skipped count)
+    private boolean totalExact = true;
 
     public TransactionPageResponse(List<TransactionHistoryDTO> content, Long totalElements, Integer totalPages, Integer size, Integer number) {
         this.content = content;
@@ -26,13 +32,19 @@ public class TransactionPageResponse {
     }
 
     public static TransactionPageResponse from(Page<TransactionHistoryDTO> page) {
-        return new TransactionPageResponse(
+        TransactionPageResponse response = new TransactionPageResponse(
             page.getContent(),
             page.getTotalElements(),
             page.getTotalPages(),
             page.getSize(),
             page.getNumber()
         );
+        response.setHasNext(page.hasNext());
+        if (page instanceof SearchPage<TransactionHistoryDTO> searchPage) {
+            response.setTotalMode(searchPage.getTotalMode());
+            response.setTotalExact(searchPage.isTotalExact());
+        }
+        return response;
     }
 
 }
@@ -1,9 +1,12 @@
 package sn.ondmoney.history.web.rest;
 
+import sn.ondmoney.history.domain.ReindexCheckpoint;
 import sn.ondmoney.history.repository.TransactionHistoryRepository;
 import sn.ondmoney.history.repository.search.TransactionHistorySearchRepository;
+import sn.ondmoney.history.service.TransactionHistoryReindexService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,13 +17,16 @@ public class ConsumerDebugController {
     private final Logger log = LoggerFactory.getLogger(ConsumerDebugController.class);
     private final TransactionHistoryRepository transactionHistoryRepository;
     private final TransactionHistorySearchRepository transactionHistorySearchRepository;
+    private final TransactionHistoryReindexService transactionHistoryReindexService;
 
     public ConsumerDebugController(
         TransactionHistoryRepository transactionHistoryRepository,
-        TransactionHistorySearchRepository transactionHistorySearchRepository
+        TransactionHistorySearchRepository transactionHistorySearchRepository,
+        TransactionHistoryReindexService transactionHistoryReindexService
     ) {
         this.transactionHistoryRepository = transactionHistoryRepository;
         this.transactionHistorySearchRepository = transactionHistorySearchRepository;
+        this.transactionHistoryReindexService = transactionHistoryReindexService;
     }
 
     @GetMapping("/count")
@@ -46,21 +52,23 @@ public class ConsumerDebugController {
         return ResponseEntity.ok(transactions);
     }
 
+    /**
+     * Starts a background reindex into new monthly indices and swaps the search aliases when it completes.
+     *
+     * @param resume continue the last failed run from its checkpoint instead of starting over.
+     */
     @PostMapping("/reindex")
-    public ResponseEntity<String> reindexAll() {
-        log.info("Manual reindexing all documents...");
-
-        var allTransactions = transactionHistoryRepository.findAll();
-        transactionHistorySearchRepository.deleteAll();
-
-        int count = 0;
-        for (var transaction : allTransactions) {
-            transactionHistorySearchRepository.save(transaction);
-            count++;
+    public ResponseEntity<ReindexCheckpoint> reindexAll(@RequestParam(defaultValue = "false") boolean resume) {
+        log.info("Manual reindex requested (resume: {})", resume);
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(transactionHistoryReindexService.start(resume));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(transactionHistoryReindexService.status().orElse(null));
         }
+    }
 
-        String result = String.format("Reindexed %d documents to Elasticsearch", count);
-        log.info(result);
-        return ResponseEntity.ok(result);
+    @GetMapping("/reindex/status")
+    public ResponseEntity<ReindexCheckpoint> getReindexStatus() {
+        return transactionHistoryReindexService.status().map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
     }
 }
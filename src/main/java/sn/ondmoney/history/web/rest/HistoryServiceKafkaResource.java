@@ -1,7 +1,9 @@
 package sn.ondmoney.history.web.rest;
 
-import sn.ondmoney.history.broker.KafkaConsumer;
+import sn.ondmoney.history.broker.NotificationHub;
+import sn.ondmoney.history.security.SecurityUtils;
 import java.security.Principal;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.stream.function.StreamBridge;
@@ -15,12 +17,12 @@ public class HistoryServiceKafkaResource {
     private static final String PRODUCER_BINDING_NAME = "binding-out-0";
 
     private static final Logger LOG = LoggerFactory.getLogger(HistoryServiceKafkaResource.class);
-    private final KafkaConsumer kafkaConsumer;
+    private final NotificationHub notificationHub;
     private final StreamBridge streamBridge;
 
-    public HistoryServiceKafkaResource(StreamBridge streamBridge, KafkaConsumer kafkaConsumer) {
+    public HistoryServiceKafkaResource(StreamBridge streamBridge, NotificationHub notificationHub) {
         this.streamBridge = streamBridge;
-        this.kafkaConsumer = kafkaConsumer;
+        this.notificationHub = notificationHub;
     }
 
     @PostMapping("/publish")
@@ -29,13 +31,19 @@ public class HistoryServiceKafkaResource {
         streamBridge.send(PRODUCER_BINDING_NAME, message);
     }
 
+    /**
+     * {@code GET /register} : opens a server-sent event stream of the notifications for the current user.
+     *
+     * @param topics the event names to receive, all if omitted.
+     */
     @GetMapping("/register")
-    public ResponseBodyEmitter register(Principal principal) {
-        return kafkaConsumer.register(principal.getName());
+    public ResponseBodyEmitter register(Principal principal, @RequestParam(name = "topics", required = false) List<String> topics) {
+        String phone = SecurityUtils.getCurrentUserPhoneNumber().orElse(null);
+        return notificationHub.register(principal.getName(), phone, topics != null ? topics : List.of());
     }
 
     @GetMapping("/unregister")
     public void unregister(Principal principal) {
-        kafkaConsumer.unregister(principal.getName());
+        notificationHub.unregister(principal.getName());
     }
 }
@@ -1,14 +1,21 @@
 package sn.ondmoney.history.web.rest;
 
 import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.ExportFormat;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
 import sn.ondmoney.history.domain.enumeration.TransactionStatus;
 import sn.ondmoney.history.domain.enumeration.TransactionType;
 import sn.ondmoney.history.repository.TransactionHistoryRepository;
+import sn.ondmoney.history.service.TransactionHistoryExportService;
 import sn.ondmoney.history.service.TransactionHistoryService;
+import sn.ondmoney.history.service.dto.SearchPage;
+import sn.ondmoney.history.service.dto.TransactionFields;
 import sn.ondmoney.history.service.dto.TransactionHistoryDTO;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
 import sn.ondmoney.history.web.rest.errors.BadRequestAlertException;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -16,15 +23,18 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import tech.jhipster.web.util.HeaderUtil;
 import tech.jhipster.web.util.PaginationUtil;
@@ -48,12 +58,16 @@ public class TransactionHistoryResource {
 
     private final TransactionHistoryRepository transactionHistoryRepository;
 
+    private final TransactionHistoryExportService transactionHistoryExportService;
+
     public TransactionHistoryResource(
         TransactionHistoryService transactionHistoryService,
-        TransactionHistoryRepository transactionHistoryRepository
+        TransactionHistoryRepository transactionHistoryRepository,
+        TransactionHistoryExportService transactionHistoryExportService
     ) {
         this.transactionHistoryService = transactionHistoryService;
         this.transactionHistoryRepository = transactionHistoryRepository;
+        this.transactionHistoryExportService = transactionHistoryExportService;
     }
 
     /**
@@ -82,6 +96,8 @@ public class TransactionHistoryResource {
      * /api/transaction-histories/search?startDate=2024-01-01T00:00:00Z&endDate=2024-01-31T23:59:59Z
      * /api/transaction-histories/search?minAmount=1000&maxAmount=50000
      * /api/transaction-histories/search?phoneNumber=00221771234567&type=TRANSFER&status=SUCCESS&startDate=2024-01-01T00:00:00Z&endDate=2024-01-31T23:59:59Z
+     * /api/transaction-histories/search?senderPhone=00221771234567&totalMode=CAPPED
+     * /api/transaction-histories/search?senderPhone=00221771234567&fields=amount,type,transactionDate,counterpartyName
      */
     @GetMapping("/search")
     public ResponseEntity<List<TransactionHistoryDTO>> searchTransactions(
@@ -93,6 +109,8 @@ public class TransactionHistoryResource {
         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endDate,
         @RequestParam(required = false) BigDecimal minAmount,
         @RequestParam(required = false) BigDecimal maxAmount,
+        @RequestParam(required = false) TotalMode totalMode,
+        @RequestParam(required = false) String fields,
         @org.springdoc.core.annotations.ParameterObject Pageable pageable
     ) {
         LOG.debug(
@@ -103,22 +121,100 @@ public class TransactionHistoryResource {
             status
         );
 
-        Page<TransactionHistoryDTO> page = transactionHistoryService.searchByCriteria(
-            senderPhone,
-            receiverPhone,
-            type,
-            status,
-            startDate,
-            endDate,
-            minAmount,
-            maxAmount,
-            pageable
+        TransactionSearchCriteria criteria = toCriteria(senderPhone, receiverPhone, type, status, startDate, endDate, minAmount, maxAmount);
+        SearchPage<TransactionHistoryDTO> page = transactionHistoryService.searchByCriteria(
+            criteria,
+            pageable,
+            totalMode,
+            parseFields(fields)
         );
 
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        // X-Total-Count is a lower bound unless X-Total-Exact is true
+        headers.add("X-Total-Mode", page.getTotalMode().name());
+        headers.add("X-Total-Exact", Boolean.toString(page.isTotalExact()));
+        headers.add("X-Has-Next", Boolean.toString(page.hasNext()));
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
+    /**
+     * {@code GET  /transaction-histories/export} : stream every transaction matching the same criteria as
+     * {@code /search}, newest first, in a single response.
+     * <p>
+     * The body is gzip-compressed when the client accepts it. Example:
+     * /api/transaction-histories/export?senderPhone=00221771234567&startDate=2024-01-01T00:00:00Z&format=NDJSON
+     *
+     * @param format {@code CSV} (default) or {@code NDJSON}.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+        @RequestParam(required = false) String senderPhone,
+        @RequestParam(required = false) String receiverPhone,
+        @RequestParam(required = false) TransactionType type,
+        @RequestParam(required = false) TransactionStatus status,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant startDate,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endDate,
+        @RequestParam(required = false) BigDecimal minAmount,
+        @RequestParam(required = false) BigDecimal maxAmount,
+        @RequestParam(defaultValue = "CSV") ExportFormat format,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        LOG.debug("REST request to export transactions as {} - sender: {}, receiver: {}", format, senderPhone, receiverPhone);
+
+        TransactionSearchCriteria criteria = toCriteria(senderPhone, receiverPhone, type, status, startDate, endDate, minAmount, maxAmount);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192) : out;
+            long count = transactionHistoryExportService.export(criteria, format, target);
+            if (target instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+            LOG.info("Exported {} transactions as {}", count, format);
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getContentType() + ";charset=UTF-8");
+        headers.setContentDisposition(
+            ContentDisposition.attachment().filename("transactions-" + Instant.now().getEpochSecond() + "." + format.getExtension()).build()
+        );
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    private static TransactionFields parseFields(String fields) {
+        try {
+            return TransactionFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "unknownfields");
+        }
+    }
+
+    private static TransactionSearchCriteria toCriteria(
+        String senderPhone,
+        String receiverPhone,
+        TransactionType type,
+        TransactionStatus status,
+        Instant startDate,
+        Instant endDate,
+        BigDecimal minAmount,
+        BigDecimal maxAmount
+    ) {
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria();
+        criteria.setSenderPhone(senderPhone);
+        criteria.setReceiverPhone(receiverPhone);
+        criteria.setTypes(type != null ? List.of(type) : null);
+        criteria.setStatuses(status != null ? List.of(status) : null);
+        criteria.setStartDate(startDate);
+        criteria.setEndDate(endDate);
+        criteria.setMinAmount(minAmount);
+        criteria.setMaxAmount(maxAmount);
+        return criteria;
+    }
+
     /**
      * {@code PUT  /transaction-histories/:id} : Updates an existing transactionHistory.
      */
@@ -0,0 +1,229 @@
+package sn.ondmoney.history.broker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.service.PhoneNumberNormalizer;
+
+/**
+ * Test class for the buffering and dispatch of {@link NotificationHub} connections, on stubbed emitters.
+ */
+class NotificationHubTest {
+
+    private static final String COMPLETED = "<completed>";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+    private final ApplicationProperties.Notifications properties = applicationProperties.getNotifications();
+    private NotificationHub hub;
+
+    @BeforeEach
+    void noHeartbeats() {
+        // No heartbeat comments among the recorded events
+        properties.setHeartbeatInterval(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (hub != null) {
+            hub.shutdown();
+        }
+    }
+
+    @Test
+    void drainsEventsInOrder() {
+        hub = hub();
+        StubEmitter emitter = register("alice");
+
+        deliver("alice", "e1", "e2", "e3");
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.events.size() == 3);
+        assertThat(emitter.events).containsExactly("e1", "e2", "e3");
+    }
+
+    @Test
+    void dropsNewEventsWhenBufferIsFull() throws InterruptedException {
+        properties.setBufferSize(2);
+        hub = hub();
+        StubEmitter emitter = register("alice");
+        emitter.block();
+
+        deliver("alice", "e1");
+        emitter.awaitSending();
+        deliver("alice", "e2", "e3", "e4");
+        emitter.release();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.events.size() == 3);
+        assertThat(emitter.events).containsExactly("e1", "e2", "e3");
+        assertThat(meterRegistry.counter("history.notifications.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void disconnectsWhenBufferIsFull() throws InterruptedException {
+        properties.setBufferSize(2);
+        properties.setOverflow(ApplicationProperties.Notifications.Overflow.DISCONNECT);
+        hub = hub();
+        StubEmitter emitter = register("alice");
+        emitter.block();
+
+        deliver("alice", "e1");
+        emitter.awaitSending();
+        deliver("alice", "e2", "e3", "e4");
+        emitter.release();
+        deliver("alice", "e5");
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.events.contains(COMPLETED));
+        assertThat(emitter.events).containsExactly("e1", COMPLETED);
+        assertThat(meterRegistry.counter("history.notifications.disconnected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void closeCompletesAfterPendingEvents() throws InterruptedException {
+        hub = hub();
+        StubEmitter emitter = register("alice");
+        emitter.block();
+
+        deliver("alice", "e1");
+        emitter.awaitSending();
+        deliver("alice", "e2");
+        hub.unregister("alice");
+        emitter.release();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.events.contains(COMPLETED));
+        assertThat(emitter.events).containsExactly("e1", "e2", COMPLETED);
+    }
+
+    @Test
+    void completesOnceWhenClosedWhileEventsArrive() throws InterruptedException {
+        hub = hub();
+        // Each round is short: polled quickly enough for the whole loop to stay well within the test timeout
+        for (int i = 0; i < 50; i++) {
+            String principal = "user-" + i;
+            StubEmitter emitter = register(principal);
+            Thread publisher = new Thread(() -> {
+                for (int event = 0; event < 20; event++) {
+                    deliver(principal, "e" + event);
+                }
+            });
+            publisher.start();
+            hub.unregister(principal);
+            publisher.join();
+
+            await().pollInterval(Duration.ofMillis(5)).atMost(Duration.ofSeconds(5)).until(() -> emitter.events.contains(COMPLETED));
+            assertThat(emitter.events).filteredOn(COMPLETED::equals).hasSize(1);
+            assertThat(emitter.events).last().isEqualTo(COMPLETED);
+        }
+    }
+
+    @Test
+    void stalledWriteDisconnectsClientWithoutHoldingDispatchThread() throws InterruptedException {
+        properties.setDispatchThreads(1);
+        properties.setSendTimeout(Duration.ofMillis(200));
+        hub = hub();
+        StubEmitter stalled = register("alice");
+        StubEmitter other = register("bob");
+        stalled.block();
+
+        deliver("alice", "e1");
+        stalled.awaitSending();
+        deliver("bob", "e2");
+
+        // The only dispatch thread is stuck with alice until the stall is detected
+        await().atMost(Duration.ofSeconds(5)).until(() -> other.events.size() == 1);
+        assertThat(meterRegistry.counter("history.notifications.disconnected").count()).isEqualTo(1);
+        assertThat(hub.dispatchThreads()).isEqualTo(2);
+
+        stalled.release();
+        await().atMost(Duration.ofSeconds(5)).until(() -> stalled.events.contains(COMPLETED));
+        assertThat(stalled.events).containsExactly("e1", COMPLETED);
+        assertThat(hub.dispatchThreads()).isEqualTo(1);
+    }
+
+    private NotificationHub hub() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(mock(RTopic.class));
+        return new NotificationHub(redissonClient, new ObjectMapper(), new PhoneNumberNormalizer(), applicationProperties, meterRegistry);
+    }
+
+    private StubEmitter register(String principal) {
+        StubEmitter emitter = new StubEmitter();
+        hub.register(principal, null, List.of(), emitter);
+        return emitter;
+    }
+
+    private void deliver(String principal, String... data) {
+        for (String event : data) {
+            hub.deliver(new Notification("transaction", principal, null, event));
+        }
+    }
+
+    /**
+     * Records the data of each sent event, and {@link #COMPLETED} when completed. Between {@link #block()} and
+     * {@link #release()}, sends wait as on a client that does not read.
+     */
+    private static final class StubEmitter extends SseEmitter {
+
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private volatile CountDownLatch sending = new CountDownLatch(1);
+
+        void block() {
+            gate = new CountDownLatch(1);
+            sending = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        void awaitSending() throws InterruptedException {
+            assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            sending.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            String event = items.stream().map(item -> String.valueOf(item.getData())).collect(Collectors.joining());
+            events.add(event.substring(event.indexOf("data:") + "data:".length()).trim());
+        }
+
+        @Override
+        public void complete() {
+            events.add(COMPLETED);
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            events.add(COMPLETED);
+        }
+    }
+}
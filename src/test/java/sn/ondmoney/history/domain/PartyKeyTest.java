@@ -0,0 +1,44 @@
+package sn.ondmoney.history.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class PartyKeyTest {
+
+    @Test
+    void everySpellingOfANumberHasTheSameKey() {
+        assertThat(PartyKey.of("+221 77 123 45 67")).isEqualTo(221771234567L);
+        assertThat(PartyKey.of("00221771234567")).isEqualTo(221771234567L);
+        assertThat(PartyKey.of("221771234567")).isEqualTo(221771234567L);
+        assertThat(PartyKey.of("077-123-45-67")).isEqualTo(221771234567L);
+        assertThat(PartyKey.of("77.123.45.67")).isEqualTo(221771234567L);
+        assertThat(PartyKey.of("+33 1 23 45 67 89")).isEqualTo(33123456789L);
+    }
+
+    @Test
+    void textThatIsNotAPhoneNumberHasNoKey() {
+        assertThat(PartyKey.of(null)).isEqualTo(PartyKey.NONE);
+        assertThat(PartyKey.of(" ")).isEqualTo(PartyKey.NONE);
+        assertThat(PartyKey.of("senderPhone1")).isEqualTo(PartyKey.NONE);
+        assertThat(PartyKey.of("+")).isEqualTo(PartyKey.NONE);
+        assertThat(PartyKey.of("000221771234567")).isEqualTo(PartyKey.NONE);
+        assertThat(PartyKey.of("1234567890123456")).isEqualTo(PartyKey.NONE);
+        assertThat(PartyKey.valueOf("AAAAAAAAAA")).isNull();
+    }
+
+    @Test
+    void keysFormatBackToPhoneNumbers() {
+        assertThat(PartyKey.toInternational(221771234567L)).isEqualTo("00221771234567");
+        assertThat(PartyKey.toNational(221771234567L)).isEqualTo("771234567");
+        assertThat(PartyKey.toNational(33123456789L)).isNull();
+    }
+
+    @Test
+    void settingAPhoneSetsItsKey() {
+        TransactionHistory history = new TransactionHistory().senderPhone("+221771234567").receiverPhone("unknown");
+
+        assertThat(history.getSenderKey()).isEqualTo(221771234567L);
+        assertThat(history.getReceiverKey()).isNull();
+    }
+}
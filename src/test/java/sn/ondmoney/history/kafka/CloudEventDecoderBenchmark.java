@@ -0,0 +1,88 @@
+package sn.ondmoney.history.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link CloudEventDecoder} with the {@code readTree} decoding the consumers used before, on a
+ * {@code transfer.completed} event. Not run by the build; start {@link #main} from the IDE, or after
+ * {@code ./mvnw test-compile} with the test classpath, and add {@code -prof gc} to compare allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloudEventDecoderBenchmark {
+
+    private static final byte[] PAYLOAD = (
+        "{\"specversion\":\"1.0\",\"id\":\"7c1e3a52-0f43-4a4e-9d0b-2f8d1b6c9e11\",\"type\":\"transfer.completed\"," +
+        "\"source\":\"/wallet-service/transfers\",\"time\":\"2025-05-14T10:15:30.123Z\",\"datacontenttype\":\"application/json\"," +
+        "\"ondmoney\":{\"correlationId\":\"corr-5b2f\",\"tenant\":\"sn\",\"version\":2}," +
+        "\"data\":{\"transferId\":\"tr_20250514_000123\",\"senderId\":\"usr_001\",\"receiverId\":\"usr_002\"," +
+        "\"amount\":25000.00,\"currency\":\"XOF\",\"description\":\"Rent May\",\"senderNewBalance\":125000.00," +
+        "\"receiverNewBalance\":80500.00,\"senderName\":\"Awa Diop\",\"receiverName\":\"Moussa Fall\"," +
+        "\"senderPhoneNumber\":\"+221771234567\",\"receiverPhoneNumber\":\"+221781234567\"}}"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CloudEventDecoder decoder = new CloudEventDecoder(objectMapper);
+
+    @Benchmark
+    public void readTree(Blackhole blackhole) throws IOException {
+        // Previous path: String payload, then a JsonNode tree and repeated lookups
+        JsonNode cloudEvent = objectMapper.readTree(new String(PAYLOAD, StandardCharsets.UTF_8));
+        JsonNode dataNode = cloudEvent.get("data");
+        blackhole.consume(cloudEvent.has("id") ? cloudEvent.get("id").asText() : null);
+        blackhole.consume(
+            cloudEvent.has("ondmoney") && cloudEvent.get("ondmoney").has("correlationId")
+                ? cloudEvent.get("ondmoney").get("correlationId").asText()
+                : null
+        );
+        blackhole.consume(dataNode.has("transferId") ? dataNode.get("transferId").asText() : null);
+        blackhole.consume(dataNode.has("senderId") ? dataNode.get("senderId").asText() : null);
+        blackhole.consume(dataNode.has("receiverId") ? dataNode.get("receiverId").asText() : null);
+        blackhole.consume(dataNode.has("amount") ? new BigDecimal(dataNode.get("amount").asText()) : BigDecimal.ZERO);
+        blackhole.consume(dataNode.has("currency") ? dataNode.get("currency").asText() : "XOF");
+        blackhole.consume(dataNode.has("senderNewBalance") ? new BigDecimal(dataNode.get("senderNewBalance").asText()) : null);
+        blackhole.consume(dataNode.has("senderPhoneNumber") ? dataNode.get("senderPhoneNumber").asText() : null);
+        blackhole.consume(dataNode.has("receiverPhoneNumber") ? dataNode.get("receiverPhoneNumber").asText() : null);
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        CloudEvent cloudEvent = decoder.decode(PAYLOAD);
+        blackhole.consume(cloudEvent.getId());
+        blackhole.consume(cloudEvent.getCorrelationId());
+        blackhole.consume(cloudEvent.data("transferId"));
+        blackhole.consume(cloudEvent.data("senderId"));
+        blackhole.consume(cloudEvent.data("receiverId"));
+        blackhole.consume(cloudEvent.decimal("amount", BigDecimal.ZERO));
+        blackhole.consume(cloudEvent.data("currency", "XOF"));
+        blackhole.consume(cloudEvent.decimal("senderNewBalance", null));
+        blackhole.consume(cloudEvent.data("senderPhoneNumber"));
+        blackhole.consume(cloudEvent.data("receiverPhoneNumber"));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CloudEventDecoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
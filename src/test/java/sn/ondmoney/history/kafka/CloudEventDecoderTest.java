@@ -0,0 +1,56 @@
+package sn.ondmoney.history.kafka;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link CloudEventDecoder}.
+ */
+class CloudEventDecoderTest {
+
+    private final CloudEventDecoder decoder = new CloudEventDecoder(new ObjectMapper());
+
+    private CloudEvent decode(String json) throws IOException {
+        return decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testBindsAttributesAndScalarData() throws IOException {
+        CloudEvent event = decode(
+            """
+            {"specversion":"1.0","id":"evt-1","type":"transfer.completed","source":"/transfers",
+             "ondmoney":{"tenant":"sn","correlationId":"corr-1","trace":{"span":"x"}},
+             "data":{"transferId":"tr-1","amount":1500.50,"fees":[1,2],"meta":{"a":1},"note":null,"urgent":true}}
+            """
+        );
+        assertThat(event.getId()).isEqualTo("evt-1");
+        assertThat(event.getType()).isEqualTo("transfer.completed");
+        assertThat(event.getCorrelationId()).isEqualTo("corr-1");
+        assertThat(event.hasData()).isTrue();
+        assertThat(event.data("transferId")).isEqualTo("tr-1");
+        assertThat(event.decimal("amount", BigDecimal.ZERO)).isEqualByComparingTo("1500.50").hasToString("1500.50");
+        assertThat(event.data("urgent")).isEqualTo("true");
+        assertThat(event.data("fees")).isNull();
+        assertThat(event.data("meta")).isNull();
+        assertThat(event.data("note", "none")).isEqualTo("none");
+        assertThat(event.decimal("senderNewBalance", null)).isNull();
+    }
+
+    @Test
+    void testReusedEventIsReset() throws IOException {
+        decode("{\"id\":\"evt-1\",\"ondmoney\":{\"correlationId\":\"corr-1\"},\"data\":{\"walletId\":\"w-1\"}}");
+        CloudEvent event = decode("{\"id\":\"evt-2\"}");
+        assertThat(event.getId()).isEqualTo("evt-2");
+        assertThat(event.getCorrelationId()).isNull();
+        assertThat(event.hasData()).isFalse();
+        assertThat(event.data("walletId")).isNull();
+
+        assertThatThrownBy(() -> decode("[1,2]")).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,60 @@
+package sn.ondmoney.history.kafka;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link ScalableBloomFilter}.
+ */
+class ScalableBloomFilterTest {
+
+    @Test
+    void testNoFalseNegatives() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("event-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("event-" + i)).isTrue();
+        }
+        assertThat(filter.size()).isEqualTo(10_000);
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        for (int i = 0; i < 100; i++) {
+            filter.put("event-" + i);
+        }
+        assertThat(filter.stageCount()).isEqualTo(1);
+
+        filter.put("event-100");
+        assertThat(filter.stageCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testFalsePositiveRateStaysBounded() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 20_000; i++) {
+            filter.put(UUID.randomUUID().toString());
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(0.02);
+    }
+
+    @Test
+    void testRejectsInvalidArguments() {
+        assertThatThrownBy(() -> new ScalableBloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ScalableBloomFilter(100, 1.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
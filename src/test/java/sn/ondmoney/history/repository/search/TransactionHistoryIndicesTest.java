@@ -0,0 +1,40 @@
+package sn.ondmoney.history.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import org.junit.jupiter.api.Test;
+
+class TransactionHistoryIndicesTest {
+
+    @Test
+    void documentsGoToTheUtcMonthOfTheirTransaction() {
+        assertThat(TransactionHistoryIndices.monthIndex("transactionhistory-", Instant.parse("2026-03-31T23:59:59Z"))).isEqualTo(
+            "transactionhistory-2026.03"
+        );
+        assertThat(TransactionHistoryIndices.monthIndex("transactionhistory_v20261018000000-", Instant.parse("2026-04-01T00:00:00Z"))).isEqualTo(
+            "transactionhistory_v20261018000000-2026.04"
+        );
+    }
+
+    @Test
+    void everyIndexNameEndsWithItsMonth() {
+        assertThat(TransactionHistoryIndices.monthOf("transactionhistory-2026.03")).isEqualTo(YearMonth.of(2026, 3));
+        assertThat(TransactionHistoryIndices.monthOf("transactionhistory_shrunk_20261018000000-2025.12")).isEqualTo(YearMonth.of(2025, 12));
+        assertThat(TransactionHistoryIndices.monthOf("transactionhistory")).isNull();
+        assertThat(TransactionHistoryIndices.monthOf("transactionhistory_v20261018000000")).isNull();
+    }
+
+    @Test
+    void boundedSearchesReadTheirMonthsOnly() {
+        assertThat(TransactionHistoryIndices.months(Instant.parse("2025-11-15T00:00:00Z"), Instant.parse("2026-02-01T00:00:00Z"), 24)).containsExactly(
+            YearMonth.of(2025, 11),
+            YearMonth.of(2025, 12),
+            YearMonth.of(2026, 1),
+            YearMonth.of(2026, 2)
+        );
+        assertThat(TransactionHistoryIndices.months(Instant.parse("2020-01-01T00:00:00Z"), Instant.parse("2026-02-01T00:00:00Z"), 24)).isEmpty();
+        assertThat(TransactionHistoryIndices.months(Instant.parse("2026-02-01T00:00:00Z"), Instant.parse("2026-01-01T00:00:00Z"), 24)).isEmpty();
+    }
+}
@@ -0,0 +1,24 @@
+package sn.ondmoney.history.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class TransactionHistoryExportServiceTest {
+
+    @Test
+    void csvFieldQuotesSeparatorsAndQuotes() {
+        assertThat(TransactionHistoryExportService.csvField("plain")).isEqualTo("plain");
+        assertThat(TransactionHistoryExportService.csvField("a,b")).isEqualTo("\"a,b\"");
+        assertThat(TransactionHistoryExportService.csvField("say \"hi\"")).isEqualTo("\"say \"\"hi\"\"\"");
+        assertThat(TransactionHistoryExportService.csvField("line\nbreak")).isEqualTo("\"line\nbreak\"");
+    }
+
+    @Test
+    void csvFieldNeutralizesFormulasButKeepsNumbers() {
+        assertThat(TransactionHistoryExportService.csvField("=HYPERLINK(\"x\")")).startsWith("\"'=");
+        assertThat(TransactionHistoryExportService.csvField("@SUM")).isEqualTo("'@SUM");
+        assertThat(TransactionHistoryExportService.csvField("+221771234567")).isEqualTo("+221771234567");
+        assertThat(TransactionHistoryExportService.csvField("-1500")).isEqualTo("-1500");
+    }
+}
@@ -0,0 +1,97 @@
+package sn.ondmoney.history.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionStatus;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+
+class UserStatsServiceTest {
+
+    private final UserStatsService service = new UserStatsService(null, null, new PhoneNumberNormalizer(), null, new ApplicationProperties());
+
+    @Test
+    void statusChangeMovesTransactionBetweenKeys() {
+        TransactionHistory pending = transfer(TransactionStatus.PENDING);
+        TransactionHistory success = transfer(TransactionStatus.SUCCESS);
+
+        Collection<UserStatsService.Delta> deltas = service.deltas(List.of(pending), List.of(success));
+
+        assertThat(deltas).hasSize(4);
+        assertThat(deltas)
+            .filteredOn(delta -> delta.status == TransactionStatus.PENDING)
+            .allSatisfy(delta -> {
+                assertThat(delta.count).isEqualTo(-1);
+                assertThat(delta.amount).isEqualByComparingTo("-1500");
+            });
+        assertThat(deltas)
+            .filteredOn(delta -> delta.status == TransactionStatus.SUCCESS)
+            .extracting(delta -> delta.phone)
+            .containsExactlyInAnyOrder("00221771234567", "00221781234567");
+    }
+
+    @Test
+    void unchangedRedeliveryIsNoOp() {
+        assertThat(service.deltas(List.of(transfer(TransactionStatus.SUCCESS)), List.of(transfer(TransactionStatus.SUCCESS)))).isEmpty();
+    }
+
+    @Test
+    void transferToOneselfKeepsItsReceivedSideApart() {
+        TransactionHistory self = transfer(TransactionStatus.SUCCESS);
+        self.setReceiverPhone("00221771234567");
+
+        Collection<UserStatsService.Delta> deltas = service.deltas(List.of(), List.of(self));
+
+        assertThat(deltas).hasSize(2);
+        assertThat(deltas).extracting(delta -> delta.phone).containsOnly("00221771234567");
+        assertThat(deltas)
+            .filteredOn(delta -> delta.selfTransfer)
+            .singleElement()
+            .satisfies(delta -> {
+                assertThat(delta.direction).isEqualTo(TransactionDirection.RECEIVED);
+                assertThat(delta.id()).endsWith(":SELF");
+                assertThat(UserStatsService.Delta.of(delta.toDocument()).selfTransfer).isTrue();
+            });
+    }
+
+    @Test
+    void pendingChangeRoundTripsThroughDocument() {
+        Document change = service.pending(transfer(TransactionStatus.PENDING), transfer(TransactionStatus.SUCCESS));
+
+        assertThat(change.getString("op")).isNotBlank();
+        List<UserStatsService.Delta> deltas = change.getList("deltas", Document.class).stream().map(UserStatsService.Delta::of).toList();
+        Collection<UserStatsService.Delta> expected = service.deltas(
+            List.of(transfer(TransactionStatus.PENDING)),
+            List.of(transfer(TransactionStatus.SUCCESS))
+        );
+        assertThat(deltas).extracting(UserStatsService.Delta::id).containsExactlyElementsOf(expected.stream().map(UserStatsService.Delta::id).toList());
+        assertThat(deltas)
+            .filteredOn(delta -> delta.status == TransactionStatus.SUCCESS)
+            .allSatisfy(delta -> {
+                assertThat(delta.count).isEqualTo(1);
+                assertThat(delta.amount).isEqualByComparingTo("1500");
+                assertThat(delta.first).isEqualTo(Instant.parse("2025-03-31T23:30:00Z"));
+            });
+        assertThat(service.pending(transfer(TransactionStatus.SUCCESS), transfer(TransactionStatus.SUCCESS))).isNull();
+    }
+
+    private static TransactionHistory transfer(TransactionStatus status) {
+        TransactionHistory history = new TransactionHistory();
+        history.setTransactionId("TX-1");
+        history.setType(TransactionType.TRANSFER);
+        history.setStatus(status);
+        history.setAmount(new BigDecimal("1500"));
+        history.setSenderPhone("+221771234567");
+        history.setReceiverPhone("00221781234567");
+        history.setTransactionDate(Instant.parse("2025-03-31T23:30:00Z"));
+        return history;
+    }
+}
@@ -0,0 +1,96 @@
+package sn.ondmoney.history.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import sn.ondmoney.history.config.ApplicationProperties;
+import sn.ondmoney.history.domain.TransactionHistory;
+import sn.ondmoney.history.domain.UserTimeline;
+import sn.ondmoney.history.domain.enumeration.TotalMode;
+import sn.ondmoney.history.domain.enumeration.TransactionDirection;
+import sn.ondmoney.history.domain.enumeration.TransactionType;
+import sn.ondmoney.history.service.dto.TransactionFields;
+import sn.ondmoney.history.service.dto.TransactionSearchCriteria;
+
+class UserTimelineServiceTest {
+
+    private final UserTimelineService service = new UserTimelineService(null, null, new ApplicationProperties());
+
+    @Test
+    void aTransferHasOneSlotPerParty() {
+        TransactionHistory history = new TransactionHistory();
+        history.setTransactionId("tx-1");
+        history.setSenderPhone("771234567");
+        history.setReceiverPhone("+221 78 765 43 21");
+        history.setTransactionDate(Instant.parse("2026-03-31T23:30:00Z"));
+
+        assertThat(UserTimelineService.slots(history)).containsExactly(
+            new UserTimelineService.Slot(221771234567L, "2026-03-31", "tx-1", TransactionDirection.SENT),
+            new UserTimelineService.Slot(221787654321L, "2026-03-31", "tx-1", TransactionDirection.RECEIVED)
+        );
+
+        history.setReceiverPhone("00221771234567");
+        assertThat(UserTimelineService.slots(history)).extracting(UserTimelineService.Slot::direction).containsExactly(TransactionDirection.SENT);
+    }
+
+    @Test
+    void onlyUnfilteredNewestFirstPagesOfOnePartyAreServed() {
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria();
+        criteria.setSenderPhone("771234567");
+        criteria.setDirection(TransactionDirection.ALL);
+        Sort newestFirst = Sort.by(Sort.Direction.DESC, "transactionDate");
+        TransactionFields listFields = TransactionFields.of(List.of("amount", "type", "senderPhone"));
+
+        assertThat(service.serves(criteria, PageRequest.of(0, 20, newestFirst), listFields)).isTrue();
+        assertThat(service.serves(criteria, PageRequest.of(4, 20, newestFirst), listFields)).isTrue();
+        assertThat(service.serves(criteria, PageRequest.of(5, 20, newestFirst), listFields)).isFalse();
+        assertThat(service.serves(criteria, PageRequest.of(0, 20, Sort.by("amount")), listFields)).isFalse();
+        assertThat(service.serves(criteria, PageRequest.of(0, 20, newestFirst), TransactionFields.ALL)).isFalse();
+        assertThat(service.serves(criteria, PageRequest.of(0, 20, newestFirst), TransactionFields.of(List.of("description")))).isFalse();
+
+        criteria.setTypes(List.of(TransactionType.values()[0]));
+        assertThat(service.serves(criteria, PageRequest.of(0, 20, newestFirst), listFields)).isFalse();
+    }
+
+    @Test
+    void readerStopsAfterTheDayHoldingTheEntryPastThePage() {
+        UserTimelineService.Reader reader = new UserTimelineService.Reader(PageRequest.of(0, 2));
+
+        UserTimeline today = bucket("2026-04-02", entry("a", "2026-04-02T09:00:00Z"));
+        UserTimeline yesterday = bucket("2026-04-01", entry("b", "2026-04-01T08:00:00Z"), entry("c", "2026-04-01T07:00:00Z"));
+        UserTimeline yesterdayFull = bucket("2026-04-01", entry("d", "2026-04-01T10:00:00Z"));
+        UserTimeline older = bucket("2026-03-30", entry("e", "2026-03-30T10:00:00Z"));
+
+        for (UserTimeline bucket : List.of(today, yesterday, yesterdayFull, older)) {
+            if (!reader.needs(bucket)) {
+                break;
+            }
+            reader.add(bucket);
+        }
+
+        assertThat(reader.page()).extracting(UserTimeline.Entry::getHistoryId).containsExactly("a", "d");
+        assertThat(reader.hasNext()).isTrue();
+        assertThat(reader.needsTotal(TotalMode.NONE)).isFalse();
+        assertThat(reader.needsTotal(TotalMode.EXACT)).isTrue();
+    }
+
+    private static UserTimeline bucket(String day, UserTimeline.Entry... entries) {
+        UserTimeline bucket = new UserTimeline();
+        bucket.setDay(day);
+        bucket.setEntries(List.of(entries));
+        bucket.setCount(entries.length);
+        return bucket;
+    }
+
+    private static UserTimeline.Entry entry(String id, String date) {
+        UserTimeline.Entry entry = new UserTimeline.Entry();
+        entry.setHistoryId(id);
+        entry.setTransactionId("tx-" + id);
+        entry.setTransactionDate(Instant.parse(date));
+        return entry;
+    }
+}
@@ -0,0 +1,26 @@
+package sn.ondmoney.history.service.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class TransactionCursorTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        TransactionCursor cursor = new TransactionCursor(Instant.parse("2025-03-01T10:15:30.123Z"), "65e1b2c3d4e5f60718293a4b");
+
+        String encoded = cursor.encode();
+
+        assertThat(encoded).doesNotContain("=", "+", "/");
+        assertThat(TransactionCursor.decode(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    void decodeRejectsMalformedCursor() {
+        assertThatThrownBy(() -> TransactionCursor.decode("not a cursor")).isInstanceOf(TransactionCursor.InvalidCursorException.class);
+        assertThatThrownBy(() -> TransactionCursor.decode("Zm9v")).isInstanceOf(TransactionCursor.InvalidCursorException.class);
+    }
+}
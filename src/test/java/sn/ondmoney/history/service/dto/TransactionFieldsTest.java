@@ -0,0 +1,33 @@
+package sn.ondmoney.history.service.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TransactionFieldsTest {
+
+    @Test
+    void parseKeepsRequiredFieldsAndRejectsUnknownOnes() {
+        assertThat(TransactionFields.parse(null).isAll()).isTrue();
+        assertThat(TransactionFields.parse(" ").isAll()).isTrue();
+
+        assertThat(TransactionFields.parse("amount, type,counterpartyName").getNames()).containsExactly(
+            "id",
+            "transactionDate",
+            "amount",
+            "type",
+            "counterpartyName"
+        );
+
+        assertThatThrownBy(() -> TransactionFields.parse("amount,password"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("password");
+    }
+
+    @Test
+    void ofIgnoresNonTransactionNames() {
+        assertThat(TransactionFields.of(List.of("__typename", "status")).getNames()).containsExactly("id", "transactionDate", "status");
+    }
+}
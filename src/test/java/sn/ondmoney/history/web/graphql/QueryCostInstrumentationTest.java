@@ -0,0 +1,67 @@
+package sn.ondmoney.history.web.graphql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import graphql.execution.CoercedVariables;
+import graphql.parser.Parser;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import sn.ondmoney.history.config.ApplicationProperties;
+
+class QueryCostInstrumentationTest {
+
+    private static final GraphQLSchema SCHEMA = new SchemaGenerator()
+        .makeExecutableSchema(
+            new SchemaParser()
+                .parse(
+                    """
+                    type Query {
+                      page(size: Int = 20): Page!
+                      search(input: SearchInput): Page!
+                      stats: Stats!
+                    }
+                    input SearchInput { phone: String size: Int = 20 }
+                    type Page { content: [Row!]! total: Int! }
+                    type Row { id: ID! amount: Int }
+                    type Stats { count: Int! }
+                    """
+                ),
+            RuntimeWiring.MOCKED_WIRING
+        );
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private QueryCostInstrumentation instrumentation() {
+        applicationProperties.getGraphql().setFieldWeights(Map.of("Query.stats", 50));
+        return new QueryCostInstrumentation(applicationProperties, new SimpleMeterRegistry());
+    }
+
+    private QueryCostInstrumentation.Estimate estimate(String query) {
+        return instrumentation().estimate(SCHEMA, Parser.parse(query), null, CoercedVariables.emptyVariables());
+    }
+
+    @Test
+    void costMultipliesByClampedPageSizes() {
+        // page: 1, content: 1 per row, scalars: 0
+        assertThat(estimate("{ page { total content { id amount } } }").cost()).isEqualTo(21);
+        assertThat(estimate("{ page(size: 100000) { content { id } } }").cost()).isEqualTo(101);
+        assertThat(estimate("{ search(input: { size: 50 }) { content { id } } }").cost()).isEqualTo(51);
+        assertThat(estimate("{ a: stats { count } b: stats { count } }").cost()).isEqualTo(100);
+        assertThat(estimate("{ page { content { id } } }").depth()).isEqualTo(3);
+        assertThat(estimate("{ page { __typename content { id } } stats { count } }").rootField()).isEqualTo("multiple");
+    }
+
+    @Test
+    void clampRewritesOnlyOversizedPages() {
+        Map<String, Object> small = Map.of("size", 20);
+        assertThat(instrumentation().clamp(small)).isSameAs(small);
+        assertThat(instrumentation().clamp(Map.of("input", Map.of("phone", "221", "size", 5000)))).isEqualTo(
+            Map.of("input", Map.of("phone", "221", "size", 100))
+        );
+    }
+}